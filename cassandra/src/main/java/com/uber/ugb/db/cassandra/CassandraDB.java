@@ -18,6 +18,7 @@
 
 package com.uber.ugb.db.cassandra;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.Host;
@@ -29,22 +30,32 @@ import com.datastax.driver.core.ProtocolOptions;
 import com.datastax.driver.core.ProtocolVersion;
 import com.datastax.driver.core.QueryOptions;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
 import com.datastax.driver.core.policies.LatencyAwarePolicy;
 import com.datastax.driver.core.policies.TokenAwarePolicy;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.uber.ugb.db.DBException;
 import com.uber.ugb.db.PrefixKeyValueDB;
+import com.uber.ugb.storage.ColumnScan;
 import com.uber.ugb.storage.PrefixKeyValueStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 public class CassandraDB extends PrefixKeyValueDB {
 
@@ -64,7 +75,8 @@ public class CassandraDB extends PrefixKeyValueDB {
     }
 
     @Override
-    public void cleanup() {
+    public void cleanup() throws DBException {
+        super.cleanup();
         try {
             logger.info("Closing connection to cluster...");
             if (cassandraStore.session != null) {
@@ -146,6 +158,22 @@ public class CassandraDB extends PrefixKeyValueDB {
             ensureKeyspace();
             ensureVertexTable();
             ensureEdgeTable();
+            prepareScanStatements();
+        }
+
+        /**
+         * Prepares every shape of the edge scan, as a statement prepared on first use from a future
+         * continuation would be a synchronous call on a driver thread.
+         */
+        private void prepareScanStatements() {
+            for (String start : new String[]{"", " AND id2 >= ?"}) {
+                for (String stop : new String[]{"", " AND id2 < ?"}) {
+                    for (String limit : new String[]{"", " LIMIT ?"}) {
+                        scanStatement(start + stop + limit);
+                    }
+                }
+            }
+            getStatement();
         }
 
         private void ensureKeyspace() {
@@ -180,30 +208,157 @@ public class CassandraDB extends PrefixKeyValueDB {
         @Override
         public List<PrefixQueriedRow> scan(byte[] keyPrefix, int limit) {
 
-            List<PrefixQueriedRow> rows = new ArrayList<>();
+            ResultSet resultSet = session.execute(bindScan(keyPrefix, limit));
+
+            return toPrefixQueriedRows(resultSet);
+        }
+
+        @Override
+        public CompletableFuture<List<PrefixQueriedRow>> scanAsync(byte[] keyPrefix, int limit) {
+            return toPrefixQueriedRowsAsync(session.executeAsync(bindScan(keyPrefix, limit)));
+        }
+
+        /**
+         * Each prefix is its own partition, so the prefixes are scanned as concurrent single partition queries.
+         */
+        @Override
+        public List<List<PrefixQueriedRow>> multiScan(List<byte[]> keyPrefixes, int limit) {
+            return multiScanAsync(keyPrefixes, limit).join();
+        }
+
+        @Override
+        public CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> keyPrefixes, int limit) {
+            List<CompletableFuture<List<PrefixQueriedRow>>> futures = new ArrayList<>(keyPrefixes.size());
+            for (byte[] keyPrefix : keyPrefixes) {
+                futures.add(scanAsync(keyPrefix, limit));
+            }
+            return allOf(futures);
+        }
+
+        /**
+         * With a limit the partition read stops after that many clustering rows, and the first page holds them all.
+         */
+        private Statement bindScan(byte[] keyPrefix, int limit) {
+            if (limit <= 0) {
+                return scanStatement(false).bind(ByteBuffer.wrap(keyPrefix));
+            }
+            return scanStatement(true).bind(ByteBuffer.wrap(keyPrefix), limit).setFetchSize(limit);
+        }
+
+        /**
+         * The key range of the column scan becomes a range of the clustering column, so the partition read
+         * starts and stops at the range. Its conditions are checked here, as the columns are packed in the value.
+         */
+        @Override
+        public List<PrefixQueriedRow> scan(byte[] keyPrefix, int limit, ColumnScan columnScan) {
+            return scanAsync(keyPrefix, limit, columnScan).join();
+        }
+
+        @Override
+        public List<List<PrefixQueriedRow>> multiScan(List<byte[]> keyPrefixes, int limit, ColumnScan columnScan) {
+            return multiScanAsync(keyPrefixes, limit, columnScan).join();
+        }
 
-            String cql = String.format("SELECT id2, value FROM %s.%s WHERE id1 = ?", keyspace, edgeTableName);
+        @Override
+        public CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> keyPrefixes, int limit,
+                                                                            ColumnScan columnScan) {
+            List<CompletableFuture<List<PrefixQueriedRow>>> futures = new ArrayList<>(keyPrefixes.size());
+            for (byte[] keyPrefix : keyPrefixes) {
+                futures.add(scanAsync(keyPrefix, limit, columnScan));
+            }
+            return allOf(futures);
+        }
+
+        private CompletableFuture<List<PrefixQueriedRow>> scanAsync(byte[] keyPrefix, int limit,
+                                                                    ColumnScan columnScan) {
+            int partitionLimit = columnScan.conditions.isEmpty() ? limit : 0;
+            List<Object> values = new ArrayList<>(4);
+            values.add(ByteBuffer.wrap(keyPrefix));
+            StringBuilder restrictions = new StringBuilder();
+            if (columnScan.keySuffixStart != null) {
+                restrictions.append(" AND id2 >= ?");
+                values.add(ByteBuffer.wrap(columnScan.keySuffixStart));
+            }
+            if (columnScan.keySuffixStop != null) {
+                restrictions.append(" AND id2 < ?");
+                values.add(ByteBuffer.wrap(columnScan.keySuffixStop));
+            }
+            if (partitionLimit > 0) {
+                restrictions.append(" LIMIT ?");
+                values.add(partitionLimit);
+            }
+            Statement statement = scanStatement(restrictions.toString()).bind(values.toArray());
+            if (partitionLimit > 0) {
+                statement.setFetchSize(partitionLimit);
+            }
+            return toPrefixQueriedRowsAsync(session.executeAsync(statement))
+                .thenApply(rows -> columnScan.apply(rows, limit));
+        }
+
+        private PreparedStatement scanStatement(boolean limited) {
+            return scanStatement(limited ? " LIMIT ?" : "");
+        }
+
+        private PreparedStatement scanStatement(String restrictions) {
+            String cql = String.format("SELECT id2, value FROM %s.%s WHERE id1 = ?%s",
+                keyspace, edgeTableName, restrictions);
             PreparedStatement preparedStatement = cachedStatements.computeIfAbsent(cql, session::prepare);
             preparedStatement.setConsistencyLevel(consistencyLevel);
             preparedStatement.setIdempotent(true);
-            ResultSet resultSet = session.execute(preparedStatement.bind(ByteBuffer.wrap(keyPrefix)));
+            return preparedStatement;
+        }
 
-            resultSet.forEach(row -> {
-                ByteBuffer byteBuffer1 = row.getBytes(0);
-                if (byteBuffer1 == null) {
-                    return;
-                }
-                ByteBuffer byteBuffer2 = row.getBytes(1);
-                if (byteBuffer2 == null) {
-                    return;
-                }
-                rows.add(new PrefixQueriedRow(byteBuffer1.array(), byteBuffer2.array()));
-                return;
-            });
+        private List<PrefixQueriedRow> toPrefixQueriedRows(ResultSet resultSet) {
+
+            List<PrefixQueriedRow> rows = new ArrayList<>();
+
+            resultSet.forEach(row -> addPrefixQueriedRow(row, rows));
 
             return rows;
         }
 
+        /**
+         * Reads the rows page by page, fetching the next page asynchronously once the fetched rows are taken,
+         * so that the listeners running on the driver threads never wait for a page.
+         */
+        private static CompletableFuture<List<PrefixQueriedRow>> toPrefixQueriedRowsAsync(
+            ResultSetFuture resultSetFuture) {
+            CompletableFuture<List<PrefixQueriedRow>> future = new CompletableFuture<>();
+            readPages(resultSetFuture, new ArrayList<>(), future);
+            return future;
+        }
+
+        private static void readPages(ListenableFuture<ResultSet> page, List<PrefixQueriedRow> rows,
+                                      CompletableFuture<List<PrefixQueriedRow>> future) {
+            page.addListener(() -> {
+                try {
+                    ResultSet resultSet = Uninterruptibles.getUninterruptibly(page);
+                    for (int available = resultSet.getAvailableWithoutFetching(); available > 0; available--) {
+                        addPrefixQueriedRow(resultSet.one(), rows);
+                    }
+                    if (resultSet.isFullyFetched()) {
+                        future.complete(rows);
+                    } else {
+                        readPages(resultSet.fetchMoreResults(), rows, future);
+                    }
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }, Runnable::run);
+        }
+
+        private static void addPrefixQueriedRow(Row row, List<PrefixQueriedRow> rows) {
+            ByteBuffer byteBuffer1 = row.getBytes(0);
+            if (byteBuffer1 == null) {
+                return;
+            }
+            ByteBuffer byteBuffer2 = row.getBytes(1);
+            if (byteBuffer2 == null) {
+                return;
+            }
+            rows.add(new PrefixQueriedRow(byteBuffer1.array(), byteBuffer2.array()));
+        }
+
         @Override
         public void put(byte[] keyPrefix, byte[] keySuffix, byte[] value) {
 
@@ -216,15 +371,128 @@ public class CassandraDB extends PrefixKeyValueDB {
 
         }
 
+        /**
+         * Writes one unlogged batch per partition key, so that each batch is applied by a single replica set,
+         * and runs the batches concurrently.
+         */
+        @Override
+        public void multiPut(List<byte[]> keyPrefixes, List<byte[]> keySuffixes, List<byte[]> values) {
+
+            String cql = String.format("INSERT INTO %s.%s(id1,id2,value) VALUES(?,?,?)", keyspace, edgeTableName);
+            PreparedStatement preparedStatement = cachedStatements.computeIfAbsent(cql, session::prepare);
+            preparedStatement.setConsistencyLevel(consistencyLevel);
+            preparedStatement.setIdempotent(true);
+
+            Map<ByteBuffer, BatchStatement> batchesByPartition = new LinkedHashMap<>();
+            for (int i = 0; i < keyPrefixes.size(); i++) {
+                ByteBuffer partitionKey = ByteBuffer.wrap(keyPrefixes.get(i));
+                BatchStatement batch = batchesByPartition.computeIfAbsent(partitionKey, k -> {
+                    BatchStatement statement = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                    statement.setConsistencyLevel(consistencyLevel);
+                    statement.setIdempotent(true);
+                    return statement;
+                });
+                batch.add(preparedStatement.bind(
+                    partitionKey, ByteBuffer.wrap(keySuffixes.get(i)), ByteBuffer.wrap(values.get(i))));
+            }
+
+            List<ResultSetFuture> futures = new ArrayList<>(batchesByPartition.size());
+            for (BatchStatement batch : batchesByPartition.values()) {
+                futures.add(session.executeAsync(batch.size() == 1 ? batch.getStatements().iterator().next() : batch));
+            }
+            for (ResultSetFuture future : futures) {
+                future.getUninterruptibly();
+            }
+
+        }
+
+        /**
+         * Vertices are keyed by their own partition, so they are written as concurrent single inserts
+         * rather than as multi-partition batches.
+         */
+        @Override
+        public void multiPut(List<byte[]> keys, List<byte[]> values) {
+
+            String cql = String.format("INSERT INTO %s.%s(id,value) VALUES(?,?)", keyspace, vertexTableName);
+            PreparedStatement preparedStatement = cachedStatements.computeIfAbsent(cql, session::prepare);
+            preparedStatement.setConsistencyLevel(consistencyLevel);
+            preparedStatement.setIdempotent(true);
+
+            List<ResultSetFuture> futures = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                futures.add(session.executeAsync(preparedStatement.bind(
+                    ByteBuffer.wrap(keys.get(i)), ByteBuffer.wrap(values.get(i)))));
+            }
+            for (ResultSetFuture future : futures) {
+                future.getUninterruptibly();
+            }
+
+        }
+
         @Override
         public byte[] get(byte[] key) {
 
+            ResultSet resultSet = session.execute(getStatement().bind(ByteBuffer.wrap(key)));
+
+            return toValue(resultSet);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getAsync(byte[] key) {
+            return toCompletableFuture(
+                session.executeAsync(getStatement().bind(ByteBuffer.wrap(key))), this::toValue);
+        }
+
+        /**
+         * Vertices are keyed by their own partition, so they are read as concurrent single partition queries.
+         */
+        @Override
+        public List<byte[]> multiGet(List<byte[]> keys) {
+            return multiGetAsync(keys).join();
+        }
+
+        @Override
+        public CompletableFuture<List<byte[]>> multiGetAsync(List<byte[]> keys) {
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                futures.add(getAsync(key));
+            }
+            return allOf(futures);
+        }
+
+        // the conversion runs on the driver thread completing the query, so it must not block or fetch pages
+        private static <T> CompletableFuture<T> toCompletableFuture(ResultSetFuture resultSetFuture,
+                                                                    Function<ResultSet, T> conversion) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            resultSetFuture.addListener(() -> {
+                try {
+                    future.complete(conversion.apply(resultSetFuture.getUninterruptibly()));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }, Runnable::run);
+            return future;
+        }
+
+        private static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+                List<T> results = new ArrayList<>(futures.size());
+                for (CompletableFuture<T> future : futures) {
+                    results.add(future.join());
+                }
+                return results;
+            });
+        }
+
+        private PreparedStatement getStatement() {
             String cql = String.format("SELECT value FROM %s.%s WHERE id = ?", keyspace, vertexTableName);
             PreparedStatement preparedStatement = cachedStatements.computeIfAbsent(cql, session::prepare);
             preparedStatement.setConsistencyLevel(consistencyLevel);
             preparedStatement.setIdempotent(true);
-            ResultSet resultSet = session.execute(preparedStatement.bind(ByteBuffer.wrap(key)));
+            return preparedStatement;
+        }
 
+        private byte[] toValue(ResultSet resultSet) {
             Row row = resultSet.one();
             if (row == null) {
                 return null;
@@ -27,8 +27,8 @@ import com.uber.ugb.model.BucketedEdgeDistribution;
 import com.uber.ugb.model.EdgeModel;
 import com.uber.ugb.model.GraphModel;
 import com.uber.ugb.model.PropertyModel;
-import com.uber.ugb.model.SimpleProperty;
 import com.uber.ugb.schema.QualifiedName;
+import com.uber.ugb.trace.Span;
 import com.uber.ugb.util.ProgressReporter;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
@@ -41,6 +41,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -58,7 +62,8 @@ public class GraphGenerator implements Serializable {
     protected long randomSeed;
     private Map<QualifiedName, Long> vertexPartition;
     private long batchSize = 1000;
-    private int batchCounter = 0;
+    private BucketedEdgeDistribution.WeightedBuckets.Sampling edgeSampling =
+        BucketedEdgeDistribution.WeightedBuckets.Sampling.ALIAS;
 
     /**
      * Creates a new generator with the given statistical model
@@ -88,7 +93,6 @@ public class GraphGenerator implements Serializable {
      */
     synchronized void setBatchSize(final long batchSize) {
         this.batchSize = batchSize;
-        batchCounter = 0;
     }
 
     /**
@@ -102,6 +106,16 @@ public class GraphGenerator implements Serializable {
         this.randomSeed = randomSeed;
     }
 
+    /**
+     * Selects how edge endpoints are sampled from the degree distributions.
+     * Alias sampling is the default; CDF sampling is kept as the slower fallback.
+     *
+     * @param edgeSampling the sampling method
+     */
+    public void setEdgeSampling(final BucketedEdgeDistribution.WeightedBuckets.Sampling edgeSampling) {
+        this.edgeSampling = edgeSampling;
+    }
+
     /**
      * Generates a graph with a given number of vertices.
      *
@@ -110,10 +124,28 @@ public class GraphGenerator implements Serializable {
      */
     public synchronized Metrics generateTo(final DB graph, final long totalVertices, final int writeConcurrency,
                                            final int graphPartitionCount) throws DBException {
+        return generateTo(graph, totalVertices, writeConcurrency, graphPartitionCount, 1);
+    }
+
+    /**
+     * Generates a graph with a given number of vertices, generating up to generateConcurrency partitions at a time.
+     * Each partition is generated from its own random seed, so the generated graph does not depend on
+     * the level of concurrency.
+     *
+     * @param graph               the property graph to which generated elements are to be added
+     * @param totalVertices       the size of the generated graph, in terms of vertices
+     * @param writeConcurrency    the number of threads writing to the graph
+     * @param graphPartitionCount the number of vertex and edge partitions
+     * @param generateConcurrency the number of partitions which are generated concurrently
+     */
+    public synchronized Metrics generateTo(final DB graph, final long totalVertices, final int writeConcurrency,
+                                           final int graphPartitionCount, final int generateConcurrency)
+        throws DBException {
         Preconditions.checkNotNull(graph);
         Preconditions.checkArgument(totalVertices > 0);
         Preconditions.checkArgument(writeConcurrency > 0);
         Preconditions.checkArgument(graphPartitionCount > 0);
+        Preconditions.checkArgument(generateConcurrency > 0);
 
         ParallelWriteDBWrapper pdb = new ParallelWriteDBWrapper(graph, writeConcurrency);
         pdb.init();
@@ -127,16 +159,17 @@ public class GraphGenerator implements Serializable {
         long edgePartitionSize = Math.floorDiv(totalEdges, graphPartitionCount) + 1;
 
         long time = timeTask(() -> {
-            for (long i = 0; i < graphPartitionCount; i++) {
+            // all vertices are generated before any edge, as in the sequential case
+            forEachPartition(graphPartitionCount, generateConcurrency, i -> {
                 long start = i * vertexPartitionSize;
                 long stop = Math.min(i * vertexPartitionSize + vertexPartitionSize, totalVertices);
-                createVertices(start, stop, pdb);
-            }
-            for (long i = 0; i < graphPartitionCount; i++) {
+                createVertices(start, stop, pdb, new BatchCounter());
+            });
+            forEachPartition(graphPartitionCount, generateConcurrency, i -> {
                 long start = i * edgePartitionSize;
                 long stop = Math.min(i * edgePartitionSize + edgePartitionSize, totalEdges);
-                createEdges(start, stop, pdb, new Random(randomSeed + i));
-            }
+                createEdges(start, stop, pdb, new Random(randomSeed + i), new BatchCounter());
+            });
             commit(pdb);
         });
         logger.info("generated graph of " + totalVertices + " vertices in " + time + "ms");
@@ -188,7 +221,7 @@ public class GraphGenerator implements Serializable {
 
                 long start = i * vertexPartitionSize;
                 long stop = Math.min(i * vertexPartitionSize + vertexPartitionSize, totalVertices);
-                createVertices(start, stop, pdb);
+                createVertices(start, stop, pdb, new BatchCounter());
                 commit(pdb);
 
                 pdb.shutdown();
@@ -210,7 +243,7 @@ public class GraphGenerator implements Serializable {
                 long i = t._2;
                 long start = i * edgePartitionSize;
                 long stop = Math.min(i * edgePartitionSize + edgePartitionSize, totalEdges);
-                createEdges(start, stop, pdb, new Random(randomSeed + i));
+                createEdges(start, stop, pdb, new Random(randomSeed + i), new BatchCounter());
                 commit(pdb);
                 pdb.shutdown();
                 Metrics currentMetrics = pdb.getMetrics();
@@ -232,21 +265,52 @@ public class GraphGenerator implements Serializable {
         return endTime - startTime;
     }
 
-    private void incrementBatchCounter(final DB graph) {
-        batchCounter++;
-        if (batchSize == batchCounter) {
+    private void forEachPartition(final int partitionCount, final int concurrency,
+                                  final PartitionTask task) throws DBException {
+        if (concurrency == 1) {
+            for (long i = 0; i < partitionCount; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(concurrency, partitionCount));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (long i = 0; i < partitionCount; i++) {
+                final long partition = i;
+                futures.add(executorService.submit(() -> task.run(partition)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBException("interrupted while generating partitions", e);
+        } catch (ExecutionException e) {
+            throw new DBException("failed to generate partition", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void incrementBatchCounter(final DB graph, final BatchCounter batchCounter) {
+        batchCounter.count++;
+        if (batchSize == batchCounter.count) {
             commit(graph);
-            batchCounter = 0;
+            batchCounter.count = 0;
         }
     }
 
     private void commit(final DB graph) {
+        Span span = graph.getTracer().commitBatch();
         graph.getMetrics().batchCommit.measure(() -> {
             graph.commitBatch();
         });
+        span.finish();
     }
 
-    private void createVertices(long start, long stop, final DB graph) {
+    private void createVertices(long start, long stop, final DB graph, final BatchCounter batchCounter) {
+        Span span = graph.getTracer().partition("vertices", start, stop);
         long counter = 0;
         for (Map.Entry<QualifiedName, Long> e : vertexPartition.entrySet()) {
             QualifiedName label = e.getKey();
@@ -261,14 +325,17 @@ public class GraphGenerator implements Serializable {
             logger.info("generating [" + partitionedStart + ", " + partitionedStop + ") " + nVertices + " " + label);
             ProgressReporter progressReporter = new ProgressReporter("gen vertex " + label, start, stop, 102400L);
             for (long i = partitionedStart; i < partitionedStop; i++) {
-                createVertex(label, i, graph, props);
+                createVertex(label, i, graph, props, batchCounter);
                 progressReporter.maybeReport(i);
             }
             progressReporter.report(stop);
         }
+        span.finish(stop - start);
     }
 
-    private void createEdges(long start, long stop, final DB graph, final Random random) {
+    private void createEdges(long start, long stop, final DB graph, final Random random,
+                             final BatchCounter batchCounter) {
+        Span span = graph.getTracer().partition("edges", start, stop);
         long counter = 0;
         for (Map.Entry<QualifiedName, EdgeModel> e : model.getEdgeModels().entrySet()) {
             QualifiedName edgeLabel = e.getKey();
@@ -281,8 +348,10 @@ public class GraphGenerator implements Serializable {
                 continue;
             }
             logger.info("generating [" + partitionedStart + ", " + partitionedStop + ") " + nEdges + " " + edgeLabel);
-            createEdgesForEdgeModel(edgeLabel, edgeStats, graph, partitionedStart, partitionedStop, random);
+            createEdgesForEdgeModel(edgeLabel, edgeStats, graph, partitionedStart, partitionedStop, random,
+                batchCounter);
         }
+        span.finish(stop - start);
     }
 
     private long countTotalEdges() {
@@ -306,7 +375,8 @@ public class GraphGenerator implements Serializable {
     }
 
     private void createEdgesForEdgeModel(final QualifiedName edgeLabel, final EdgeModel edgeStats,
-                                         final DB graph, final long start, final long stop, final Random random) {
+                                         final DB graph, final long start, final long stop, final Random random,
+                                         final BatchCounter batchCounter) {
 
         QualifiedName domainLabel = edgeStats.getDomainIncidence().getVertexLabel();
         QualifiedName rangeLabel = edgeStats.getRangeIncidence().getVertexLabel();
@@ -315,9 +385,9 @@ public class GraphGenerator implements Serializable {
         long rangeSize = vertexPartition.get(rangeLabel);
 
         BucketedEdgeDistribution domainBucketDistribution = new BucketedEdgeDistribution(
-            edgeStats.getDomainIncidence(), domainSize, random);
+            edgeStats.getDomainIncidence(), domainSize, random, edgeSampling);
         BucketedEdgeDistribution rangeBucketDistribution = new BucketedEdgeDistribution(
-            edgeStats.getRangeIncidence(), rangeSize, random);
+            edgeStats.getRangeIncidence(), rangeSize, random, edgeSampling);
 
         // prefix format of the print out
         long domainExistCount = (long) (edgeStats.getDomainIncidence().getExistenceProbability() * domainSize);
@@ -328,40 +398,35 @@ public class GraphGenerator implements Serializable {
             rangeLabel, rangeExistCount, rangeSize
         );
 
+        PropertyModel props = model.getEdgePropertyModels().get(edgeLabel);
+
         ProgressReporter progressReporter = new ProgressReporter(prefix, start, stop, 102400L);
 
         for (long edgeCount = start; edgeCount < stop; edgeCount++) {
             long tailIndex = domainBucketDistribution.pickOne();
             long headIndex = rangeBucketDistribution.pickOne();
-            createEdge(edgeLabel, domainLabel, tailIndex, rangeLabel, headIndex, graph);
+            createEdge(edgeLabel, edgeCount, domainLabel, tailIndex, rangeLabel, headIndex, graph, props,
+                batchCounter);
             progressReporter.maybeReport(edgeCount);
         }
 
         progressReporter.report(stop);
     }
 
-    private void createVertex(final QualifiedName label, long id, final DB graph, final PropertyModel props) {
+    private void createVertex(final QualifiedName label, long id, final DB graph, final PropertyModel props,
+                              final BatchCounter batchCounter) {
 
         Object vertexId = graph.genVertexId(label, id);
-        Object[] params = new Object[(props == null ? 0 : props.getProperties().size() * 2)];
-
-        if (null != props) {
-            int i = 0;
-            for (SimpleProperty prop : props.getProperties()) {
-                params[i] = prop.getKey();
-                Object value = prop.getValueGenerator().generate(this.randomSeed, label.toString(), id, prop.getKey());
-                params[i + 1] = value;
-                i += 2;
-            }
-        }
+        Object[] params = props == null ? new Object[0] : props.generateKeyValues(this.randomSeed, id);
+
         graph.writeVertex(label, vertexId, params);
-        incrementBatchCounter(graph);
+        incrementBatchCounter(graph, batchCounter);
     }
 
-    private void createEdge(final QualifiedName label,
+    private void createEdge(final QualifiedName label, final long edgeIndex,
                             QualifiedName tailLabel, final long tailIndex,
                             QualifiedName headLabel, final long headIndex,
-                            final DB graph) {
+                            final DB graph, final PropertyModel props, final BatchCounter batchCounter) {
         Object tailId = graph.genVertexId(tailLabel, tailIndex);
         Object headId = graph.genVertexId(headLabel, headIndex);
 
@@ -370,13 +435,29 @@ public class GraphGenerator implements Serializable {
         //    label,
         //    headLabel, headIndex, headId
         //));
-        graph.writeEdge(label, tailLabel, tailId, headLabel, headId);
+        // properties are seeded by the edge index, so that they can be generated on whichever thread writes the edge
+        if (props == null || props.getProperties().isEmpty()) {
+            graph.writeEdge(label, tailLabel, tailId, headLabel, headId);
+        } else {
+            graph.writeEdge(label, tailLabel, tailId, headLabel, headId, props, this.randomSeed, edgeIndex);
+        }
 
-        incrementBatchCounter(graph);
+        incrementBatchCounter(graph, batchCounter);
     }
 
     private interface RunnableWithException<E extends Exception> {
         void run() throws E;
     }
 
+    private interface PartitionTask {
+        void run(long partition);
+    }
+
+    /**
+     * Counts the operations since the last commit of a single partition.
+     */
+    private static class BatchCounter {
+        long count;
+    }
+
 }
@@ -25,6 +25,7 @@ import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
 import com.uber.ugb.util.ProgressReporter;
 
+import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
@@ -32,10 +33,17 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 public class GraphScraper {
 
+    // queries issued per second on a schedule (open loop), 0 (default) issues the next query when a thread is free
+    public static final String READ_OPS_PER_SECOND_PROPERTY = "read.ops.per.second";
+    public static final String READ_ARRIVAL_PROPERTY = "read.arrival";
+    public static final String FIXED_ARRIVAL = "fixed";
+    public static final String POISSON_ARRIVAL = "poisson";
+
     private static Logger logger = Logger.getLogger(GraphScraper.class.getName());
 
     public GraphScraper() {
@@ -48,15 +56,21 @@ public class GraphScraper {
         ArrayBlockingQueue<Task> tasks = new ArrayBlockingQueue(concurrency * 16);
         AtomicLong readCounter = new AtomicLong();
         AtomicBoolean hasException = new AtomicBoolean();
+        Schedule schedule = Schedule.fromProperties(db.getProperties(), seed);
+        if (schedule != null) {
+            logger.info("issuing " + query.name + " at " + schedule.opsPerSecond + " queries per second");
+        }
 
         ExecutorService executorService = Executors.newFixedThreadPool(concurrency + 1);
         executorService.execute(() -> {
             Random random = new Random(seed);
             AtomicLong y = new AtomicLong();
             QualifiedName startVertexName = new QualifiedName(query.startVertexLabel);
+            long scheduleStartNs = System.nanoTime();
             random.longs(operationCount, 0, outVertexCount).forEach(x -> {
                 try {
-                    tasks.put(new Task(db.genVertexId(startVertexName, x), y.incrementAndGet()));
+                    long intendedStartNs = schedule == null ? 0 : scheduleStartNs + schedule.nextOffsetNs();
+                    tasks.put(new Task(db.genVertexId(startVertexName, x), y.incrementAndGet(), intendedStartNs));
                 } catch (InterruptedException e) {
                 }
             });
@@ -80,25 +94,37 @@ public class GraphScraper {
                     if (task == null) {
                         continue;
                     }
+                    if (schedule != null) {
+                        awaitSlot(db, schedule, task.intendedStartNs);
+                    }
                     Subgraph subgraph = new Subgraph(task.vid);
+                    long start = System.nanoTime();
                     try {
-                        db.getMetrics().subgraph.measure(() -> {
-                            QueryResult result = null;
-                            if (queryText != null) {
-                                result = db.executeQuery(queryText, subgraph.startVertexId);
-                            } else {
-                                db.subgraph(query, subgraph);
-                                result = new QueryResult(subgraph.getVertexCount(), subgraph.getEdgeCount());
-                            }
-                            db.getMetrics().subgraphVertexCount.addAndGet(result.getVertexCount());
-                            db.getMetrics().subgraphEdgeCount.addAndGet(result.getEdgeCount());
-                            db.getMetrics().subgraphWithEdgesCount.addAndGet(result.getEdgeCount() > 0 ? 1 : 0);
-                        });
+                        QueryResult result = null;
+                        if (queryText != null) {
+                            result = db.executeQuery(queryText, subgraph.startVertexId);
+                        } else {
+                            db.subgraph(query, subgraph);
+                            result = new QueryResult(subgraph.getVertexCount(), subgraph.getEdgeCount());
+                        }
+                        db.getMetrics().subgraphVertexCount.addAndGet(result.getVertexCount());
+                        db.getMetrics().subgraphEdgeCount.addAndGet(result.getEdgeCount());
+                        db.getMetrics().subgraphWithEdgesCount.addAndGet(result.getEdgeCount() > 0 ? 1 : 0);
                         readCounter.addAndGet(1);
                     } catch (Exception e) {
                         e.printStackTrace();
                         hasException.set(true);
                         return;
+                    } finally {
+                        long end = System.nanoTime();
+                        db.getMetrics().subgraph.measure(end - start);
+                        if (query.name != null) {
+                            db.getMetrics().query(query.name).measure(end - start);
+                        }
+                        if (schedule != null) {
+                            // what a client issuing at the intended time sees, queueing behind slow queries included
+                            db.getMetrics().subgraphCorrected.measure(end - task.intendedStartNs);
+                        }
                     }
 
                     queryCount.incrementAndGet();
@@ -130,13 +156,69 @@ public class GraphScraper {
 
     }
 
+    /**
+     * Waits for the intended start of a query, and counts the slot as missed if no thread was free
+     * to start it before the next one was due.
+     */
+    private static void awaitSlot(DB db, Schedule schedule, long intendedStartNs) {
+        long lagNs = System.nanoTime() - intendedStartNs;
+        if (lagNs < 0) {
+            LockSupport.parkNanos(-lagNs);
+        } else if (lagNs > schedule.intervalNs) {
+            db.getMetrics().missedScheduleSlots.incrementAndGet();
+        }
+    }
+
     class Task {
         Object vid;
         long seqId;
+        long intendedStartNs;
 
-        public Task(Object vid, long seqId) {
+        public Task(Object vid, long seqId, long intendedStartNs) {
             this.vid = vid;
             this.seqId = seqId;
+            this.intendedStartNs = intendedStartNs;
+        }
+    }
+
+    /**
+     * The intended start times of an open loop, evenly spaced or with exponential gaps as from a poisson process.
+     * Only the producer thread takes offsets from it.
+     */
+    static class Schedule {
+        final double opsPerSecond;
+        final long intervalNs;
+        private final Random random;
+        private double offsetNs;
+
+        Schedule(double opsPerSecond, boolean poisson, int seed) {
+            this.opsPerSecond = opsPerSecond;
+            this.intervalNs = (long) (1e9 / opsPerSecond);
+            this.random = poisson ? new Random(seed + 1) : null;
+        }
+
+        /**
+         * @return the schedule the properties ask for, or null for a closed loop
+         */
+        static Schedule fromProperties(Properties properties, int seed) {
+            double opsPerSecond = Double.parseDouble(properties.getProperty(READ_OPS_PER_SECOND_PROPERTY, "0"));
+            if (opsPerSecond <= 0) {
+                return null;
+            }
+            String arrival = properties.getProperty(READ_ARRIVAL_PROPERTY, FIXED_ARRIVAL);
+            if (!FIXED_ARRIVAL.equals(arrival) && !POISSON_ARRIVAL.equals(arrival)) {
+                throw new IllegalArgumentException("unknown " + READ_ARRIVAL_PROPERTY + ": " + arrival);
+            }
+            return new Schedule(opsPerSecond, POISSON_ARRIVAL.equals(arrival), seed);
+        }
+
+        /**
+         * @return the offset of the next intended start from the start of the schedule
+         */
+        long nextOffsetNs() {
+            long next = (long) offsetNs;
+            offsetNs += random == null ? 1e9 / opsPerSecond : -Math.log(1 - random.nextDouble()) * 1e9 / opsPerSecond;
+            return next;
         }
     }
 
@@ -0,0 +1,87 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb;
+
+import com.uber.ugb.db.VertexIdStrategy;
+import com.uber.ugb.model.GraphModel;
+import com.uber.ugb.schema.QualifiedName;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * VertexIdChecker verifies that a vertex id strategy assigns distinct ids to all vertices
+ * of a graph with the given vertex count.
+ * <p>
+ * Usage: VertexIdChecker graphDir vertexCount [md5|hash|dense]
+ */
+public class VertexIdChecker {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: VertexIdChecker graphDir vertexCount [md5|hash|dense]");
+            System.exit(1);
+        }
+        File graphDir = new File(args[0]);
+        long vertexCount = Long.valueOf(args[1]);
+        String strategyName = args.length > 2 ? args[2] : VertexIdStrategy.MD5;
+
+        GraphModelBuilder graphModelBuilder = new GraphModelBuilder();
+        graphModelBuilder.addConceptDirectory(new File(graphDir, "concepts"));
+        graphModelBuilder.setStatistics(new File(graphDir, "statistics.yaml"));
+        graphModelBuilder.setDistributionDirectory(new File(graphDir, "distributions"));
+        GraphModel model = graphModelBuilder.build();
+
+        VertexIdStrategy strategy = VertexIdStrategy.create(strategyName, model.getSchemaVocabulary());
+        long duplicates = countDuplicates(strategy, model.getVertexPartitioner().getPartitionSizes(vertexCount));
+
+        System.out.println(VertexIdStrategy.VERTEX_ID_STRATEGY_PROPERTY + "=" + strategyName
+            + " vertices=" + vertexCount + " duplicates=" + duplicates);
+        System.exit(duplicates == 0 ? 0 : 2);
+    }
+
+    public static long countDuplicates(VertexIdStrategy strategy, Map<QualifiedName, Long> vertexPartition) {
+        long total = 0;
+        for (Long size : vertexPartition.values()) {
+            total += size;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many vertices to check in memory: " + total);
+        }
+
+        long[] ids = new long[(int) total];
+        int i = 0;
+        for (Map.Entry<QualifiedName, Long> entry : vertexPartition.entrySet()) {
+            for (long index = 0; index < entry.getValue(); index++) {
+                ids[i++] = strategy.genVertexId(entry.getKey(), index);
+            }
+        }
+
+        Arrays.parallelSort(ids);
+        long duplicates = 0;
+        for (int j = 1; j < ids.length; j++) {
+            if (ids[j] == ids[j - 1]) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+}
@@ -19,165 +19,388 @@
 package com.uber.ugb.db;
 
 import com.google.common.base.Strings;
+import com.uber.ugb.measurement.StepMetrics;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
 import com.uber.ugb.schema.model.RelationType;
+import com.uber.ugb.storage.BlockingAdapter;
+import com.uber.ugb.trace.Span;
+import com.uber.ugb.util.LongHashSet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
+/**
+ * AbstractSubgraphDB answers subgraph queries from per vertex edge and vertex reads.
+ *
+ * The traversal is level synchronous: each step reads the edges of its whole frontier in one batch, selects the
+ * edges in frontier order, and the selected vertices become the frontier of the next step. The vertex properties
+ * selected by a step are read in one batch in the background while the next steps are traversed, unless the step
+ * filters its vertices, in which case they are read before the next step.
+ *
+ * The steps are chained on the futures of the batch reads, so a DB whose store reads asynchronously traverses
+ * without blocking a thread; the reads of a blocking store run on the TraversalScheduler shared by all queries.
+ */
 public abstract class AbstractSubgraphDB extends DB {
 
-    protected static final ThreadLocal<ThreadPoolExecutor> TL_EXECUTOR_BUILDER = new ThreadLocal<ThreadPoolExecutor>() {
-        @Override
-        protected ThreadPoolExecutor initialValue() {
-            return (ThreadPoolExecutor) Executors.newFixedThreadPool(16);
+    private transient TraversalScheduler traversalScheduler;
+
+    /**
+     * The scheduler shared by all the queries of this DB, created on first use and shut down by cleanup.
+     */
+    protected synchronized TraversalScheduler getTraversalScheduler() {
+        if (traversalScheduler == null) {
+            traversalScheduler = TraversalScheduler.create(getProperties());
         }
-    };
+        return traversalScheduler;
+    }
 
-    protected static ThreadPoolExecutor getThreadPoolExecutor() {
-        return TL_EXECUTOR_BUILDER.get();
+    @Override
+    public void cleanup() throws DBException {
+        TraversalScheduler scheduler;
+        synchronized (this) {
+            scheduler = traversalScheduler;
+            traversalScheduler = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
     }
 
     public abstract Properties readVertex(QualifiedName label, Object id, QueriesSpec.Query.Step.Vertex vertexQuerySpec);
 
     public abstract List<Subgraph.Edge> readEdges(Object startVertexId, QueriesSpec.Query.Step.Edge edgeQuerySpec);
 
+    /**
+     * Reads the properties of a batch of vertices, in the order of the ids.
+     */
+    public List<Properties> batchReadVertices(QualifiedName label, List<Object> ids,
+                                              QueriesSpec.Query.Step.Vertex vertexQuerySpec) {
+        return batchReadVerticesAsync(label, ids, vertexQuerySpec,
+            getTraversalScheduler().newQueryExecutor()).join();
+    }
+
+    /**
+     * Reads the edges of a batch of start vertices, in the order of the ids.
+     */
+    public List<List<Subgraph.Edge>> batchReadEdges(List<Object> startVertexIds,
+                                                    QueriesSpec.Query.Step.Edge edgeQuerySpec) {
+        return batchReadEdgesAsync(startVertexIds, edgeQuerySpec,
+            getTraversalScheduler().newQueryExecutor()).join();
+    }
+
+    /**
+     * Reads the properties of a batch of vertices, in the order of the ids. Override this to read the batch in
+     * fewer round trips; the default reads the vertices concurrently on the executor of the query,
+     * one readVertex each.
+     */
+    public CompletableFuture<List<Properties>> batchReadVerticesAsync(QualifiedName label, List<Object> ids,
+                                                                      QueriesSpec.Query.Step.Vertex vertexQuerySpec,
+                                                                      Executor executor) {
+        return fanOut(ids, executor, id -> {
+            Properties[] properties = new Properties[1];
+            this.getMetrics().readVertex.measure(() -> {
+                properties[0] = readVertex(label, id, vertexQuerySpec);
+            });
+            return properties[0];
+        });
+    }
+
+    /**
+     * Reads the edges of a batch of start vertices, in the order of the ids. Override this to read the batch in
+     * fewer round trips; the default reads the edges concurrently on the executor of the query,
+     * one readEdges each.
+     */
+    public CompletableFuture<List<List<Subgraph.Edge>>> batchReadEdgesAsync(List<Object> startVertexIds,
+                                                                            QueriesSpec.Query.Step.Edge edgeQuerySpec,
+                                                                            Executor executor) {
+        return fanOut(startVertexIds, executor, id -> {
+            List<List<Subgraph.Edge>> edges = new ArrayList<>(1);
+            this.getMetrics().readEdge.measure(() -> {
+                edges.add(readEdges(id, edgeQuerySpec));
+            });
+            return edges.get(0);
+        });
+    }
+
+    private <T> CompletableFuture<List<T>> fanOut(List<Object> ids, Executor executor, Function<Object, T> read) {
+        if (ids.size() == 1) {
+            return BlockingAdapter.call(() -> Collections.singletonList(read.apply(ids.get(0))));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            futures.add(CompletableFuture.supplyAsync(() -> read.apply(id), executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<T> results = new ArrayList<>(ids.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Orders the edges read for one vertex newest first if the query asks for it, and keeps at most the storage
+     * limit of them. Edges are ordered by their ts property; edges without one are taken as written in read
+     * order, so the last read is the newest.
+     *
+     * @param readNewestFirst the store already returned the edges newest first
+     */
+    protected static List<Subgraph.Edge> orderAndLimit(List<Subgraph.Edge> edges,
+                                                      QueriesSpec.Query.Step.Edge edgeQuerySpec,
+                                                      boolean readNewestFirst) {
+        if (edgeQuerySpec.orderByTs && !readNewestFirst && edges.size() > 1) {
+            Integer[] order = new Integer[edges.size()];
+            Long[] timestamps = new Long[edges.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+                timestamps[i] = edges.get(i).getTimestamp();
+            }
+            Arrays.sort(order, (a, b) -> {
+                if (timestamps[a] != null && timestamps[b] != null && !timestamps[a].equals(timestamps[b])) {
+                    return Long.compare(timestamps[b], timestamps[a]);
+                }
+                if (timestamps[a] == null != (timestamps[b] == null)) {
+                    return timestamps[a] != null ? -1 : 1;
+                }
+                return Integer.compare(b, a);
+            });
+            List<Subgraph.Edge> ordered = new ArrayList<>(edges.size());
+            for (int i : order) {
+                ordered.add(edges.get(i));
+            }
+            edges = ordered;
+        }
+        int limit = edgeQuerySpec.storageLimit();
+        if (limit > 0 && edges.size() > limit) {
+            edges = new ArrayList<>(edges.subList(0, limit));
+        }
+        return edges;
+    }
+
     @Override
     public Status subgraph(QueriesSpec.Query query, Subgraph subgraph) {
+        return subgraphAsync(query, subgraph).join();
+    }
 
-        Set<Object> visitedVertexIds = ConcurrentHashMap.newKeySet();
-        LinkedBlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
-        int stepCount = query.steps.length;
-        if (stepCount == 0) {
-            return Status.OK;
+    @Override
+    public CompletableFuture<Status> subgraphAsync(QueriesSpec.Query query, Subgraph subgraph) {
+
+        if (query.steps.length == 0) {
+            return CompletableFuture.completedFuture(Status.OK);
         }
 
-        ThreadPoolExecutor executorService = getThreadPoolExecutor();
-        AtomicInteger waitGroup = new AtomicInteger();
+        Traversal traversal = new Traversal(query, subgraph);
+        return traversal.traverse(0, Collections.singletonList(subgraph.startVertexId))
+            .thenCompose(v -> CompletableFuture.allOf(traversal.vertexReads.toArray(new CompletableFuture[0])))
+            .handle((v, e) -> {
+                if (e != null) {
+                    e.printStackTrace();
+                    return Status.ERROR;
+                }
+                return Status.OK;
+            });
+    }
 
-        try {
-            tasks.put(new Task(subgraph.startVertexId, 0, null));
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * Traversal is the state of one subgraph query. Its steps run one after another on the future chain,
+     * so the state is only touched by one thread at a time.
+     */
+    private class Traversal {
+        final QueriesSpec.Query query;
+        final Subgraph subgraph;
+        // long vertex ids are tracked without boxing, any other ids in the object set
+        final LongHashSet visitedLongIds = new LongHashSet();
+        final Set<Object> visitedVertexIds = new HashSet<>();
+        // the vertices the edges of the current step lead to, so that each is reached once per step
+        final LongHashSet stepLongIds = new LongHashSet();
+        final Set<Object> stepVertexIds = new HashSet<>();
+        final List<CompletableFuture<Void>> vertexReads = new ArrayList<>();
+        final Executor executor = getTraversalScheduler().newQueryExecutor();
+        // per step metrics, for named queries only
+        final StepMetrics[] stepMetrics;
+        long stepStartNs;
+        Span stepSpan;
+
+        Traversal(QueriesSpec.Query query, Subgraph subgraph) {
+            this.query = query;
+            this.subgraph = subgraph;
+            this.stepMetrics = query.name == null ? null : new StepMetrics[query.steps.length];
         }
 
-        AtomicBoolean hasException = new AtomicBoolean();
+        private StepMetrics stepMetrics(int stepId) {
+            if (stepMetrics == null) {
+                return null;
+            }
+            if (stepMetrics[stepId] == null) {
+                stepMetrics[stepId] = getMetrics().step(query.name, stepId);
+            }
+            return stepMetrics[stepId];
+        }
 
-        while ((!tasks.isEmpty() || waitGroup.get() > 0) && !hasException.get()) {
-            if (tasks.isEmpty()) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                }
-                continue;
+        CompletableFuture<Void> traverse(int stepId, List<Object> frontier) {
+            if (stepId >= query.steps.length || frontier.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
             }
+            QueriesSpec.Query.Step step = query.steps[stepId];
+            StepMetrics metrics = stepMetrics(stepId);
+            stepStartNs = System.nanoTime();
+            stepSpan = getTracer().traversalStep(query.name, stepId, subgraph.startVertexId, frontier.size());
+            // continued on the executor of the query, as async stores complete their futures on their i/o threads
+            return batchReadEdgesAsync(frontier, step.edge, executor).thenComposeAsync(edgeLists -> {
 
-            Task task = tasks.poll();
-            if (task.currentEdge != null) {
-                waitGroup.incrementAndGet();
-                executorService.execute(() -> {
-                    try {
-                        processVertexToDo(task, query.steps[task.stepId], task.currentEdge);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        hasException.set(true);
-                    } finally {
-                        waitGroup.decrementAndGet();
-                    }
-                });
-            } else {
-                waitGroup.incrementAndGet();
-                executorService.execute(() -> {
-                    try {
-                        boolean isLastStep = task.stepId + 1 >= query.steps.length;
-                        QueriesSpec.Query.Step step = query.steps[task.stepId];
-                        traverseOneStep(task.id, step, visitedVertexIds, tasks, subgraph, task.stepId, isLastStep);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        hasException.set(true);
-                    } finally {
-                        waitGroup.decrementAndGet();
-                    }
-                });
+                List<Subgraph.Edge> possibleEdges = new ArrayList<>();
+                long edgesRead = 0;
+                stepLongIds.clear();
+                stepVertexIds.clear();
+                for (List<Subgraph.Edge> edges : edgeLists) {
+                    edgesRead += edges.size();
+                    traverseOneStep(edges, step, possibleEdges);
+                }
+                if (metrics != null) {
+                    metrics.frontier.addAndGet(frontier.size());
+                    metrics.edgesRead.addAndGet(edgesRead);
+                    metrics.edgesKept.addAndGet(possibleEdges.size());
+                }
+
+                if (possibleEdges.isEmpty() || step.vertex == null) {
+                    return expand(stepId, step, possibleEdges);
+                }
+                if (step.vertex.getFilter() != null) {
+                    // the vertices decide which edges are kept, so they are read before the next step
+                    return readVertices(stepId, possibleEdges).thenComposeAsync(properties -> {
+                        List<Subgraph.Edge> selectedEdges = new ArrayList<>(possibleEdges.size());
+                        for (int i = 0; i < possibleEdges.size(); i++) {
+                            if (!step.vertex.matchVertexFilter(properties.get(i))) {
+                                continue;
+                            }
+                            if (!Strings.isNullOrEmpty(step.vertex.select)) {
+                                possibleEdges.get(i).setVertexProperties(
+                                    extractProperties(properties.get(i), step.vertex.select, null));
+                            }
+                            selectedEdges.add(possibleEdges.get(i));
+                        }
+                        return expand(stepId, step, selectedEdges);
+                    }, executor);
+                }
+                if (!Strings.isNullOrEmpty(step.vertex.select)) {
+                    // started on the executor, so that blocking stores read it while the next step is read
+                    vertexReads.add(CompletableFuture.completedFuture((Void) null).thenComposeAsync(
+                        v -> readVertexProperties(stepId, possibleEdges), executor));
+                }
+                return expand(stepId, step, possibleEdges);
+            }, executor);
+        }
+
+        /**
+         * Adds the selected edges to the subgraph, marks the vertices they lead to as visited, and traverses
+         * the next step from them.
+         */
+        private CompletableFuture<Void> expand(int stepId, QueriesSpec.Query.Step step,
+                                               List<Subgraph.Edge> selectedEdges) {
+            List<Object> nextFrontier = new ArrayList<>(selectedEdges.size());
+            for (Subgraph.Edge edge : selectedEdges) {
+                visit(edge.nextVertexId);
+                subgraph.addEdge(edge);
+                nextFrontier.add(edge.nextVertexId);
             }
+            StepMetrics metrics = stepMetrics(stepId);
+            if (metrics != null) {
+                metrics.edgesSelected.addAndGet(selectedEdges.size());
+                metrics.latency.measure(System.nanoTime() - stepStartNs);
+            }
+            stepSpan.finish(selectedEdges.size());
+            return traverse(stepId + 1, nextFrontier);
         }
 
-        return Status.OK;
-    }
+        private CompletableFuture<List<Properties>> readVertices(int stepId, List<Subgraph.Edge> subgraphEdges) {
+            QueriesSpec.Query.Step step = query.steps[stepId];
+            RelationType relationType = vocabulary.getRelationType(new QualifiedName(step.edge.label));
+            QualifiedName vertexLabel = step.edge.isBackward() ?
+                relationType.getFrom().getName() : relationType.getTo().getName();
 
-    private void processVertexToDo(Task task, QueriesSpec.Query.Step step, Subgraph.Edge subgraphEdge) {
+            List<Object> ids = new ArrayList<>(subgraphEdges.size());
+            for (Subgraph.Edge edge : subgraphEdges) {
+                ids.add(edge.nextVertexId);
+            }
+            StepMetrics metrics = stepMetrics(stepId);
+            if (metrics != null) {
+                metrics.verticesRead.addAndGet(ids.size());
+            }
+            return batchReadVerticesAsync(vertexLabel, ids, step.vertex, executor);
+        }
 
-        RelationType relationType = vocabulary.getRelationType(new QualifiedName(step.edge.label));
-        QualifiedName vertexLabel = step.edge.isBackward() ?
-            relationType.getFrom().getName() : relationType.getTo().getName();
+        private CompletableFuture<Void> readVertexProperties(int stepId, List<Subgraph.Edge> subgraphEdges) {
+            QueriesSpec.Query.Step step = query.steps[stepId];
+            return readVertices(stepId, subgraphEdges).thenAcceptAsync(properties -> {
+                for (int i = 0; i < subgraphEdges.size(); i++) {
+                    Properties vertexProperties = extractProperties(properties.get(i), step.vertex.select, null);
+                    subgraphEdges.get(i).setVertexProperties(vertexProperties);
+                }
+            }, executor);
+        }
 
-        this.getMetrics().readVertex.measure(() -> {
-            Properties vertexProperties = readVertex(vertexLabel, task.id, step.vertex);
-            vertexProperties = extractProperties(vertexProperties, step.vertex.select, null);
-            subgraphEdge.setVertexProperties(vertexProperties);
-        });
-    }
+        /**
+         * Selects the edges of one frontier vertex: filtered, limited, and leading to vertices neither visited
+         * nor reached earlier in this step. A vertex filter applies after the limit, to the vertices of the
+         * selected edges, so the vertices are only marked visited once the edges are expanded; a vertex the
+         * filter rejects stays reachable in a later step.
+         */
+        private void traverseOneStep(List<Subgraph.Edge> possibleEdges, QueriesSpec.Query.Step step,
+                                     List<Subgraph.Edge> selectedEdges) {
+            int edgeCounter = 0;
+            for (Subgraph.Edge edge : possibleEdges) {
 
-    public void traverseOneStep(Object id, QueriesSpec.Query.Step step, Set<Object> visitedVertexIds,
-                                LinkedBlockingQueue<Task> tasks, Subgraph subgraph,
-                                int stepId, boolean isLastStep) throws Exception {
-
-        this.getMetrics().readEdge.measure(() -> {
-            try {
-                int edgeCounter = 0;
-
-                List<Subgraph.Edge> possibleEdges = readEdges(id, step.edge);
-
-                for (Subgraph.Edge edge : possibleEdges) {
-
-                    if (!step.edge.matchEdgeFilter(edge.edgeProperties)) {
-                        // this edge is filtered out
-                        continue;
-                    }
-                    edgeCounter++;
-                    if (step.edge.limit > 0 && edgeCounter >= step.edge.limit) {
-                        // no more edge is needed
-                        return;
-                    }
-                    if (!visitedVertexIds.add(edge.nextVertexId)) {
-                        // this new vertex id has already been visited
-                        continue;
-                    }
-
-                    subgraph.addEdge(edge);
-
-                    if (step.vertex != null && !Strings.isNullOrEmpty(step.vertex.select)) {
-                        tasks.put(new Task(edge.nextVertexId, stepId, edge));
-                    }
-                    if (!isLastStep) {
-                        tasks.put(new Task(edge.nextVertexId, stepId + 1, null));
-                    }
+                if (!step.edge.matchEdgeFilter(edge.edgeProperties)) {
+                    // this edge is filtered out
+                    continue;
+                }
+                edgeCounter++;
+                if (step.edge.limit > 0 && edgeCounter > step.edge.limit) {
+                    // no more edge is needed
+                    return;
+                }
+                if (isVisited(edge.nextVertexId) || !reachInStep(edge.nextVertexId)) {
+                    // this new vertex id has already been visited, or reached by another edge of this step
+                    continue;
                 }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
 
-        });
+                selectedEdges.add(edge);
+            }
+        }
 
-    }
+        private void visit(Object vertexId) {
+            if (vertexId instanceof Long) {
+                visitedLongIds.add((Long) vertexId);
+            } else {
+                visitedVertexIds.add(vertexId);
+            }
+        }
 
-    private static class Task {
-        Object id;
-        int stepId;
-        Subgraph.Edge currentEdge;
+        private boolean isVisited(Object vertexId) {
+            if (vertexId instanceof Long) {
+                return visitedLongIds.contains((Long) vertexId);
+            }
+            return visitedVertexIds.contains(vertexId);
+        }
 
-        Task(Object id, int stepId, Subgraph.Edge currentEdge) {
-            this.id = id;
-            this.stepId = stepId;
-            this.currentEdge = currentEdge;
+        /**
+         * @return true if no other edge of this step leads to the vertex
+         */
+        private boolean reachInStep(Object vertexId) {
+            if (vertexId instanceof Long) {
+                return stepLongIds.add((Long) vertexId);
+            }
+            return stepVertexIds.add(vertexId);
         }
     }
 
@@ -21,9 +21,11 @@ package com.uber.ugb.db;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.List;
 
 /*
  * CsvOutputDB writes to System.out or a file defined in env.properties via property "csv.output".
@@ -39,7 +41,7 @@ public class CsvOutputDB extends DB {
             out = System.out;
         } else {
             try {
-                out = new PrintStream(new FileOutputStream(outputFile));
+                out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 16));
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
                 out = System.out;
@@ -56,17 +58,9 @@ public class CsvOutputDB extends DB {
 
     @Override
     public Status writeVertex(QualifiedName label, Object id, Object... keyValues) {
-        synchronized (out){
-            out.print("v:");
-            out.print(label);
-            out.print(",");
-            out.print(id);
-            for (int i = 0; i < keyValues.length - 1; i += 2) {
-                out.print(",");
-                out.print(keyValues[i + 1]);
-            }
-            out.println();
-        }
+        StringBuilder sb = new StringBuilder();
+        appendVertex(sb, label, id, keyValues);
+        print(sb);
         return Status.OK;
     }
 
@@ -75,26 +69,74 @@ public class CsvOutputDB extends DB {
                             QualifiedName outVertexLabel, Object outVertexId,
                             QualifiedName inVertexLabel, Object inVertexId,
                             Object... keyValues) {
-        synchronized (out){
-            out.print("e:");
-            out.print(edgeLabel);
-            out.print(",");
-            out.print(outVertexLabel);
-            out.print(",");
-            out.print(outVertexId);
-            out.print(",");
-            out.print(inVertexLabel);
-            out.print(",");
-            out.print(inVertexId);
-            for (int i = 0; i < keyValues.length - 1; i += 2) {
-                out.print(",");
-                out.print(keyValues[i + 1]);
-            }
-            out.println();
+        StringBuilder sb = new StringBuilder();
+        appendEdge(sb, edgeLabel, outVertexLabel, outVertexId, inVertexLabel, inVertexId, keyValues);
+        print(sb);
+        return Status.OK;
+    }
+
+    @Override
+    public Status writeVertices(List<VertexWrite> writes) {
+        StringBuilder sb = new StringBuilder();
+        for (VertexWrite write : writes) {
+            appendVertex(sb, write.label, write.id, write.keyValues);
+        }
+        print(sb);
+        return Status.OK;
+    }
+
+    @Override
+    public Status writeEdges(List<EdgeWrite> writes) {
+        StringBuilder sb = new StringBuilder();
+        for (EdgeWrite write : writes) {
+            appendEdge(sb, write.edgeLabel,
+                write.outVertexLabel, write.outVertexId,
+                write.inVertexLabel, write.inVertexId,
+                write.keyValues);
         }
+        print(sb);
         return Status.OK;
     }
 
+    private void appendVertex(StringBuilder sb, QualifiedName label, Object id, Object[] keyValues) {
+        sb.append("v:");
+        sb.append(label);
+        sb.append(",");
+        sb.append(id);
+        appendValues(sb, keyValues);
+    }
+
+    private void appendEdge(StringBuilder sb, QualifiedName edgeLabel,
+                            QualifiedName outVertexLabel, Object outVertexId,
+                            QualifiedName inVertexLabel, Object inVertexId,
+                            Object[] keyValues) {
+        sb.append("e:");
+        sb.append(edgeLabel);
+        sb.append(",");
+        sb.append(outVertexLabel);
+        sb.append(",");
+        sb.append(outVertexId);
+        sb.append(",");
+        sb.append(inVertexLabel);
+        sb.append(",");
+        sb.append(inVertexId);
+        appendValues(sb, keyValues);
+    }
+
+    private void appendValues(StringBuilder sb, Object[] keyValues) {
+        for (int i = 0; i < keyValues.length - 1; i += 2) {
+            sb.append(",");
+            sb.append(keyValues[i + 1]);
+        }
+        sb.append(System.lineSeparator());
+    }
+
+    private void print(StringBuilder sb) {
+        synchronized (out) {
+            out.print(sb);
+        }
+    }
+
     @Override
     public Status subgraph(QueriesSpec.Query query, Subgraph subgraph) {
         return Status.NOT_IMPLEMENTED;
@@ -21,13 +21,20 @@ package com.uber.ugb.db;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.uber.ugb.measurement.Metrics;
+import com.uber.ugb.model.PropertyModel;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
 import com.uber.ugb.schema.Vocabulary;
+import com.uber.ugb.trace.Tracer;
+import com.uber.ugb.trace.Tracers;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class DB implements Serializable {
@@ -38,7 +45,15 @@ public abstract class DB implements Serializable {
      */
     private Properties properties = new Properties();
 
-    private Metrics metrics = new Metrics();
+    private volatile Metrics metrics;
+
+    private boolean indexedProperties;
+
+    private transient volatile VertexIdStrategy vertexIdStrategy;
+
+    private transient volatile PropertyCodec propertyCodec;
+
+    private transient volatile Tracer tracer;
 
     protected static Properties extractProperties(Properties properties, String select, String filterField) {
         if (Strings.isNullOrEmpty(select)) {
@@ -51,26 +66,63 @@ public abstract class DB implements Serializable {
                 hasFilterField.set(true);
             }
             if (properties.containsKey(s)) {
-                answer.put(s, properties.getProperty(s));
+                answer.put(s, properties.get(s));
             }
         });
         if (!hasFilterField.get() && filterField != null) {
             if (properties.containsKey(filterField)) {
-                answer.put(filterField, properties.getProperty(filterField));
+                answer.put(filterField, properties.get(filterField));
             }
         }
         return answer;
     }
 
+    /**
+     * @return the fields a vertex step needs, the selected ones and the filtered ones, or null for all of them
+     */
+    protected static Collection<String> selectedFields(QueriesSpec.Query.Step.Vertex vertexQuerySpec) {
+        if (vertexQuerySpec == null || Strings.isNullOrEmpty(vertexQuerySpec.select)) {
+            return null;
+        }
+        Set<String> fields = new LinkedHashSet<>(
+            Splitter.on(',').omitEmptyStrings().trimResults().splitToList(vertexQuerySpec.select));
+        if (vertexQuerySpec.getFilter() != null) {
+            fields.addAll(vertexQuerySpec.getFilter().getFields());
+        }
+        return fields;
+    }
+
     public Vocabulary getVocabulary() {
         return vocabulary;
     }
 
     public void setVocabulary(Vocabulary vocabulary) {
         this.vocabulary = vocabulary;
+        this.vertexIdStrategy = null;
+        this.propertyCodec = null;
+    }
+
+    /**
+     * @return the tracer of the properties, created on first use
+     */
+    public Tracer getTracer() {
+        if (tracer == null) {
+            tracer = Tracers.fromProperties(getProperties());
+        }
+        return tracer;
     }
 
+    /**
+     * @return the metrics, created on first use with the latency precision of the properties
+     */
     public Metrics getMetrics() {
+        if (metrics == null) {
+            synchronized (this) {
+                if (metrics == null) {
+                    metrics = Metrics.fromProperties(getProperties());
+                }
+            }
+        }
         return metrics;
     }
 
@@ -98,8 +150,71 @@ public abstract class DB implements Serializable {
                                      QualifiedName outVertexLabel, Object outVertexId, QualifiedName inVertexLabel, Object inVertexId,
                                      Object... keyValues);
 
+    /**
+     * Writes an edge whose properties are generated from a property model, seeded by the index of the edge.
+     * DBs which hand writes over to other threads override this to generate the properties on those threads.
+     */
+    public Status writeEdge(QualifiedName edgeLabel,
+                            QualifiedName outVertexLabel, Object outVertexId, QualifiedName inVertexLabel, Object inVertexId,
+                            PropertyModel propertyModel, long randomSeed, long edgeIndex) {
+        return writeEdge(edgeLabel, outVertexLabel, outVertexId, inVertexLabel, inVertexId,
+            propertyModel.generateKeyValues(randomSeed, edgeIndex));
+    }
+
+    /**
+     * Whether writes to the adjacency of a vertex must all go through one writer. DBs which read, modify and
+     * write whole adjacency lists return true; parallel writers then split each edge into its outgoing and
+     * incoming halves (EdgeWrite.Direction) and route each half by the vertex owning that adjacency.
+     */
+    public boolean requiresAdjacencyAffinity() {
+        return false;
+    }
+
+    /**
+     * Writes a batch of vertices. Override this to write the batch in fewer round trips than one per vertex.
+     *
+     * @return OK, or the first failed status
+     */
+    public Status writeVertices(List<VertexWrite> writes) {
+        Status status = Status.OK;
+        for (VertexWrite write : writes) {
+            Status s = writeVertex(write.label, write.id, write.keyValues);
+            if (!s.isOk() && status.isOk()) {
+                status = s;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Writes a batch of edges. Override this to write the batch in fewer round trips than one per edge.
+     *
+     * @return OK, or the first failed status
+     */
+    public Status writeEdges(List<EdgeWrite> writes) {
+        Status status = Status.OK;
+        for (EdgeWrite write : writes) {
+            Status s = writeEdge(write.edgeLabel,
+                write.outVertexLabel, write.outVertexId,
+                write.inVertexLabel, write.inVertexId,
+                write.keyValues);
+            if (!s.isOk() && status.isOk()) {
+                status = s;
+            }
+        }
+        return status;
+    }
+
     public abstract Status subgraph(QueriesSpec.Query query, Subgraph subgraph);
 
+    /**
+     * Runs the subgraph query without blocking the calling thread where the DB supports it.
+     * The default runs subgraph on the calling thread.
+     */
+    public CompletableFuture<Status> subgraphAsync(QueriesSpec.Query query, Subgraph subgraph) {
+        return CompletableFuture.completedFuture(subgraph(query, subgraph));
+    }
+
     public Status commitBatch() {
         return Status.OK;
     }
@@ -115,7 +230,14 @@ public abstract class DB implements Serializable {
      * Set the properties for this DB.
      */
     public void setProperties(Properties p) {
+        String format = p.getProperty(PropertyCodec.PROPERTY_FORMAT_PROPERTY, PropertyCodec.FST_FORMAT);
+        if (!PropertyCodec.FST_FORMAT.equals(format) && !PropertyCodec.INDEXED_FORMAT.equals(format)) {
+            throw new IllegalArgumentException("unknown " + PropertyCodec.PROPERTY_FORMAT_PROPERTY + ": " + format);
+        }
         properties = p;
+        this.indexedProperties = PropertyCodec.INDEXED_FORMAT.equals(format);
+        this.vertexIdStrategy = null;
+        this.tracer = null;
     }
 
     /**
@@ -126,11 +248,39 @@ public abstract class DB implements Serializable {
      * @return
      */
     public Object genVertexId(QualifiedName label, long id) {
-        long key = UUID.nameUUIDFromBytes((label.toString() + id).getBytes()).getLeastSignificantBits();
-        if (key < 0) {
-            key = -key;
+        return getVertexIdStrategy().genVertexId(label, id);
+    }
+
+    /**
+     * The strategy selected by the vertex.id.strategy property, created on first use.
+     */
+    public VertexIdStrategy getVertexIdStrategy() {
+        VertexIdStrategy strategy = vertexIdStrategy;
+        if (strategy == null) {
+            strategy = VertexIdStrategy.create(
+                getProperties().getProperty(VertexIdStrategy.VERTEX_ID_STRATEGY_PROPERTY), getVocabulary());
+            vertexIdStrategy = strategy;
+        }
+        return strategy;
+    }
+
+    /**
+     * The codec of the indexed property format, numbering the properties of the vocabulary, created on first use.
+     */
+    public PropertyCodec getPropertyCodec() {
+        PropertyCodec codec = propertyCodec;
+        if (codec == null) {
+            codec = new PropertyCodec(getVocabulary());
+            propertyCodec = codec;
         }
-        return key;
+        return codec;
+    }
+
+    /**
+     * @return true if properties are written in the indexed format of PropertyCodec rather than with FST
+     */
+    protected boolean writesIndexedProperties() {
+        return indexedProperties;
     }
 
     /**
@@ -0,0 +1,57 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.schema.QualifiedName;
+
+/**
+ * EdgeWrite holds the arguments of one DB.writeEdge call, for batched writes.
+ */
+public class EdgeWrite {
+
+    /**
+     * Which adjacency of the edge to write. Only DBs which require adjacency affinity receive OUT or IN halves.
+     */
+    public enum Direction {
+        BOTH, OUT, IN
+    }
+
+    public QualifiedName edgeLabel;
+    public QualifiedName outVertexLabel;
+    public Object outVertexId;
+    public QualifiedName inVertexLabel;
+    public Object inVertexId;
+    public Object[] keyValues;
+    public Direction direction = Direction.BOTH;
+
+    public EdgeWrite() {
+    }
+
+    public EdgeWrite(QualifiedName edgeLabel,
+                     QualifiedName outVertexLabel, Object outVertexId,
+                     QualifiedName inVertexLabel, Object inVertexId,
+                     Object[] keyValues) {
+        this.edgeLabel = edgeLabel;
+        this.outVertexLabel = outVertexLabel;
+        this.outVertexId = outVertexId;
+        this.inVertexLabel = inVertexLabel;
+        this.inVertexId = inVertexId;
+        this.keyValues = keyValues;
+    }
+}
@@ -18,21 +18,58 @@
 
 package com.uber.ugb.db;
 
+import com.uber.ugb.measurement.Metrics;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
+import com.uber.ugb.storage.CachingKeyValueStore;
 import com.uber.ugb.storage.KeyValueStore;
+import com.uber.ugb.storage.TracingKeyValueStore;
 import org.nustaq.serialization.FSTConfiguration;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+/**
+ * KeyValueDB keeps a vertex under one key and each adjacency list of a vertex under its own keys.
+ *
+ * With the chunked layout (the default), the adjacency key holds a small head with a marker, the number of chunks
+ * and the number of edges in the last chunk, and the edges are appended as length prefixed records to numbered
+ * chunk keys of at most kv.adjacency.chunk.size edges. An append only touches the head and the last chunk, using
+ * the native append of the store where there is one. Edges appended again are deduplicated on read, the last
+ * properties win.
+ *
+ * With the list layout, the adjacency key holds the whole serialized list, which is read, modified and rewritten
+ * on every append.
+ *
+ * Reads tell the layouts apart by the marker of the head, so either layout reads adjacency lists written with the
+ * other, and appends carry a list written with the other layout over to their own.
+ */
 public class KeyValueDB extends AbstractSubgraphDB {
 
+    public static final String KV_ADJACENCY_LAYOUT_PROPERTY = "kv.adjacency.layout";
+    public static final String KV_ADJACENCY_CHUNK_SIZE_PROPERTY = "kv.adjacency.chunk.size";
+    public static final String CHUNKED_LAYOUT = "chunked";
+    public static final String LIST_LAYOUT = "list";
+
     private static FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
     private static String Separator = ":";
     private static String REVERSE_SUFFIX = "_r";
+    private static String CHUNK_SEPARATOR = "#";
+    private static final byte[] CHUNKED_HEAD_MAGIC = {(byte) 0xfe, 'U', 'G', 'C'};
+    private static final byte CHUNKED_HEAD_VERSION = 1;
+    private static final int CHUNKED_HEAD_BYTES = CHUNKED_HEAD_MAGIC.length + 1 + Integer.BYTES * 2;
+    private static final int DEFAULT_ADJACENCY_CHUNK_SIZE = 256;
 
     static {
         conf.registerClass(Properties.class);
@@ -42,26 +79,110 @@ public class KeyValueDB extends AbstractSubgraphDB {
 
     private KeyValueStore kvs;
 
+    // the number of edges in one adjacency chunk, or 0 for the list layout
+    private int adjacencyChunkSize = DEFAULT_ADJACENCY_CHUNK_SIZE;
+
     public KeyValueDB() {
     }
 
+    @Override
+    public void setProperties(Properties p) {
+        super.setProperties(p);
+        String layout = p.getProperty(KV_ADJACENCY_LAYOUT_PROPERTY, CHUNKED_LAYOUT);
+        if (LIST_LAYOUT.equals(layout)) {
+            adjacencyChunkSize = 0;
+        } else if (CHUNKED_LAYOUT.equals(layout)) {
+            adjacencyChunkSize = Math.max(1, Integer.parseInt(p.getProperty(
+                KV_ADJACENCY_CHUNK_SIZE_PROPERTY, String.valueOf(DEFAULT_ADJACENCY_CHUNK_SIZE))));
+        } else {
+            throw new IllegalArgumentException("unknown " + KV_ADJACENCY_LAYOUT_PROPERTY + ": " + layout);
+        }
+    }
+
+    /**
+     * Sets the store, traced and behind a cache if the properties ask for them, so set the properties first.
+     */
     public void setKeyValueStore(KeyValueStore kvs) {
-        this.kvs = kvs;
+        this.kvs = CachingKeyValueStore.wrap(
+            TracingKeyValueStore.wrap(kvs, getTracer()), getProperties(), this::getMetrics);
     }
 
     @Override
     public Properties readVertex(QualifiedName label, Object id, QueriesSpec.Query.Step.Vertex vertexQuerySpec) {
         byte[] value = kvs.get(genVertexKey(label, id));
-        if (value == null) {
-            return new Properties();
+        return toVertexProperties(value, selectedFields(vertexQuerySpec));
+    }
+
+    @Override
+    public CompletableFuture<List<Properties>> batchReadVerticesAsync(QualifiedName label, List<Object> ids,
+                                                                      QueriesSpec.Query.Step.Vertex vertexQuerySpec,
+                                                                      Executor executor) {
+        long start = System.nanoTime();
+        List<byte[]> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            keys.add(genVertexKey(label, id));
         }
-        return (Properties) conf.asObject(value);
+        Collection<String> fields = selectedFields(vertexQuerySpec);
+        return kvs.multiGetAsync(keys).thenApply(values -> {
+            List<Properties> vertices = new ArrayList<>(ids.size());
+            for (byte[] value : values) {
+                vertices.add(toVertexProperties(value, fields));
+            }
+            Metrics metrics = this.getMetrics();
+            Metrics.measureBatch(metrics.readVertexBatch, metrics.readVertexBatchItems,
+                System.nanoTime() - start, ids.size());
+            return vertices;
+        });
     }
 
     @Override
     public List<Subgraph.Edge> readEdges(Object startVertexId, QueriesSpec.Query.Step.Edge edgeQuerySpec) {
         byte[] edgeKey = genEdgeKey(new QualifiedName(edgeQuerySpec.label), startVertexId, edgeQuerySpec.isBackward());
-        List<Edge> adjacencyList = readEdgeList(kvs.get(edgeKey));
+        List<Edge> adjacencyList = readAdjacencyLists(Collections.singletonList(edgeKey)).join().get(0);
+        return orderAndLimit(toSubgraphEdges(startVertexId, adjacencyList), edgeQuerySpec, false);
+    }
+
+    /**
+     * Reads the adjacency lists of all the start vertices with one multiGet, plus one multiGet for all the chunks
+     * of those written with the chunked layout.
+     */
+    @Override
+    public CompletableFuture<List<List<Subgraph.Edge>>> batchReadEdgesAsync(List<Object> startVertexIds,
+                                                                            QueriesSpec.Query.Step.Edge edgeQuerySpec,
+                                                                            Executor executor) {
+        long start = System.nanoTime();
+        QualifiedName edgeLabel = new QualifiedName(edgeQuerySpec.label);
+        List<byte[]> edgeKeys = new ArrayList<>(startVertexIds.size());
+        for (Object startVertexId : startVertexIds) {
+            edgeKeys.add(genEdgeKey(edgeLabel, startVertexId, edgeQuerySpec.isBackward()));
+        }
+        return readAdjacencyLists(edgeKeys).thenApply(lists -> {
+            List<List<Subgraph.Edge>> edges = new ArrayList<>(startVertexIds.size());
+            for (int i = 0; i < startVertexIds.size(); i++) {
+                edges.add(orderAndLimit(toSubgraphEdges(startVertexIds.get(i), lists.get(i)),
+                    edgeQuerySpec, false));
+            }
+            Metrics metrics = this.getMetrics();
+            Metrics.measureBatch(metrics.readEdgeBatch, metrics.readEdgeBatchItems,
+                System.nanoTime() - start, startVertexIds.size());
+            return edges;
+        });
+    }
+
+    /**
+     * @param fields the fields to decode if the value is in the indexed format, null for all of them
+     */
+    private Properties toVertexProperties(byte[] value, Collection<String> fields) {
+        if (value == null) {
+            return new Properties();
+        }
+        if (PropertyCodec.isIndexed(value)) {
+            return getPropertyCodec().decode(value, fields);
+        }
+        return (Properties) conf.asObject(value);
+    }
+
+    private List<Subgraph.Edge> toSubgraphEdges(Object startVertexId, List<Edge> adjacencyList) {
         List<Subgraph.Edge> edges = new ArrayList<>();
         for (Edge item : adjacencyList) {
             Subgraph.Edge edge = new Subgraph.Edge(startVertexId, item.nextVertexId, item.edgeProperties);
@@ -72,8 +193,7 @@ public class KeyValueDB extends AbstractSubgraphDB {
 
     @Override
     public Status writeVertex(QualifiedName label, Object id, Object... keyValues) {
-        byte[] value = conf.asByteArray(toProperties(keyValues));
-        kvs.put(genVertexKey(label, id), value);
+        kvs.put(genVertexKey(label, id), vertexValue(keyValues));
         return Status.OK;
     }
 
@@ -82,24 +202,257 @@ public class KeyValueDB extends AbstractSubgraphDB {
                             QualifiedName outVertexLabel, Object outVertexId,
                             QualifiedName inVertexLabel, Object inVertexId,
                             Object... keyValues) {
+        if (adjacencyChunkSize > 0) {
+            return writeEdges(Collections.singletonList(
+                new EdgeWrite(edgeLabel, outVertexLabel, outVertexId, inVertexLabel, inVertexId, keyValues)));
+        }
         Properties edgeProperties = toProperties(keyValues);
         byte[] forwardEdgeKey = genEdgeKey(edgeLabel, outVertexId, false);
         byte[] backwardEdgeKey = genEdgeKey(edgeLabel, inVertexId, true);
-        byte[] forwardEdgeValue = kvs.get(forwardEdgeKey);
-        byte[] backwardEdgeValue = kvs.get(backwardEdgeKey);
-        byte[] forwardAdjacencyList = appendToAdjacencyList(forwardEdgeValue, inVertexId, edgeProperties);
-        byte[] backwardAdjacencyList = appendToAdjacencyList(backwardEdgeValue, outVertexId, edgeProperties);
-        if (forwardAdjacencyList != null) {
-            kvs.put(forwardEdgeKey, forwardAdjacencyList);
+        List<Edge> forwardAdjacencyList = readAdjacencyList(forwardEdgeKey);
+        List<Edge> backwardAdjacencyList = readAdjacencyList(backwardEdgeKey);
+        if (appendToAdjacencyList(forwardAdjacencyList, inVertexId, edgeProperties)) {
+            kvs.put(forwardEdgeKey, conf.asByteArray(forwardAdjacencyList));
         }
-        if (backwardAdjacencyList != null) {
-            kvs.put(backwardEdgeKey, backwardAdjacencyList);
+        if (appendToAdjacencyList(backwardAdjacencyList, outVertexId, edgeProperties)) {
+            kvs.put(backwardEdgeKey, conf.asByteArray(backwardAdjacencyList));
+        }
+        return Status.OK;
+    }
+
+    /**
+     * Adjacency lists and their heads are read, modified and written, so concurrent appends to one list would
+     * lose edges.
+     */
+    @Override
+    public boolean requiresAdjacencyAffinity() {
+        return true;
+    }
+
+    @Override
+    public Status writeVertices(List<VertexWrite> writes) {
+        List<byte[]> keys = new ArrayList<>(writes.size());
+        List<byte[]> values = new ArrayList<>(writes.size());
+        for (VertexWrite write : writes) {
+            keys.add(genVertexKey(write.label, write.id));
+            values.add(vertexValue(write.keyValues));
+        }
+        kvs.multiPut(keys, values);
+        return Status.OK;
+    }
+
+    /**
+     * Appends the edges of a batch to their adjacency lists, reading and writing each list once per batch.
+     * With the chunked layout only the head and the chunks at the end of each list are written.
+     */
+    @Override
+    public Status writeEdges(List<EdgeWrite> writes) {
+        // adjacency list key -> (next vertex id, edge properties) appended in order
+        Map<String, List<Edge>> appendsByKey = new LinkedHashMap<>();
+        for (EdgeWrite write : writes) {
+            Properties edgeProperties = toProperties(write.keyValues);
+            if (write.direction != EdgeWrite.Direction.IN) {
+                addAppend(appendsByKey, genEdgeKey(write.edgeLabel, write.outVertexId, false),
+                    write.inVertexId, edgeProperties);
+            }
+            if (write.direction != EdgeWrite.Direction.OUT) {
+                addAppend(appendsByKey, genEdgeKey(write.edgeLabel, write.inVertexId, true),
+                    write.outVertexId, edgeProperties);
+            }
+        }
+
+        int chunkSize = adjacencyChunkSize;
+        List<byte[]> keys = new ArrayList<>(appendsByKey.size());
+        List<byte[]> values = new ArrayList<>(appendsByKey.size());
+        for (Map.Entry<String, List<Edge>> entry : appendsByKey.entrySet()) {
+            if (chunkSize > 0) {
+                appendToChunks(entry.getKey(), entry.getValue(), chunkSize, keys, values);
+                continue;
+            }
+            byte[] key = entry.getKey().getBytes();
+            List<Edge> adjacencyList = readAdjacencyList(key);
+            boolean changed = false;
+            for (Edge edge : entry.getValue()) {
+                changed |= appendToAdjacencyList(adjacencyList, edge.nextVertexId, edge.edgeProperties);
+            }
+            if (changed) {
+                keys.add(key);
+                values.add(conf.asByteArray(adjacencyList));
+            }
         }
+        kvs.multiPut(keys, values);
         return Status.OK;
     }
 
+    /**
+     * Appends the edges to the chunks of one adjacency list. The last chunk is appended to in place,
+     * new chunks and the head are added to the keys and values to put. A list written with the list layout
+     * is rewritten into chunks ahead of the edges.
+     */
+    private void appendToChunks(String headKey, List<Edge> edges, int chunkSize,
+                                List<byte[]> keys, List<byte[]> values) {
+        byte[] head = kvs.get(headKey.getBytes());
+        int chunkCount = 0;
+        int lastChunkEdges = 0;
+        if (isChunkedHead(head)) {
+            ByteBuffer buffer = ByteBuffer.wrap(head, CHUNKED_HEAD_MAGIC.length + 1, Integer.BYTES * 2);
+            chunkCount = buffer.getInt();
+            lastChunkEdges = buffer.getInt();
+        } else if (head != null) {
+            List<Edge> listed = readEdgeList(head);
+            listed.addAll(edges);
+            edges = listed;
+        }
+        boolean toLastChunk = chunkCount > 0 && lastChunkEdges < chunkSize;
+        if (!toLastChunk) {
+            chunkCount++;
+            lastChunkEdges = 0;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Edge edge : edges) {
+            if (lastChunkEdges == chunkSize) {
+                writeChunk(genChunkKey(headKey, chunkCount - 1), records.toByteArray(), toLastChunk, keys, values);
+                records.reset();
+                toLastChunk = false;
+                chunkCount++;
+                lastChunkEdges = 0;
+            }
+            writeRecord(records, conf.asByteArray(edge));
+            lastChunkEdges++;
+        }
+        writeChunk(genChunkKey(headKey, chunkCount - 1), records.toByteArray(), toLastChunk, keys, values);
+        keys.add(headKey.getBytes());
+        values.add(ByteBuffer.allocate(CHUNKED_HEAD_BYTES).put(CHUNKED_HEAD_MAGIC).put(CHUNKED_HEAD_VERSION)
+            .putInt(chunkCount).putInt(lastChunkEdges).array());
+    }
+
+    /**
+     * @return true if the value is the head of an adjacency list written with the chunked layout
+     */
+    static boolean isChunkedHead(byte[] value) {
+        if (value == null || value.length != CHUNKED_HEAD_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < CHUNKED_HEAD_MAGIC.length; i++) {
+            if (value[i] != CHUNKED_HEAD_MAGIC[i]) {
+                return false;
+            }
+        }
+        return value[CHUNKED_HEAD_MAGIC.length] == CHUNKED_HEAD_VERSION;
+    }
+
+    private void writeChunk(byte[] chunkKey, byte[] records, boolean toLastChunk,
+                            List<byte[]> keys, List<byte[]> values) {
+        if (toLastChunk) {
+            kvs.append(chunkKey, records);
+        } else {
+            keys.add(chunkKey);
+            values.add(records);
+        }
+    }
+
+    private List<Edge> readAdjacencyList(byte[] key) {
+        return readAdjacencyLists(Collections.singletonList(key)).join().get(0);
+    }
+
+    /**
+     * Reads adjacency lists of either layout. Those written with the chunked layout are read from their chunks,
+     * keeping the first position and the last properties of each edge.
+     */
+    private CompletableFuture<List<List<Edge>>> readAdjacencyLists(List<byte[]> headKeys) {
+        return kvs.multiGetAsync(headKeys).thenCompose(heads -> {
+            int[] chunkCounts = new int[headKeys.size()];
+            List<byte[]> chunkKeys = new ArrayList<>();
+            for (int i = 0; i < headKeys.size(); i++) {
+                byte[] head = heads.get(i);
+                if (!isChunkedHead(head)) {
+                    continue;
+                }
+                chunkCounts[i] = ByteBuffer.wrap(head, CHUNKED_HEAD_MAGIC.length + 1, Integer.BYTES).getInt();
+                String headKey = new String(headKeys.get(i));
+                for (int c = 0; c < chunkCounts[i]; c++) {
+                    chunkKeys.add(genChunkKey(headKey, c));
+                }
+            }
+            CompletableFuture<List<byte[]>> chunkValues = chunkKeys.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyList()) : kvs.multiGetAsync(chunkKeys);
+            return chunkValues.thenApply(chunks -> {
+                List<List<Edge>> adjacencyLists = new ArrayList<>(headKeys.size());
+                int chunkIndex = 0;
+                for (int i = 0; i < headKeys.size(); i++) {
+                    if (!isChunkedHead(heads.get(i))) {
+                        adjacencyLists.add(readEdgeList(heads.get(i)));
+                        continue;
+                    }
+                    Map<Object, Edge> edges = new LinkedHashMap<>();
+                    for (int c = 0; c < chunkCounts[i]; c++) {
+                        byte[] chunk = chunks.get(chunkIndex++);
+                        if (chunk != null) {
+                            readChunk(chunk, edges);
+                        }
+                    }
+                    adjacencyLists.add(new ArrayList<>(edges.values()));
+                }
+                return adjacencyLists;
+            });
+        });
+    }
+
+    private void readChunk(byte[] chunk, Map<Object, Edge> edges) {
+        ByteBuffer records = ByteBuffer.wrap(chunk);
+        while (records.hasRemaining()) {
+            int length = readVarInt(records);
+            Edge edge = (Edge) conf.asObject(
+                Arrays.copyOfRange(chunk, records.position(), records.position() + length));
+            records.position(records.position() + length);
+            Edge existing = edges.putIfAbsent(edge.nextVertexId, edge);
+            if (existing != null) {
+                existing.edgeProperties = edge.edgeProperties;
+            }
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, byte[] record) {
+        int length = record.length;
+        while ((length & ~0x7f) != 0) {
+            out.write((length & 0x7f) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(record, 0, record.length);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private void addAppend(Map<String, List<Edge>> appendsByKey, byte[] key, Object vertexId,
+                           Properties edgeProperties) {
+        Edge edge = new Edge();
+        edge.nextVertexId = vertexId;
+        edge.edgeProperties = edgeProperties;
+        appendsByKey.computeIfAbsent(new String(key), k -> new ArrayList<>()).add(edge);
+    }
+
     protected byte[] appendToAdjacencyList(byte[] existingList, Object vertexId, Properties edgeProperties) {
         List<Edge> adjancencyList = existingList == null ? new ArrayList<>() : (List<Edge>) conf.asObject(existingList);
+        if (!appendToAdjacencyList(adjancencyList, vertexId, edgeProperties)) {
+            return null;
+        }
+        return conf.asByteArray(adjancencyList);
+    }
+
+    /**
+     * @return false if the adjacency list already has the edge with the same properties
+     */
+    private boolean appendToAdjacencyList(List<Edge> adjancencyList, Object vertexId, Properties edgeProperties) {
         Edge edge = new Edge();
         edge.nextVertexId = vertexId;
         edge.edgeProperties = edgeProperties;
@@ -107,7 +460,7 @@ public class KeyValueDB extends AbstractSubgraphDB {
         for (Edge e : adjancencyList) {
             if (e.nextVertexId.equals(edge.nextVertexId)) {
                 if (e.edgeProperties.equals(edgeProperties)) {
-                    return null;
+                    return false;
                 } else {
                     e.edgeProperties = edge.edgeProperties;
                     found = true;
@@ -118,7 +471,7 @@ public class KeyValueDB extends AbstractSubgraphDB {
         if (!found) {
             adjancencyList.add(edge);
         }
-        return conf.asByteArray(adjancencyList);
+        return true;
     }
 
     private byte[] genVertexKey(QualifiedName label, Object id) {
@@ -132,6 +485,10 @@ public class KeyValueDB extends AbstractSubgraphDB {
         return (startVertexId + Separator + edgeLabel + REVERSE_SUFFIX).getBytes();
     }
 
+    private byte[] genChunkKey(String headKey, int chunk) {
+        return (headKey + CHUNK_SEPARATOR + chunk).getBytes();
+    }
+
     protected List<Edge> readEdgeList(byte[] edgeListBytes) {
         if (edgeListBytes == null) {
             return new ArrayList<>();
@@ -139,6 +496,13 @@ public class KeyValueDB extends AbstractSubgraphDB {
         return (List<Edge>) conf.asObject(edgeListBytes);
     }
 
+    private byte[] vertexValue(Object[] keyValues) {
+        if (writesIndexedProperties()) {
+            return getPropertyCodec().encode(keyValues);
+        }
+        return conf.asByteArray(toProperties(keyValues));
+    }
+
     protected Properties toProperties(Object[] keyValues) {
         Properties properties = new Properties();
         if (keyValues != null) {
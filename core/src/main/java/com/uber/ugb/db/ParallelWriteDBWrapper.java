@@ -19,38 +19,70 @@
 package com.uber.ugb.db;
 
 import com.uber.ugb.measurement.Metrics;
+import com.uber.ugb.model.PropertyModel;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
 import com.uber.ugb.schema.Vocabulary;
+import com.uber.ugb.trace.Span;
+import com.uber.ugb.trace.Tracer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /*
- * ParallelWriteDBWrapper wraps a DB instance and parallelizes the writes
+ * ParallelWriteDBWrapper wraps a DB instance and parallelizes the writes.
+ *
+ * Each worker owns a bounded ring of reusable write slots. Producers claim a slot with a CAS, fill it in place
+ * and publish it; the worker takes up to write.batch.size published slots at a time, hands them to the DB
+ * as one batch, and only then releases the slots back to the producers. A producer stays on one worker for
+ * a batch worth of writes before moving on to the next worker. An idle worker parks until a producer
+ * publishes to its ring and unparks it.
+ *
+ * When the DB requires adjacency affinity, each edge is split into its outgoing and incoming halves, and each
+ * half goes to the worker owning the vertex of that adjacency. Every adjacency then has a single writer, and
+ * the appends to one adjacency within a batch can be coalesced by the DB.
  */
 public class ParallelWriteDBWrapper extends DB {
 
+    public static final String WRITE_BATCH_SIZE_PROPERTY = "write.batch.size";
+
+    // a backstop only, publish unparks the idle worker
+    private static final long IDLE_PARK_NS = 10_000_000L;
+    private static final long STALL_PARK_NS = 10_000L;
+
     private DB db;
     private int concurrency;
-    private ArrayBlockingQueue todos;
-    private AtomicLong todoCounter;
-    private AtomicLong runnableCounter;
-    private AtomicBoolean isClosing;
+    private int batchSize;
+    private boolean adjacencyAffinity;
+    private WriteRing[] rings;
+    private ThreadLocal<ProducerCursor> producerCursor = ThreadLocal.withInitial(ProducerCursor::new);
+    private volatile boolean isClosing;
+    // counted down by the workers, null until startup
+    private volatile CountDownLatch stopped;
     private ExecutorService executorService;
 
     public ParallelWriteDBWrapper(DB db, int concurrency) {
+        this(db, concurrency, Integer.parseInt(db.getProperties().getProperty(WRITE_BATCH_SIZE_PROPERTY, "1")));
+    }
+
+    public ParallelWriteDBWrapper(DB db, int concurrency, int batchSize) {
         this.db = db;
         this.concurrency = concurrency;
-        this.todos = new ArrayBlockingQueue(concurrency);
-        this.todoCounter = new AtomicLong();
-        this.runnableCounter = new AtomicLong();
-        this.isClosing = new AtomicBoolean();
+        this.batchSize = Math.max(1, batchSize);
+        this.adjacencyAffinity = db.requiresAdjacencyAffinity();
+        this.rings = new WriteRing[concurrency];
+        // room for the batch being written plus the batches being filled
+        int capacity = Integer.highestOneBit(Math.max(1024, 4 * this.batchSize) - 1) << 1;
+        for (int i = 0; i < concurrency; i++) {
+            this.rings[i] = new WriteRing(i, capacity);
+        }
         this.executorService = Executors.newFixedThreadPool(concurrency);
     }
 
@@ -74,9 +106,14 @@ public class ParallelWriteDBWrapper extends DB {
         this.db.setMetrics(metrics);
     }
 
+    @Override
+    public Tracer getTracer() {
+        return this.db.getTracer();
+    }
+
     @Override
     public void init() throws DBException {
-        this.db.setMetrics(new Metrics());
+        this.db.setMetrics(Metrics.fromProperties(this.db.getProperties()));
         this.db.init();
     }
 
@@ -106,80 +143,106 @@ public class ParallelWriteDBWrapper extends DB {
     }
 
     public void startup() {
+        CountDownLatch workers = new CountDownLatch(concurrency);
+        this.stopped = workers;
         for (int i = 0; i < concurrency; i++) {
-            runnableCounter.incrementAndGet();
+            WriteRing ring = rings[i];
             executorService.execute(() -> {
                 try {
-                    while (true) {
-                        Object todo = null;
-                        try {
-                            todo = todos.poll(500, TimeUnit.MILLISECONDS);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                        if (todo == null) {
-                            if (this.isClosing.get() && this.todoCounter.get() <= 0) {
-                                break;
-                            } else {
-                                continue;
-                            }
-                        }
-                        if (todo instanceof VertexWriteRequest) {
-                            VertexWriteRequest request = (VertexWriteRequest) todo;
-                            this.db.getMetrics().writeVertex.measure(() -> {
-                                this.db.writeVertex(request.label, request.id, request.keyValues);
-                            });
-                            this.todoCounter.decrementAndGet();
-                        }
-                        if (todo instanceof EdgeWriteRequest) {
-                            EdgeWriteRequest request = (EdgeWriteRequest) todo;
-                            this.db.getMetrics().writeEdge.measure(() -> {
-                                this.db.writeEdge(request.edgeLabel,
-                                    request.outVertexLabel, request.outVertexId,
-                                    request.inVertexLabel, request.inVertexId,
-                                    request.keyValues);
-                            });
-                            this.todoCounter.decrementAndGet();
-                        }
-                    }
+                    drain(ring);
                 } finally {
-                    runnableCounter.decrementAndGet();
+                    workers.countDown();
                 }
             });
         }
+    }
+
+    private void drain(WriteRing ring) {
+        ring.consumer = Thread.currentThread();
+        List<WriteSlot> batch = new ArrayList<>(batchSize);
+        List<VertexWrite> vertexWrites = new ArrayList<>(batchSize);
+        List<EdgeWrite> edgeWrites = new ArrayList<>(batchSize);
+        Metrics metrics = this.db.getMetrics();
+        while (true) {
+            int n = ring.drainTo(batch, batchSize);
+            if (n == 0) {
+                if (isClosing && ring.isEmpty()) {
+                    break;
+                }
+                long idleStart = System.nanoTime();
+                // parked is set before checking the ring again, so a publish after the check sees it and unparks
+                ring.parked = true;
+                if (!ring.hasPublished() && !isClosing) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NS);
+                }
+                ring.parked = false;
+                metrics.writeWorkerIdleNs.addAndGet(System.nanoTime() - idleStart);
+                continue;
+            }
+            metrics.sampleWriteQueueDepth(ring.size());
+
+            for (WriteSlot slot : batch) {
+                if (slot.isEdge) {
+                    if (slot.propertyModel != null) {
+                        slot.edge.keyValues = slot.propertyModel.generateKeyValues(slot.randomSeed, slot.edgeIndex);
+                    }
+                    edgeWrites.add(slot.edge);
+                } else {
+                    vertexWrites.add(slot.vertex);
+                }
+            }
+            if (!vertexWrites.isEmpty()) {
+                long start = System.nanoTime();
+                this.db.writeVertices(vertexWrites);
+                Metrics.measureBatch(metrics.writeVertexBatch, metrics.writeVertexBatchItems,
+                    System.nanoTime() - start, vertexWrites.size());
+            }
+            if (!edgeWrites.isEmpty()) {
+                long start = System.nanoTime();
+                this.db.writeEdges(edgeWrites);
+                Metrics.measureBatch(metrics.writeEdgeBatch, metrics.writeEdgeBatchItems,
+                    System.nanoTime() - start, edgeWrites.size());
+            }
 
+            for (WriteSlot slot : batch) {
+                slot.clear();
+            }
+            batch.clear();
+            vertexWrites.clear();
+            edgeWrites.clear();
+            ring.release(n);
+        }
     }
 
     public void shutdown() {
-        this.isClosing.set(true);
+        this.isClosing = true;
+        for (WriteRing ring : rings) {
+            LockSupport.unpark(ring.consumer);
+        }
 
-        while (runnableCounter.get() > 0) {
+        CountDownLatch workers = stopped;
+        if (workers != null) {
             try {
-                Thread.sleep(1000);
+                workers.await();
             } catch (InterruptedException e) {
                 e.printStackTrace();
+                Thread.currentThread().interrupt();
             }
         }
 
-        executorService.shutdownNow();
-        try {
-            while (!executorService.awaitTermination(1, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        }
-
+        executorService.shutdown();
     }
 
     @Override
     public Status writeVertex(QualifiedName label, Object id, Object... keyValues) {
-        try {
-            this.todoCounter.incrementAndGet();
-            this.todos.put(new VertexWriteRequest(label, id, keyValues));
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        WriteRing ring = nextRing();
+        long sequence = claim(ring);
+        WriteSlot slot = ring.slot(sequence);
+        slot.isEdge = false;
+        slot.vertex.label = label;
+        slot.vertex.id = id;
+        slot.vertex.keyValues = keyValues;
+        ring.publish(sequence);
         return Status.OK;
     }
 
@@ -188,54 +251,216 @@ public class ParallelWriteDBWrapper extends DB {
                             QualifiedName outVertexLabel, Object outVertexId,
                             QualifiedName inVertexLabel, Object inVertexId,
                             Object... keyValues) {
-        try {
-            this.todoCounter.incrementAndGet();
-            this.todos.put(new EdgeWriteRequest(
-                edgeLabel,
-                outVertexLabel, outVertexId,
-                inVertexLabel, inVertexId,
-                keyValues));
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        return writeEdge(edgeLabel, outVertexLabel, outVertexId, inVertexLabel, inVertexId,
+            keyValues, null, 0, 0);
+    }
+
+    @Override
+    public Status writeEdge(QualifiedName edgeLabel,
+                            QualifiedName outVertexLabel, Object outVertexId,
+                            QualifiedName inVertexLabel, Object inVertexId,
+                            PropertyModel propertyModel, long randomSeed, long edgeIndex) {
+        return writeEdge(edgeLabel, outVertexLabel, outVertexId, inVertexLabel, inVertexId,
+            null, propertyModel, randomSeed, edgeIndex);
+    }
+
+    // when propertyModel is set, the properties are generated by the worker
+    private Status writeEdge(QualifiedName edgeLabel,
+                             QualifiedName outVertexLabel, Object outVertexId,
+                             QualifiedName inVertexLabel, Object inVertexId,
+                             Object[] keyValues, PropertyModel propertyModel, long randomSeed, long edgeIndex) {
+        if (!adjacencyAffinity) {
+            enqueueEdge(nextRing(), EdgeWrite.Direction.BOTH, edgeLabel,
+                outVertexLabel, outVertexId, inVertexLabel, inVertexId,
+                keyValues, propertyModel, randomSeed, edgeIndex);
+            return Status.OK;
         }
+        // both halves generate the same properties from the same seed and edge index
+        enqueueEdge(ringOf(outVertexId), EdgeWrite.Direction.OUT, edgeLabel,
+            outVertexLabel, outVertexId, inVertexLabel, inVertexId,
+            keyValues, propertyModel, randomSeed, edgeIndex);
+        enqueueEdge(ringOf(inVertexId), EdgeWrite.Direction.IN, edgeLabel,
+            outVertexLabel, outVertexId, inVertexLabel, inVertexId,
+            keyValues, propertyModel, randomSeed, edgeIndex);
         return Status.OK;
     }
 
+    private void enqueueEdge(WriteRing ring, EdgeWrite.Direction direction, QualifiedName edgeLabel,
+                             QualifiedName outVertexLabel, Object outVertexId,
+                             QualifiedName inVertexLabel, Object inVertexId,
+                             Object[] keyValues, PropertyModel propertyModel, long randomSeed, long edgeIndex) {
+        long sequence = claim(ring);
+        WriteSlot slot = ring.slot(sequence);
+        slot.isEdge = true;
+        slot.edge.direction = direction;
+        slot.edge.edgeLabel = edgeLabel;
+        slot.edge.outVertexLabel = outVertexLabel;
+        slot.edge.outVertexId = outVertexId;
+        slot.edge.inVertexLabel = inVertexLabel;
+        slot.edge.inVertexId = inVertexId;
+        slot.edge.keyValues = keyValues;
+        slot.propertyModel = propertyModel;
+        slot.randomSeed = randomSeed;
+        slot.edgeIndex = edgeIndex;
+        ring.publish(sequence);
+    }
+
     @Override
     public Status subgraph(QueriesSpec.Query query, Subgraph subgraph) {
         return Status.NOT_IMPLEMENTED;
     }
 
-    class VertexWriteRequest {
-        QualifiedName label;
-        Object id;
-        Object[] keyValues;
-
-        public VertexWriteRequest(QualifiedName label, Object id, Object[] keyValues) {
-            this.label = label;
-            this.id = id;
-            this.keyValues = keyValues;
-        }
-    }
-
-    class EdgeWriteRequest {
-        QualifiedName edgeLabel;
-        QualifiedName outVertexLabel;
-        Object outVertexId;
-        QualifiedName inVertexLabel;
-        Object inVertexId;
-        Object[] keyValues;
-
-        public EdgeWriteRequest(QualifiedName edgeLabel,
-                                QualifiedName outVertexLabel, Object outVertexId,
-                                QualifiedName inVertexLabel, Object inVertexId,
-                                Object[] keyValues) {
-            this.edgeLabel = edgeLabel;
-            this.outVertexLabel = outVertexLabel;
-            this.outVertexId = outVertexId;
-            this.inVertexLabel = inVertexLabel;
-            this.inVertexId = inVertexId;
-            this.keyValues = keyValues;
+    private WriteRing nextRing() {
+        ProducerCursor cursor = producerCursor.get();
+        if (++cursor.count >= batchSize) {
+            cursor.count = 0;
+            cursor.ring = (cursor.ring + 1) % concurrency;
+        }
+        return rings[cursor.ring];
+    }
+
+    private WriteRing ringOf(Object vertexId) {
+        int h = vertexId.hashCode();
+        h ^= h >>> 16;
+        return rings[Math.floorMod(h * 0x9e3779b9, concurrency)];
+    }
+
+    private long claim(WriteRing ring) {
+        long sequence = ring.tryClaim();
+        if (sequence >= 0) {
+            return sequence;
+        }
+        long stallStart = System.nanoTime();
+        Span span = getTracer().producerStall(ring.index);
+        while ((sequence = ring.tryClaim()) < 0) {
+            LockSupport.parkNanos(this, STALL_PARK_NS);
+        }
+        span.finish();
+        this.db.getMetrics().writeProducerStallNs.addAndGet(System.nanoTime() - stallStart);
+        return sequence;
+    }
+
+    private static class ProducerCursor {
+        int ring;
+        int count;
+    }
+
+    /**
+     * A reusable write request. The vertex or edge write is handed to the DB as is, so the slot is only
+     * reused once the DB returns.
+     */
+    static class WriteSlot {
+        final VertexWrite vertex = new VertexWrite();
+        final EdgeWrite edge = new EdgeWrite();
+        boolean isEdge;
+        PropertyModel propertyModel;
+        long randomSeed;
+        long edgeIndex;
+
+        void clear() {
+            vertex.label = null;
+            vertex.id = null;
+            vertex.keyValues = null;
+            edge.edgeLabel = null;
+            edge.outVertexLabel = null;
+            edge.outVertexId = null;
+            edge.inVertexLabel = null;
+            edge.inVertexId = null;
+            edge.keyValues = null;
+            edge.direction = EdgeWrite.Direction.BOTH;
+            propertyModel = null;
+        }
+    }
+
+    /**
+     * A bounded multi-producer, single-consumer ring of write slots, after Vyukov's bounded queue.
+     * The sequence of a slot tells whether it is free for the producers (sequence == position),
+     * published for the consumer (sequence == position + 1), or still held by the previous lap.
+     */
+    static class WriteRing {
+        final int index;
+        private final WriteSlot[] slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        // only read and written by the consumer, except for size()
+        private volatile long head;
+        private volatile Thread consumer;
+        // set by the consumer while it parks for want of published slots
+        private volatile boolean parked;
+
+        WriteRing(int index, int capacity) {
+            this.index = index;
+            this.slots = new WriteSlot[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = new WriteSlot();
+                sequences.set(i, i);
+            }
+        }
+
+        /**
+         * @return the claimed position, or -1 if the ring is full
+         */
+        long tryClaim() {
+            while (true) {
+                long position = tail.get();
+                long sequence = sequences.get((int) position & mask);
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        return position;
+                    }
+                } else if (sequence < position) {
+                    return -1;
+                }
+            }
+        }
+
+        WriteSlot slot(long position) {
+            return slots[(int) position & mask];
+        }
+
+        /**
+         * Publishes the slot and unparks the consumer if it is parked. The sequence is set with a volatile write,
+         * so that either the consumer sees the slot when it checks the ring again or the producer sees it parked.
+         */
+        void publish(long position) {
+            sequences.set((int) position & mask, position + 1);
+            if (parked) {
+                LockSupport.unpark(consumer);
+            }
+        }
+
+        boolean hasPublished() {
+            long position = head;
+            return sequences.get((int) position & mask) == position + 1;
+        }
+
+        int drainTo(List<WriteSlot> batch, int maxCount) {
+            long position = head;
+            int n = 0;
+            while (n < maxCount && sequences.get((int) (position + n) & mask) == position + n + 1) {
+                batch.add(slots[(int) (position + n) & mask]);
+                n++;
+            }
+            return n;
+        }
+
+        void release(int n) {
+            long position = head;
+            for (int i = 0; i < n; i++) {
+                sequences.lazySet((int) (position + i) & mask, position + i + slots.length);
+            }
+            head = position + n;
+        }
+
+        boolean isEmpty() {
+            return tail.get() == head;
+        }
+
+        int size() {
+            return (int) (tail.get() - head);
         }
     }
 
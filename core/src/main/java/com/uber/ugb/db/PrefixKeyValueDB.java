@@ -18,19 +18,41 @@
 
 package com.uber.ugb.db;
 
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Longs;
+import com.uber.ugb.measurement.Metrics;
+import com.uber.ugb.queries.Filter;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
+import com.uber.ugb.storage.CachingKeyValueStore;
+import com.uber.ugb.storage.ColumnScan;
 import com.uber.ugb.storage.PrefixKeyValueStore;
+import com.uber.ugb.storage.TracingKeyValueStore;
 import org.nustaq.serialization.FSTConfiguration;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class PrefixKeyValueDB extends AbstractSubgraphDB {
 
+    public static final String PREFIX_EDGE_ORDER_PROPERTY = "prefix.edge.order";
+    public static final String VERTEX_ORDER = "vertex";
+    public static final String TIMESTAMP_ORDER = "ts";
+    public static final String PREFIX_EDGE_LAYOUT_PROPERTY = "prefix.edge.layout";
+    public static final String BLOB_LAYOUT = "blob";
+    public static final String COLUMNS_LAYOUT = "columns";
+
     private static FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
     private static byte Separator = 0x01;
     private static byte REVERSE_SUFFIX = 'r';
@@ -41,38 +63,279 @@ public class PrefixKeyValueDB extends AbstractSubgraphDB {
 
     private transient PrefixKeyValueStore kvs;
 
+    private boolean timestampOrdered;
+    private boolean columnLayout;
+
     public PrefixKeyValueDB() {
     }
 
+    @Override
+    public void setProperties(Properties p) {
+        super.setProperties(p);
+        String order = p.getProperty(PREFIX_EDGE_ORDER_PROPERTY, VERTEX_ORDER);
+        if (!VERTEX_ORDER.equals(order) && !TIMESTAMP_ORDER.equals(order)) {
+            throw new IllegalArgumentException("unknown " + PREFIX_EDGE_ORDER_PROPERTY + ": " + order);
+        }
+        String layout = p.getProperty(PREFIX_EDGE_LAYOUT_PROPERTY, BLOB_LAYOUT);
+        if (!BLOB_LAYOUT.equals(layout) && !COLUMNS_LAYOUT.equals(layout)) {
+            throw new IllegalArgumentException("unknown " + PREFIX_EDGE_LAYOUT_PROPERTY + ": " + layout);
+        }
+        timestampOrdered = TIMESTAMP_ORDER.equals(order);
+        columnLayout = COLUMNS_LAYOUT.equals(layout);
+    }
+
+    /**
+     * Sets the store, traced and behind a cache if the properties ask for them, so set the properties first.
+     */
     public void setPrefixKeyValueStore(PrefixKeyValueStore kvs) {
-        this.kvs = kvs;
+        this.kvs = CachingKeyValueStore.wrap(
+            TracingKeyValueStore.wrap(kvs, getTracer()), getProperties(), this::getMetrics);
     }
 
     @Override
     public Properties readVertex(QualifiedName label, Object id, QueriesSpec.Query.Step.Vertex vertexQuerySpec) {
         byte[] value = kvs.get(genVertexKey(label, id));
-        if (value == null) {
-            return new Properties();
+        return toVertexProperties(value, selectedFields(vertexQuerySpec));
+    }
+
+    @Override
+    public CompletableFuture<List<Properties>> batchReadVerticesAsync(QualifiedName label, List<Object> ids,
+                                                                      QueriesSpec.Query.Step.Vertex vertexQuerySpec,
+                                                                      Executor executor) {
+        long start = System.nanoTime();
+        List<byte[]> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            keys.add(genVertexKey(label, id));
         }
-        return (Properties) conf.asObject(value);
+        Collection<String> fields = selectedFields(vertexQuerySpec);
+        return kvs.multiGetAsync(keys).thenApply(values -> {
+            List<Properties> vertices = new ArrayList<>(ids.size());
+            for (byte[] value : values) {
+                vertices.add(toVertexProperties(value, fields));
+            }
+            Metrics metrics = this.getMetrics();
+            Metrics.measureBatch(metrics.readVertexBatch, metrics.readVertexBatchItems,
+                System.nanoTime() - start, ids.size());
+            return vertices;
+        });
     }
 
     @Override
     public List<Subgraph.Edge> readEdges(Object startVertexId, QueriesSpec.Query.Step.Edge edgeQuerySpec) {
+        if (matchesNoTimestamp(edgeQuerySpec)) {
+            return new ArrayList<>();
+        }
         byte[] prefix = genEdgeKeyPrefix(
             new QualifiedName(edgeQuerySpec.label), startVertexId, edgeQuerySpec.isBackward());
 
+        ColumnScan columnScan = toColumnScan(edgeQuerySpec);
+        List<PrefixKeyValueStore.PrefixQueriedRow> prefixQueriedRows = columnScan == null
+            ? kvs.scan(prefix, scanLimit(edgeQuerySpec)) : kvs.scan(prefix, scanLimit(edgeQuerySpec), columnScan);
+        return orderAndLimit(toSubgraphEdges(startVertexId, prefixQueriedRows, edgeQuerySpec.getFilter()),
+            edgeQuerySpec, isTimestampOrdered());
+    }
+
+    /**
+     * @return true if edge rows are keyed by reversed timestamp, so a prefix scan reads the newest edges first
+     */
+    protected boolean isTimestampOrdered() {
+        return timestampOrdered;
+    }
+
+    /**
+     * @return true if edge properties are written as one column each, which the store can filter and project
+     */
+    protected boolean isColumnLayout() {
+        return columnLayout;
+    }
+
+    /**
+     * @return the part of the edge step the store can do, or null if it can do none of it. With the column
+     * layout the store filters the columns and returns the selected ones, with the ts order it skips to the
+     * rows in the range of timestamps the filter allows.
+     */
+    protected ColumnScan toColumnScan(QueriesSpec.Query.Step.Edge edgeQuerySpec) {
+        Filter filter = edgeQuerySpec.getFilter();
+        byte[] keySuffixStart = null;
+        byte[] keySuffixStop = null;
+        long[] range = isTimestampOrdered() ? timestampRange(filter) : null;
+        if (range != null) {
+            // rows are keyed newest first, so the newest timestamp starts the range
+            if (range[1] != Long.MAX_VALUE) {
+                keySuffixStart = Longs.toByteArray(reversedTimestamp(range[1]));
+            }
+            if (range[0] != Long.MIN_VALUE) {
+                keySuffixStop = Longs.toByteArray(reversedTimestamp(range[0]) + 1);
+            }
+        }
+        if (!isColumnLayout()) {
+            return keySuffixStart == null && keySuffixStop == null
+                ? null : new ColumnScan(false, null, null, keySuffixStart, keySuffixStop);
+        }
+        Set<String> columns = null;
+        if (!Strings.isNullOrEmpty(edgeQuerySpec.select)) {
+            columns = new LinkedHashSet<>(Splitter.on(',').omitEmptyStrings().trimResults()
+                .splitToList(edgeQuerySpec.select));
+            if (filter != null) {
+                columns.addAll(filter.getFields());
+            }
+            if (edgeQuerySpec.orderByTs) {
+                columns.add(Subgraph.Edge.TIMESTAMP_KEY);
+            }
+        }
+        return new ColumnScan(true, columns, PropertyColumns.toConditions(filter), keySuffixStart, keySuffixStop);
+    }
+
+    /**
+     * @return the oldest and the newest ts the filter allows, or null if it does not bound the ts of edges
+     */
+    private static long[] timestampRange(Filter filter) {
+        if (filter == null) {
+            return null;
+        }
+        long[] range = null;
+        for (Filter conjunct : filter.getConjuncts()) {
+            if (!(conjunct instanceof Filter.Comparison)) {
+                continue;
+            }
+            Filter.Comparison comparison = (Filter.Comparison) conjunct;
+            if (!Subgraph.Edge.TIMESTAMP_KEY.equals(comparison.field)
+                || !(comparison.literal.getValue() instanceof Long)) {
+                continue;
+            }
+            if (range == null) {
+                range = new long[]{Long.MIN_VALUE, Long.MAX_VALUE};
+            }
+            long ts = (Long) comparison.literal.getValue();
+            switch (comparison.operator) {
+                case Equal:
+                    range[0] = Math.max(range[0], ts);
+                    range[1] = Math.min(range[1], ts);
+                    break;
+                case LessThan:
+                    if (ts == Long.MIN_VALUE) {
+                        return new long[]{Long.MAX_VALUE, Long.MIN_VALUE};
+                    }
+                    range[1] = Math.min(range[1], ts - 1);
+                    break;
+                case LessOrEqual:
+                    range[1] = Math.min(range[1], ts);
+                    break;
+                case GreaterThan:
+                    if (ts == Long.MAX_VALUE) {
+                        return new long[]{Long.MAX_VALUE, Long.MIN_VALUE};
+                    }
+                    range[0] = Math.max(range[0], ts + 1);
+                    break;
+                case GreaterOrEqual:
+                    range[0] = Math.max(range[0], ts);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return range;
+    }
+
+    /**
+     * @return true if the filter allows no ts at all, so there is no edge to read
+     */
+    private boolean matchesNoTimestamp(QueriesSpec.Query.Step.Edge edgeQuerySpec) {
+        long[] range = timestampRange(edgeQuerySpec.getFilter());
+        return range != null && range[0] > range[1];
+    }
+
+    /**
+     * The store can stop scanning at the limit unless the edges need ordering it does not keep.
+     */
+    private int scanLimit(QueriesSpec.Query.Step.Edge edgeQuerySpec) {
+        if (edgeQuerySpec.orderByTs && !isTimestampOrdered()) {
+            return 0;
+        }
+        return edgeQuerySpec.storageLimit();
+    }
+
+    @Override
+    public CompletableFuture<List<List<Subgraph.Edge>>> batchReadEdgesAsync(List<Object> startVertexIds,
+                                                                            QueriesSpec.Query.Step.Edge edgeQuerySpec,
+                                                                            Executor executor) {
+        if (matchesNoTimestamp(edgeQuerySpec)) {
+            List<List<Subgraph.Edge>> edges = new ArrayList<>(startVertexIds.size());
+            for (int i = 0; i < startVertexIds.size(); i++) {
+                edges.add(new ArrayList<>());
+            }
+            return CompletableFuture.completedFuture(edges);
+        }
+        long start = System.nanoTime();
+        QualifiedName edgeLabel = new QualifiedName(edgeQuerySpec.label);
+        List<byte[]> prefixes = new ArrayList<>(startVertexIds.size());
+        for (Object startVertexId : startVertexIds) {
+            prefixes.add(genEdgeKeyPrefix(edgeLabel, startVertexId, edgeQuerySpec.isBackward()));
+        }
+        boolean timestampOrdered = isTimestampOrdered();
+        ColumnScan columnScan = toColumnScan(edgeQuerySpec);
+        CompletableFuture<List<List<PrefixKeyValueStore.PrefixQueriedRow>>> scans = columnScan == null
+            ? kvs.multiScanAsync(prefixes, scanLimit(edgeQuerySpec))
+            : kvs.multiScanAsync(prefixes, scanLimit(edgeQuerySpec), columnScan);
+        return scans.thenApply(rows -> {
+            List<List<Subgraph.Edge>> edges = new ArrayList<>(startVertexIds.size());
+            for (int i = 0; i < startVertexIds.size(); i++) {
+                List<Subgraph.Edge> vertexEdges =
+                    toSubgraphEdges(startVertexIds.get(i), rows.get(i), edgeQuerySpec.getFilter());
+                edges.add(orderAndLimit(vertexEdges, edgeQuerySpec, timestampOrdered));
+            }
+            Metrics metrics = this.getMetrics();
+            Metrics.measureBatch(metrics.readEdgeBatch, metrics.readEdgeBatchItems,
+                System.nanoTime() - start, startVertexIds.size());
+            return edges;
+        });
+    }
+
+    /**
+     * @param fields the fields to decode if the value is in the indexed format, null for all of them
+     */
+    private Properties toVertexProperties(byte[] value, Collection<String> fields) {
+        if (value == null) {
+            return new Properties();
+        }
+        if (PropertyCodec.isIndexed(value)) {
+            return getPropertyCodec().decode(value, fields);
+        }
+        return (Properties) conf.asObject(value);
+    }
+
+    /**
+     * @param filter the edge filter, evaluated on the values in the indexed format so that the edges it drops
+     *               are not decoded
+     */
+    private List<Subgraph.Edge> toSubgraphEdges(Object startVertexId,
+                                                List<PrefixKeyValueStore.PrefixQueriedRow> prefixQueriedRows,
+                                                Filter filter) {
         List<Subgraph.Edge> edges = new ArrayList<>();
-        List<PrefixKeyValueStore.PrefixQueriedRow> prefixQueriedRows = kvs.scan(prefix, edgeQuerySpec.limit);
+        int idOffset = isTimestampOrdered() ? Long.BYTES : 0;
         for (PrefixKeyValueStore.PrefixQueriedRow prefixQueriedRow : prefixQueriedRows) {
-            Object nextVertexId = conf.asObject(prefixQueriedRow.keySuffix);
-            Properties edgeProperties = (Properties) conf.asObject(prefixQueriedRow.value);
+            if (PropertyCodec.isIndexed(prefixQueriedRow.value)) {
+                if (filter != null && !filter.matches(getPropertyCodec().reader(prefixQueriedRow.value))) {
+                    continue;
+                }
+                edges.add(new Subgraph.Edge(startVertexId, nextVertexId(prefixQueriedRow.keySuffix, idOffset),
+                    getPropertyCodec().decode(prefixQueriedRow.value, null)));
+                continue;
+            }
+            Object nextVertexId = nextVertexId(prefixQueriedRow.keySuffix, idOffset);
+            Properties edgeProperties = prefixQueriedRow.columns != null
+                ? PropertyColumns.decode(prefixQueriedRow.columns)
+                : (Properties) conf.asObject(prefixQueriedRow.value);
             Subgraph.Edge edge = new Subgraph.Edge(startVertexId, nextVertexId, edgeProperties);
             edges.add(edge);
         }
         return edges;
     }
 
+    private static Object nextVertexId(byte[] keySuffix, int idOffset) {
+        return conf.asObject(idOffset == 0 ? keySuffix : Arrays.copyOfRange(keySuffix, idOffset, keySuffix.length));
+    }
+
     @Override
     public Status writeVertex(QualifiedName label, Object id, Object... keyValues) {
         byte[] value = propertiesToBytes(keyValues);
@@ -85,16 +348,65 @@ public class PrefixKeyValueDB extends AbstractSubgraphDB {
                             QualifiedName outVertexLabel, Object outVertexId,
                             QualifiedName inVertexLabel, Object inVertexId,
                             Object... keyValues) {
+        long ts = edgeTimestamp(keyValues);
+        if (isColumnLayout()) {
+            Map<String, byte[]> columns = PropertyColumns.encode(keyValues);
+            kvs.putColumns(genEdgeKeyPrefix(edgeLabel, outVertexId, inVertexId, false),
+                genEdgeKeySuffix(outVertexId, inVertexId, false, ts),
+                columns);
+            kvs.putColumns(genEdgeKeyPrefix(edgeLabel, outVertexId, inVertexId, true),
+                genEdgeKeySuffix(outVertexId, inVertexId, true, ts),
+                columns);
+            return Status.OK;
+        }
         byte[] edgePropertiesValue = propertiesToBytes(keyValues);
         kvs.put(genEdgeKeyPrefix(edgeLabel, outVertexId, inVertexId, false),
-            genEdgeKeySuffix(outVertexId, inVertexId, false),
+            genEdgeKeySuffix(outVertexId, inVertexId, false, ts),
             edgePropertiesValue);
         kvs.put(genEdgeKeyPrefix(edgeLabel, outVertexId, inVertexId, true),
-            genEdgeKeySuffix(outVertexId, inVertexId, true),
+            genEdgeKeySuffix(outVertexId, inVertexId, true, ts),
             edgePropertiesValue);
         return Status.OK;
     }
 
+    @Override
+    public Status writeVertices(List<VertexWrite> writes) {
+        List<byte[]> keys = new ArrayList<>(writes.size());
+        List<byte[]> values = new ArrayList<>(writes.size());
+        for (VertexWrite write : writes) {
+            keys.add(genVertexKey(write.label, write.id));
+            values.add(propertiesToBytes(write.keyValues));
+        }
+        kvs.multiPut(keys, values);
+        return Status.OK;
+    }
+
+    @Override
+    public Status writeEdges(List<EdgeWrite> writes) {
+        List<byte[]> keyPrefixes = new ArrayList<>(writes.size() * 2);
+        List<byte[]> keySuffixes = new ArrayList<>(writes.size() * 2);
+        List<byte[]> values = new ArrayList<>(writes.size() * 2);
+        List<Map<String, byte[]>> columns = new ArrayList<>(writes.size() * 2);
+        boolean columnLayout = isColumnLayout();
+        for (EdgeWrite write : writes) {
+            byte[] edgePropertiesValue = columnLayout ? null : propertiesToBytes(write.keyValues);
+            Map<String, byte[]> edgeColumns = columnLayout ? PropertyColumns.encode(write.keyValues) : null;
+            long ts = edgeTimestamp(write.keyValues);
+            for (boolean isBackward : new boolean[]{false, true}) {
+                keyPrefixes.add(genEdgeKeyPrefix(write.edgeLabel, write.outVertexId, write.inVertexId, isBackward));
+                keySuffixes.add(genEdgeKeySuffix(write.outVertexId, write.inVertexId, isBackward, ts));
+                values.add(edgePropertiesValue);
+                columns.add(edgeColumns);
+            }
+        }
+        if (columnLayout) {
+            kvs.multiPutColumns(keyPrefixes, keySuffixes, columns);
+        } else {
+            kvs.multiPut(keyPrefixes, keySuffixes, values);
+        }
+        return Status.OK;
+    }
+
     protected byte[] genVertexKey(QualifiedName label, Object id) {
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
         out.write(id.toString().getBytes());
@@ -130,8 +442,15 @@ public class PrefixKeyValueDB extends AbstractSubgraphDB {
         return out.toByteArray();
     }
 
-    protected byte[] genEdgeKeySuffix(Object outVertexId, Object inVertexId, boolean isBackward) {
+    /**
+     * With the ts edge order the suffix starts with the reversed timestamp of the ts property, so rows sort
+     * newest first, and the same edge written twice with different timestamps is kept twice.
+     */
+    protected byte[] genEdgeKeySuffix(Object outVertexId, Object inVertexId, boolean isBackward, long ts) {
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        if (isTimestampOrdered()) {
+            out.writeLong(reversedTimestamp(ts));
+        }
         if (isBackward) {
             out.write(conf.asByteArray(outVertexId));
         } else {
@@ -140,7 +459,41 @@ public class PrefixKeyValueDB extends AbstractSubgraphDB {
         return out.toByteArray();
     }
 
+    /**
+     * @return the timestamp as 8 bytes that sort newest first, unsigned
+     */
+    static long reversedTimestamp(long ts) {
+        // flipping the sign bit makes the unsigned byte order follow the signed order, inverting reverses it
+        return ~(ts ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * @return the ts property of the edge, or 0 if edges are not keyed by timestamp
+     * @throws IllegalArgumentException if edges are keyed by timestamp and the edge has no ts, as the write time
+     *                                  would neither overwrite a rewritten edge nor order the edges reproducibly
+     */
+    private long edgeTimestamp(Object[] keyValues) {
+        if (!isTimestampOrdered()) {
+            return 0;
+        }
+        if (keyValues != null) {
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                if (Subgraph.Edge.TIMESTAMP_KEY.equals(keyValues[i])) {
+                    Long ts = Subgraph.Edge.toTimestamp(keyValues[i + 1]);
+                    if (ts != null) {
+                        return ts;
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException(PREFIX_EDGE_ORDER_PROPERTY + "=" + TIMESTAMP_ORDER
+            + " needs a " + Subgraph.Edge.TIMESTAMP_KEY + " property on every edge");
+    }
+
     private byte[] propertiesToBytes(Object[] keyValues) {
+        if (writesIndexedProperties()) {
+            return getPropertyCodec().encode(keyValues);
+        }
         Properties properties = new Properties();
         if (keyValues != null) {
             for (int i = 0; i < keyValues.length; i += 2) {
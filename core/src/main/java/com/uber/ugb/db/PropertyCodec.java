@@ -0,0 +1,318 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.queries.PropertyReader;
+import com.uber.ugb.schema.Vocabulary;
+import com.uber.ugb.schema.model.EntityType;
+import com.uber.ugb.schema.model.RelationType;
+import org.nustaq.serialization.FSTConfiguration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * PropertyCodec writes properties in a format which can be read one field at a time, so that a read selecting
+ * two fields of twenty only decodes those two, and a filter can be evaluated on the bytes.
+ *
+ * A value starts with a magic header, the hash of the property dictionary, and an offset table. The properties
+ * of the vocabulary are numbered by their sorted labels, and the table holds the ordinal and the offset of each
+ * property of the value, sorted by ordinal, so a field is found by binary search. Properties outside of the
+ * vocabulary, such as the ts of edges, follow with their names. Then come the values, each a type tag and its
+ * bytes.
+ *
+ * The property.format property selects the format written, fst (default) or indexed. Readers tell the formats
+ * apart by the header, so data written in fst stays readable while it is rewritten in the indexed format.
+ */
+public class PropertyCodec {
+
+    public static final String PROPERTY_FORMAT_PROPERTY = "property.format";
+    public static final String FST_FORMAT = "fst";
+    public static final String INDEXED_FORMAT = "indexed";
+
+    private static final byte[] MAGIC = {(byte) 0xfe, 'U', 'G', 'P'};
+    private static final int ENTRY_BYTES = Short.BYTES + Integer.BYTES;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte FLOAT = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte STRING = 6;
+    private static final byte OTHER = 7;
+
+    private static FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
+
+    private final String[] labels;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final int dictionaryHash;
+
+    /**
+     * @param vocabulary the vocabulary whose properties are numbered, null for none
+     */
+    public PropertyCodec(Vocabulary vocabulary) {
+        TreeSet<String> sortedLabels = new TreeSet<>();
+        if (vocabulary != null) {
+            for (RelationType relationType : vocabulary.getRelationTypes().values()) {
+                if (relationType.getTo() instanceof EntityType && ((EntityType) relationType.getTo()).getIsDataType()) {
+                    sortedLabels.add(relationType.getLabel());
+                }
+            }
+        }
+        if (sortedLabels.size() > 0xffff) {
+            throw new IllegalArgumentException("too many properties to number: " + sortedLabels.size());
+        }
+        labels = sortedLabels.toArray(new String[0]);
+        for (int i = 0; i < labels.length; i++) {
+            ordinals.put(labels[i], i);
+        }
+        dictionaryHash = Arrays.hashCode(labels);
+    }
+
+    public static boolean isIndexed(byte[] value) {
+        if (value == null || value.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (value[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] encode(Object[] keyValues) {
+        List<Object[]> indexed = new ArrayList<>();
+        List<Object[]> named = new ArrayList<>();
+        if (keyValues != null) {
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                String key = keyValues[i].toString();
+                Integer ordinal = ordinals.get(key);
+                if (ordinal != null) {
+                    indexed.add(new Object[]{ordinal, keyValues[i + 1]});
+                } else {
+                    named.add(new Object[]{key.getBytes(StandardCharsets.UTF_8), keyValues[i + 1]});
+                }
+            }
+        }
+        indexed.sort((a, b) -> Integer.compare((Integer) a[0], (Integer) b[0]));
+
+        List<byte[]> values = new ArrayList<>(indexed.size() + named.size());
+        int headerBytes = MAGIC.length + Integer.BYTES + Short.BYTES + indexed.size() * ENTRY_BYTES + Short.BYTES;
+        int valueBytes = 0;
+        for (Object[] entry : indexed) {
+            values.add(encodeValue(entry[1]));
+            valueBytes += values.get(values.size() - 1).length;
+        }
+        for (Object[] entry : named) {
+            headerBytes += Short.BYTES + ((byte[]) entry[0]).length + Integer.BYTES;
+            values.add(encodeValue(entry[1]));
+            valueBytes += values.get(values.size() - 1).length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(headerBytes + valueBytes);
+        out.put(MAGIC).putInt(dictionaryHash).putShort((short) indexed.size());
+        int offset = headerBytes;
+        int v = 0;
+        for (Object[] entry : indexed) {
+            out.putShort((short) (int) (Integer) entry[0]).putInt(offset);
+            offset += values.get(v++).length;
+        }
+        out.putShort((short) named.size());
+        for (Object[] entry : named) {
+            byte[] name = (byte[]) entry[0];
+            out.putShort((short) name.length).put(name).putInt(offset);
+            offset += values.get(v++).length;
+        }
+        for (byte[] value : values) {
+            out.put(value);
+        }
+        return out.array();
+    }
+
+    /**
+     * @param fields the fields to decode, null for all of them
+     */
+    public Properties decode(byte[] value, Collection<String> fields) {
+        Properties properties = new Properties();
+        if (fields != null) {
+            for (String field : fields) {
+                int offset = offsetOf(value, field);
+                if (offset >= 0) {
+                    putValue(properties, field, decodeValue(value, offset));
+                }
+            }
+            return properties;
+        }
+        ByteBuffer in = header(value);
+        int count = in.getShort() & 0xffff;
+        for (int i = 0; i < count; i++) {
+            String label = labels[in.getShort() & 0xffff];
+            putValue(properties, label, decodeValue(value, in.getInt()));
+        }
+        int namedCount = in.getShort() & 0xffff;
+        for (int i = 0; i < namedCount; i++) {
+            byte[] name = new byte[in.getShort() & 0xffff];
+            in.get(name);
+            putValue(properties, new String(name, StandardCharsets.UTF_8), decodeValue(value, in.getInt()));
+        }
+        return properties;
+    }
+
+    /**
+     * @return a reader decoding each field from the value when it is asked for
+     */
+    public PropertyReader reader(byte[] value) {
+        return field -> {
+            int offset = offsetOf(value, field);
+            return offset < 0 ? null : decodeValue(value, offset);
+        };
+    }
+
+    private ByteBuffer header(byte[] value) {
+        if (!isIndexed(value)) {
+            throw new IllegalArgumentException("not an indexed property value");
+        }
+        ByteBuffer in = ByteBuffer.wrap(value, MAGIC.length, value.length - MAGIC.length);
+        if (in.getInt() != dictionaryHash) {
+            throw new IllegalStateException("properties written with another vocabulary");
+        }
+        return in;
+    }
+
+    /**
+     * @return the offset of the value of the field, or -1 if the properties do not have it
+     */
+    private int offsetOf(byte[] value, String field) {
+        ByteBuffer in = header(value);
+        int count = in.getShort() & 0xffff;
+        int table = in.position();
+        Integer ordinal = ordinals.get(field);
+        if (ordinal != null) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midOrdinal = in.getShort(table + mid * ENTRY_BYTES) & 0xffff;
+                if (midOrdinal < ordinal) {
+                    low = mid + 1;
+                } else if (midOrdinal > ordinal) {
+                    high = mid - 1;
+                } else {
+                    return in.getInt(table + mid * ENTRY_BYTES + Short.BYTES);
+                }
+            }
+            return -1;
+        }
+        in.position(table + count * ENTRY_BYTES);
+        int namedCount = in.getShort() & 0xffff;
+        byte[] target = field.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < namedCount; i++) {
+            int nameLength = in.getShort() & 0xffff;
+            int nameStart = in.position();
+            in.position(nameStart + nameLength);
+            int offset = in.getInt();
+            if (nameLength == target.length && regionEquals(value, nameStart, target)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(byte[] value, int start, byte[] target) {
+        for (int i = 0; i < target.length; i++) {
+            if (value[start + i] != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putValue(Properties properties, String key, Object value) {
+        if (value != null) {
+            properties.put(key, value);
+        }
+    }
+
+    private static byte[] encodeValue(Object value) {
+        if (value == null) {
+            return new byte[]{NULL};
+        }
+        if (value instanceof Long) {
+            return ByteBuffer.allocate(1 + Long.BYTES).put(LONG).putLong((Long) value).array();
+        }
+        if (value instanceof Integer) {
+            return ByteBuffer.allocate(1 + Integer.BYTES).put(INTEGER).putInt((Integer) value).array();
+        }
+        if (value instanceof Double) {
+            return ByteBuffer.allocate(1 + Long.BYTES).put(DOUBLE).putDouble((Double) value).array();
+        }
+        if (value instanceof Float) {
+            return ByteBuffer.allocate(1 + Integer.BYTES).put(FLOAT).putFloat((Float) value).array();
+        }
+        if (value instanceof Boolean) {
+            return new byte[]{BOOLEAN, (byte) ((Boolean) value ? 1 : 0)};
+        }
+        byte[] bytes;
+        byte type;
+        if (value instanceof String) {
+            bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            type = STRING;
+        } else {
+            bytes = conf.asByteArray(value);
+            type = OTHER;
+        }
+        return ByteBuffer.allocate(1 + Integer.BYTES + bytes.length).put(type).putInt(bytes.length).put(bytes).array();
+    }
+
+    private static Object decodeValue(byte[] value, int offset) {
+        ByteBuffer in = ByteBuffer.wrap(value);
+        in.position(offset + 1);
+        switch (value[offset]) {
+            case LONG:
+                return in.getLong();
+            case INTEGER:
+                return in.getInt();
+            case DOUBLE:
+                return in.getDouble();
+            case FLOAT:
+                return in.getFloat();
+            case BOOLEAN:
+                return in.get() != 0;
+            case STRING:
+                int length = in.getInt();
+                return new String(value, in.position(), length, StandardCharsets.UTF_8);
+            case OTHER:
+                int otherLength = in.getInt();
+                return conf.asObject(Arrays.copyOfRange(value, in.position(), in.position() + otherLength));
+            default:
+                return null;
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.queries.Filter;
+import com.uber.ugb.storage.ColumnScan;
+import org.nustaq.serialization.FSTConfiguration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * PropertyColumns encodes each property of an edge as its own column, so that a store can compare column values
+ * without knowing their types. Column values start with a type tag followed by bytes that sort as the values do:
+ * numbers as doubles whose bits are flipped to sort unsigned, then the exact value; booleans as one byte;
+ * strings as UTF-8. Other values are FST serialized and cannot be compared in the store.
+ *
+ * Filters are turned into conditions the rows must meet, which the store checks on the start of column values.
+ * The conditions only drop rows the filter would drop too, and the filter is evaluated again on the rows read.
+ * A comparison with a number only passes values stored as numbers, so numbers stored as text are not pushed down
+ * correctly; the property models generate numbers as numbers.
+ */
+public final class PropertyColumns {
+
+    private static final byte NUMBER = 0x02;
+    private static final byte BOOLEAN = 0x03;
+    private static final byte STRING = 0x04;
+    private static final byte OTHER = 0x7f;
+
+    private static final byte LONG = 'L';
+    private static final byte INTEGER = 'I';
+    private static final byte SHORT = 'S';
+    private static final byte BYTE = 'B';
+    private static final byte DOUBLE = 'D';
+    private static final byte FLOAT = 'F';
+
+    private static FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
+
+    private PropertyColumns() {
+    }
+
+    public static Map<String, byte[]> encode(Object[] keyValues) {
+        Map<String, byte[]> columns = new LinkedHashMap<>();
+        if (keyValues != null) {
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                columns.put(keyValues[i].toString(), encodeValue(keyValues[i + 1]));
+            }
+        }
+        return columns;
+    }
+
+    public static Properties decode(Map<String, byte[]> columns) {
+        Properties properties = new Properties();
+        for (Map.Entry<String, byte[]> column : columns.entrySet()) {
+            properties.put(column.getKey(), decodeValue(column.getValue()));
+        }
+        return properties;
+    }
+
+    static byte[] encodeValue(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            byte type = value instanceof Long ? LONG : value instanceof Integer ? INTEGER
+                : value instanceof Short ? SHORT : BYTE;
+            long longValue = ((Number) value).longValue();
+            return ByteBuffer.allocate(1 + Long.BYTES + 1 + Long.BYTES)
+                .put(NUMBER).putLong(sortableDouble(longValue)).put(type).putLong(longValue).array();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return ByteBuffer.allocate(1 + Long.BYTES + 1)
+                .put(NUMBER).putLong(sortableDouble(((Number) value).doubleValue()))
+                .put(value instanceof Double ? DOUBLE : FLOAT).array();
+        }
+        if (value instanceof Boolean) {
+            return new byte[]{BOOLEAN, (byte) ((Boolean) value ? 1 : 0)};
+        }
+        if (value instanceof String) {
+            byte[] text = ((String) value).getBytes(StandardCharsets.UTF_8);
+            byte[] encoded = new byte[1 + text.length];
+            encoded[0] = STRING;
+            System.arraycopy(text, 0, encoded, 1, text.length);
+            return encoded;
+        }
+        byte[] serialized = conf.asByteArray(value);
+        byte[] encoded = new byte[1 + serialized.length];
+        encoded[0] = OTHER;
+        System.arraycopy(serialized, 0, encoded, 1, serialized.length);
+        return encoded;
+    }
+
+    static Object decodeValue(byte[] encoded) {
+        ByteBuffer in = ByteBuffer.wrap(encoded);
+        switch (in.get()) {
+            case NUMBER:
+                long sortable = in.getLong();
+                byte type = in.get();
+                switch (type) {
+                    case DOUBLE:
+                        return fromSortableDouble(sortable);
+                    case FLOAT:
+                        return (float) fromSortableDouble(sortable);
+                    case INTEGER:
+                        return (int) in.getLong();
+                    case SHORT:
+                        return (short) in.getLong();
+                    case BYTE:
+                        return (byte) in.getLong();
+                    default:
+                        return in.getLong();
+                }
+            case BOOLEAN:
+                return in.get() != 0;
+            case STRING:
+                return new String(encoded, 1, encoded.length - 1, StandardCharsets.UTF_8);
+            default:
+                return conf.asObject(Arrays.copyOfRange(encoded, 1, encoded.length));
+        }
+    }
+
+    /**
+     * @return the conditions on columns that rows matching the filter meet, for the comparisons of the filter
+     * that all have to match; the others are left to the filter
+     */
+    public static List<ColumnScan.Condition> toConditions(Filter filter) {
+        List<ColumnScan.Condition> conditions = new ArrayList<>();
+        if (filter == null) {
+            return conditions;
+        }
+        for (Filter conjunct : filter.getConjuncts()) {
+            if (!(conjunct instanceof Filter.Comparison)) {
+                continue;
+            }
+            Filter.Comparison comparison = (Filter.Comparison) conjunct;
+            Object literal = comparison.literal.getValue();
+            if (literal instanceof Number) {
+                addNumberConditions(conditions, comparison.field, comparison.operator, (Number) literal);
+            } else if (comparison.operator == Filter.Operator.Equal) {
+                // a text prefix may also match longer texts, which the filter drops after
+                conditions.add(new ColumnScan.Condition(
+                    comparison.field, ColumnScan.Condition.Operator.Equal, encodeValue(literal)));
+            }
+        }
+        return conditions;
+    }
+
+    private static void addNumberConditions(List<ColumnScan.Condition> conditions, String field,
+                                            Filter.Operator operator, Number literal) {
+        // numbers are compared as doubles, which may round distinct longs to the same value,
+        // so strict comparisons are relaxed
+        byte[] value = ByteBuffer.allocate(1 + Long.BYTES)
+            .put(NUMBER).putLong(sortableDouble(literal.doubleValue())).array();
+        switch (operator) {
+            case Equal:
+                conditions.add(new ColumnScan.Condition(field, ColumnScan.Condition.Operator.Equal, value));
+                break;
+            case GreaterThan:
+            case GreaterOrEqual:
+                conditions.add(new ColumnScan.Condition(field, ColumnScan.Condition.Operator.GreaterOrEqual, value));
+                conditions.add(new ColumnScan.Condition(
+                    field, ColumnScan.Condition.Operator.LessThan, new byte[]{NUMBER + 1}));
+                break;
+            case LessThan:
+            case LessOrEqual:
+                conditions.add(new ColumnScan.Condition(field, ColumnScan.Condition.Operator.LessOrEqual, value));
+                conditions.add(new ColumnScan.Condition(
+                    field, ColumnScan.Condition.Operator.GreaterOrEqual, new byte[]{NUMBER}));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static long sortableDouble(double value) {
+        // -0.0 equals 0.0, so they sort the same
+        long bits = Double.doubleToLongBits(value == 0 ? 0.0 : value);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
+
+    private static double fromSortableDouble(long sortable) {
+        return Double.longBitsToDouble(sortable < 0 ? sortable ^ Long.MIN_VALUE : ~sortable);
+    }
+
+}
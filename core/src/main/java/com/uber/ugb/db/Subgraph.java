@@ -18,8 +18,10 @@
 
 package com.uber.ugb.db;
 
+import com.uber.ugb.util.LongHashSet;
+import com.uber.ugb.util.LongPairHashSet;
+
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -30,6 +32,7 @@ import java.util.Set;
  * Subgraph is the subgraph query result.
  * The results can be collected as edges via addEdge(Edge edge) function,
  * or just set the vertex and edge counts.
+ * The distinct vertices and edges are counted as the edges are added, in primitive sets for long vertex ids.
  */
 public class Subgraph {
     public final Object startVertexId;
@@ -37,9 +40,14 @@ public class Subgraph {
     private int vertexCount;
     private int edgeCount;
 
+    private final LongHashSet longVertexIds = new LongHashSet();
+    private final Set<Object> otherVertexIds = new HashSet<>();
+    private final LongPairHashSet longEdges = new LongPairHashSet();
+    private final Set<Edge> otherEdges = new HashSet<>();
+
     public Subgraph(Object startVertexId) {
         this.startVertexId = startVertexId;
-        this.edges = Collections.synchronizedList(new ArrayList<>());
+        this.edges = new ArrayList<>();
     }
 
     /**
@@ -47,11 +55,26 @@ public class Subgraph {
      *
      * @param edge
      */
-    public void addEdge(Edge edge) {
+    public synchronized void addEdge(Edge edge) {
         this.edges.add(edge);
+        addVertex(edge.knownVertexId);
+        addVertex(edge.nextVertexId);
+        if (edge.knownVertexId instanceof Long && edge.nextVertexId instanceof Long) {
+            longEdges.add((Long) edge.knownVertexId, (Long) edge.nextVertexId);
+        } else {
+            otherEdges.add(edge);
+        }
+    }
+
+    private void addVertex(Object vertexId) {
+        if (vertexId instanceof Long) {
+            longVertexIds.add((Long) vertexId);
+        } else {
+            otherVertexIds.add(vertexId);
+        }
     }
 
-    public Edge findEdge(Object knownVertexId, Object nextVertexId) {
+    public synchronized Edge findEdge(Object knownVertexId, Object nextVertexId) {
         for (Edge edge : edges) {
             if (edge.knownVertexId.equals(knownVertexId) && edge.nextVertexId.equals(nextVertexId)) {
                 return edge;
@@ -60,9 +83,9 @@ public class Subgraph {
         return null;
     }
 
-    public int getVertexCount() {
+    public synchronized int getVertexCount() {
         if (this.edges.size() > 0) {
-            return countVertices(this.edges);
+            return longVertexIds.size() + otherVertexIds.size();
         }
         return vertexCount;
     }
@@ -71,18 +94,9 @@ public class Subgraph {
         this.vertexCount = vertexCount;
     }
 
-    private int countVertices(List<Edge> edges) {
-        Set set = new HashSet();
-        for (Edge edge : edges) {
-            set.add(edge.knownVertexId);
-            set.add(edge.nextVertexId);
-        }
-        return set.size();
-    }
-
-    public int getEdgeCount() {
+    public synchronized int getEdgeCount() {
         if (this.edges.size() > 0) {
-            return countEdges(this.edges);
+            return longEdges.size() + otherEdges.size();
         }
         return edgeCount;
     }
@@ -91,15 +105,12 @@ public class Subgraph {
         this.edgeCount = edgeCount;
     }
 
-    private int countEdges(List<Edge> edges) {
-        Set set = new HashSet();
-        for (Edge edge : edges) {
-            set.add(edge);
-        }
-        return set.size();
-    }
-
     public static class Edge {
+        /**
+         * The edge property holding the time of the edge, used by orderByTs.
+         */
+        public static final String TIMESTAMP_KEY = "ts";
+
         public final Object knownVertexId;
         public final Object nextVertexId;
         public final Properties edgeProperties;
@@ -112,6 +123,27 @@ public class Subgraph {
             this.edgeProperties = edgeProperties;
         }
 
+        /**
+         * @return the ts property of the edge, or null if it has none
+         */
+        public Long getTimestamp() {
+            return toTimestamp(edgeProperties == null ? null : edgeProperties.get(TIMESTAMP_KEY));
+        }
+
+        public static Long toTimestamp(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            if (value instanceof String) {
+                try {
+                    return Long.parseLong((String) value);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
         public Properties getVertexProperties() {
             return vertexProperties;
         }
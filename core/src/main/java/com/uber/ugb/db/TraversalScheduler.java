@@ -0,0 +1,138 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * TraversalScheduler runs the blocking reads of all the subgraph queries of a DB on one shared pool.
+ *
+ * The pool is a work stealing ForkJoinPool of traversal.thread.count threads, or one virtual thread per read
+ * with traversal.executor=virtual on a JDK which has them. Each query submits through its own executor, which
+ * keeps at most traversal.query.max.outstanding reads of the query in the pool, so one huge subgraph cannot
+ * take all the threads from the other queries.
+ */
+public class TraversalScheduler {
+
+    public static final String TRAVERSAL_EXECUTOR_PROPERTY = "traversal.executor";
+    public static final String TRAVERSAL_THREAD_COUNT_PROPERTY = "traversal.thread.count";
+    public static final String TRAVERSAL_QUERY_MAX_OUTSTANDING_PROPERTY = "traversal.query.max.outstanding";
+    public static final String FORK_JOIN = "forkjoin";
+    public static final String VIRTUAL = "virtual";
+
+    private static Logger logger = Logger.getLogger(TraversalScheduler.class.getName());
+
+    private final ExecutorService pool;
+    private final int maxOutstandingPerQuery;
+
+    public TraversalScheduler(int parallelism, int maxOutstandingPerQuery, boolean virtualThreads) {
+        ExecutorService virtualPool = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualThreads && virtualPool == null) {
+            logger.warning("virtual threads are not available in this JVM, using a fork join pool");
+        }
+        this.pool = virtualPool != null ? virtualPool : new ForkJoinPool(
+            parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.maxOutstandingPerQuery = Math.max(1, maxOutstandingPerQuery);
+    }
+
+    public static TraversalScheduler create(Properties properties) {
+        int defaultParallelism = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+        int parallelism = Integer.parseInt(properties.getProperty(
+            TRAVERSAL_THREAD_COUNT_PROPERTY, String.valueOf(defaultParallelism)));
+        int maxOutstandingPerQuery = Integer.parseInt(properties.getProperty(
+            TRAVERSAL_QUERY_MAX_OUTSTANDING_PROPERTY, "16"));
+        boolean virtualThreads = VIRTUAL.equals(properties.getProperty(TRAVERSAL_EXECUTOR_PROPERTY, FORK_JOIN));
+        return new TraversalScheduler(parallelism, maxOutstandingPerQuery, virtualThreads);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is only in newer JDKs, so it is looked up reflectively
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return an executor for the reads of one query, running at most traversal.query.max.outstanding at a time
+     */
+    public Executor newQueryExecutor() {
+        return new QueryExecutor();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+        }
+    }
+
+    private class QueryExecutor implements Executor {
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable task) {
+            pending.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            while (!pending.isEmpty()) {
+                int current = outstanding.get();
+                if (current >= maxOutstandingPerQuery) {
+                    // the task finishing last schedules the pending ones
+                    return;
+                }
+                if (!outstanding.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                Runnable task = pending.poll();
+                if (task == null) {
+                    outstanding.decrementAndGet();
+                    continue;
+                }
+                pool.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        outstanding.decrementAndGet();
+                        schedule();
+                    }
+                });
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.google.common.base.Preconditions;
+import com.uber.ugb.schema.QualifiedName;
+import com.uber.ugb.schema.Vocabulary;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * VertexIdStrategy maps a vertex label and the index of the vertex within that label to the vertex id stored
+ * in the database. Writers and readers must use the same strategy, selected with the vertex.id.strategy property:
+ * <ul>
+ * <li>md5: the name-based UUID of the label and index, kept for compatibility with existing data sets</li>
+ * <li>hash: a bijective 63-bit mix of the dense encoding, spread evenly over the key space and never colliding</li>
+ * <li>dense: labelOrdinal &lt;&lt; 48 | index, clustering vertices of the same label together</li>
+ * </ul>
+ * Label ordinals are assigned by sorting the entity type names of the vocabulary, so they are stable across
+ * processes using the same schema.
+ */
+public abstract class VertexIdStrategy implements Serializable {
+
+    public static final String VERTEX_ID_STRATEGY_PROPERTY = "vertex.id.strategy";
+    public static final String MD5 = "md5";
+    public static final String HASH = "hash";
+    public static final String DENSE = "dense";
+
+    static final int INDEX_BITS = 48;
+    static final long MAX_INDEX = (1L << INDEX_BITS) - 1;
+    // keeps the dense encoding within 63 bits so that ids are non-negative
+    static final int MAX_LABELS = 1 << (63 - INDEX_BITS);
+
+    public static VertexIdStrategy create(String name, Vocabulary vocabulary) {
+        if (name == null || name.isEmpty() || MD5.equals(name)) {
+            return new Md5();
+        }
+        Preconditions.checkState(vocabulary != null, "vocabulary is required for vertex id strategy " + name);
+        Collection<QualifiedName> labels = vocabulary.getEntityTypes().keySet();
+        if (DENSE.equals(name)) {
+            return new Dense(labels);
+        }
+        if (HASH.equals(name)) {
+            return new Hash(labels);
+        }
+        throw new IllegalArgumentException("unknown " + VERTEX_ID_STRATEGY_PROPERTY + ": " + name);
+    }
+
+    public abstract long genVertexId(QualifiedName label, long index);
+
+    public static class Md5 extends VertexIdStrategy {
+        @Override
+        public long genVertexId(QualifiedName label, long index) {
+            long key = UUID.nameUUIDFromBytes((label.toString() + index).getBytes()).getLeastSignificantBits();
+            if (key < 0) {
+                key = -key;
+            }
+            return key;
+        }
+    }
+
+    public static class Dense extends VertexIdStrategy {
+
+        private final Map<QualifiedName, Long> prefixByLabel = new HashMap<>();
+
+        public Dense(Collection<QualifiedName> labels) {
+            List<QualifiedName> sorted = new ArrayList<>(labels);
+            sorted.sort(Comparator.comparing(QualifiedName::toString));
+            Preconditions.checkArgument(sorted.size() <= MAX_LABELS, "too many labels: " + sorted.size());
+            for (int i = 0; i < sorted.size(); i++) {
+                prefixByLabel.put(sorted.get(i), ((long) i) << INDEX_BITS);
+            }
+        }
+
+        @Override
+        public long genVertexId(QualifiedName label, long index) {
+            Long prefix = prefixByLabel.get(label);
+            if (prefix == null) {
+                throw new IllegalArgumentException("unknown vertex label " + label);
+            }
+            if (index < 0 || index > MAX_INDEX) {
+                throw new IllegalArgumentException("vertex index out of range: " + index);
+            }
+            return prefix | index;
+        }
+    }
+
+    public static class Hash extends Dense {
+
+        private static final long MASK = Long.MAX_VALUE;
+
+        public Hash(Collection<QualifiedName> labels) {
+            super(labels);
+        }
+
+        // xor-shifts and multiplications by odd constants modulo 2^63 are both invertible,
+        // so distinct dense ids always map to distinct hashed ids
+        static long mix63(long z) {
+            z = ((z ^ (z >>> 31)) * 0xbf58476d1ce4e5b9L) & MASK;
+            z = ((z ^ (z >>> 29)) * 0x94d049bb133111ebL) & MASK;
+            return z ^ (z >>> 32);
+        }
+
+        @Override
+        public long genVertexId(QualifiedName label, long index) {
+            return mix63(super.genVertexId(label, index));
+        }
+    }
+}
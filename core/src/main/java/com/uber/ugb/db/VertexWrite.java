@@ -0,0 +1,39 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.schema.QualifiedName;
+
+/**
+ * VertexWrite holds the arguments of one DB.writeVertex call, for batched writes.
+ */
+public class VertexWrite {
+    public QualifiedName label;
+    public Object id;
+    public Object[] keyValues;
+
+    public VertexWrite() {
+    }
+
+    public VertexWrite(QualifiedName label, Object id, Object[] keyValues) {
+        this.label = label;
+        this.id = id;
+        this.keyValues = keyValues;
+    }
+}
@@ -19,61 +19,88 @@
 package com.uber.ugb.measurement;
 
 import com.google.common.base.Preconditions;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
-
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+
+/**
+ * Latencies in nano seconds, kept in a log linear histogram with a fixed number of significant digits.
+ * Threads record wait free into one of a few recorders picked by their thread id, and reads merge the
+ * recorders into the accumulated histogram. It is serialized compressed, so that spark can merge the
+ * histograms of the executors. What was measured since the last interval can be taken apart for time series.
+ */
 public class LatencyHistogram implements Serializable {
-    private final long[] usBuckets;
-    private final long[] msBuckets;
-    private final long[] secBuckets;
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 3;
+    private static final double[] PERCENTILES = {50, 90, 95, 99, 99.9, 99.99};
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
     private final String name;
-    private long overflowCount;
-    private AtomicLong operations;
-    private AtomicLong totalLatencyNs;
-    private long minNs;
-    private long maxNs;
-    private StreamingStandardDeviation std;
+    private final int significantDigits;
+    private final LongAdder operations;
+    private final LongAdder totalLatencyNs;
+    private final AtomicLong minNs;
+    private final AtomicLong maxNs;
+    private transient AtomicReferenceArray<Recorder> recorders;
+    private transient Histogram accumulated;
+    private transient Histogram interval;
 
     public LatencyHistogram(String name) {
+        this(name, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    public LatencyHistogram(String name, int significantDigits) {
+        Preconditions.checkArgument(significantDigits >= 0 && significantDigits <= 5,
+            "significant digits must be between 0 and 5");
         this.name = name;
-        usBuckets = new long[2000];
-        msBuckets = new long[2000];
-        secBuckets = new long[3600];
-        minNs = -1;
-        maxNs = -1;
-        this.operations = new AtomicLong();
-        this.totalLatencyNs = new AtomicLong();
-        this.std = new StreamingStandardDeviation();
+        this.significantDigits = significantDigits;
+        this.operations = new LongAdder();
+        this.totalLatencyNs = new LongAdder();
+        this.minNs = new AtomicLong(Long.MAX_VALUE);
+        this.maxNs = new AtomicLong(-1);
+        this.recorders = new AtomicReferenceArray<>(STRIPES);
+        this.accumulated = new Histogram(significantDigits);
+        this.interval = new Histogram(significantDigits);
+    }
+
+    static int stripes(int processors) {
+        // a power of two, so that a thread id picks a recorder with a mask
+        return Integer.highestOneBit(Math.max(1, Math.min(processors, 16)) * 2 - 1);
     }
 
     public LatencyHistogram merge(LatencyHistogram that) {
         Preconditions.checkArgument(this.name.equals(that.name));
-        Preconditions.checkArgument(this.usBuckets.length == that.usBuckets.length);
-        Preconditions.checkArgument(this.msBuckets.length == that.msBuckets.length);
-        Preconditions.checkArgument(this.secBuckets.length == that.secBuckets.length);
-        for (int i = 0; i < this.usBuckets.length; i++) {
-            this.usBuckets[i] += that.usBuckets[i];
-        }
-        for (int i = 0; i < this.msBuckets.length; i++) {
-            this.msBuckets[i] += that.msBuckets[i];
+        Histogram thatHistogram = that.getHistogram();
+        synchronized (this) {
+            drain();
+            this.accumulated.add(thatHistogram);
         }
-        for (int i = 0; i < this.secBuckets.length; i++) {
-            this.secBuckets[i] += that.secBuckets[i];
-        }
-        this.overflowCount += that.overflowCount;
-        this.minNs = this.minNs == -1 ? that.minNs : that.minNs == -1 ? this.minNs : Math.min(this.minNs, that.minNs);
-        this.maxNs = Math.max(this.maxNs, that.maxNs);
-        this.operations.addAndGet(that.operations.get());
-        this.totalLatencyNs.addAndGet(that.totalLatencyNs.get());
-        this.std = this.std.merge(that.std);
+        this.operations.add(that.operations.sum());
+        this.totalLatencyNs.add(that.totalLatencyNs.sum());
+        this.minNs.accumulateAndGet(that.minNs.get(), Math::min);
+        this.maxNs.accumulateAndGet(that.maxNs.get(), Math::max);
 
         return this;
     }
 
     public boolean hasData() {
-        return this.operations.get() > 0;
+        return this.operations.sum() > 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
     }
 
     /**
@@ -82,34 +109,8 @@ public class LatencyHistogram implements Serializable {
      * @param latencyNs
      */
     public void measure(long latencyNs) {
-        long usBucket = latencyNs / 1000;
-        if (usBucket < usBuckets.length) {
-            usBuckets[(int) usBucket]++;
-        } else {
-            long msBucket = usBucket / 1000;
-            if (msBucket < msBuckets.length) {
-                msBuckets[(int) msBucket]++;
-            } else {
-                long secBucket = msBucket / 1000;
-                if (secBucket < secBuckets.length) {
-                    secBuckets[(int) secBucket]++;
-                } else {
-                    overflowCount++;
-                }
-            }
-        }
-
-        operations.incrementAndGet();
-        totalLatencyNs.addAndGet(latencyNs);
-
-        if ((minNs < 0) || (latencyNs < minNs)) {
-            minNs = latencyNs;
-        }
-
-        if ((maxNs < 0) || (latencyNs > maxNs)) {
-            maxNs = latencyNs;
-        }
-        std.put(latencyNs);
+        record(latencyNs);
+        totalLatencyNs.add(latencyNs);
     }
 
     public void measure(Runnable runnable) {
@@ -121,55 +122,119 @@ public class LatencyHistogram implements Serializable {
         }
     }
 
-    public void printout(MetricsOutput out) throws IOException {
-        double operationCount = (double) operations.get();
-        double meanNs = totalLatencyNs.get() / operationCount;
-        double variance = std.getStandardDeviation();
-        out.write(name, "Operations", operations.get());
-        out.write(name, "Average(us)", meanNs / 1000d);
-        out.write(name, "Variance(us)", variance / 1000d);
-        out.write(name, "Min(us)", minNs / 1000d);
-        out.write(name, "Max(us)", maxNs / 1000d);
-
-        long opcounter = 0;
-        boolean done95th = false;
-        boolean done99th = false;
-        for (int i = 0; i < usBuckets.length; i++) {
-            opcounter += usBuckets[i];
-            if ((!done95th) && (((double) opcounter) / operationCount >= 0.95)) {
-                out.write(name, "95thPercentile(us)", i);
-                done95th = true;
-            }
-            if ((!done99th) && ((double) opcounter) / operationCount >= 0.99) {
-                out.write(name, "99thPercentile(us)", i);
-                done99th = true;
-                break;
-            }
+    private void record(long latencyNs) {
+        latencyNs = Math.max(0, latencyNs);
+        recorder().recordValue(latencyNs);
+        operations.increment();
+        if (latencyNs < minNs.get()) {
+            minNs.accumulateAndGet(latencyNs, Math::min);
         }
-        for (int i = 0; i < msBuckets.length; i++) {
-            opcounter += msBuckets[i];
-            if ((!done95th) && (((double) opcounter) / operationCount >= 0.95)) {
-                out.write(name, "95thPercentile(ms)", i);
-                done95th = true;
-            }
-            if ((!done99th) && ((double) opcounter) / operationCount >= 0.99) {
-                out.write(name, "99thPercentile(ms)", i);
-                done99th = true;
-                break;
-            }
+        if (latencyNs > maxNs.get()) {
+            maxNs.accumulateAndGet(latencyNs, Math::max);
         }
-        for (int i = 0; i < secBuckets.length; i++) {
-            opcounter += secBuckets[i];
-            if ((!done95th) && (((double) opcounter) / operationCount >= 0.95)) {
-                out.write(name, "95thPercentile(second)", i);
-                done95th = true;
-            }
-            if ((!done99th) && ((double) opcounter) / operationCount >= 0.99) {
-                out.write(name, "99thPercentile(second)", i);
-                break;
+    }
+
+    private Recorder recorder() {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        Recorder recorder = recorders.get(stripe);
+        if (recorder == null) {
+            recorders.compareAndSet(stripe, null, new Recorder(significantDigits));
+            recorder = recorders.get(stripe);
+        }
+        return recorder;
+    }
+
+    /**
+     * Moves what the recorders took since the last read into the accumulated and the interval histograms.
+     */
+    private void drain() {
+        for (int i = 0; i < recorders.length(); i++) {
+            Recorder recorder = recorders.get(i);
+            if (recorder != null) {
+                Histogram recorded = recorder.getIntervalHistogram();
+                accumulated.add(recorded);
+                interval.add(recorded);
             }
         }
+    }
+
+    /**
+     * @return the latencies measured since the last call, which starts the next interval
+     */
+    public synchronized Histogram takeIntervalHistogram() {
+        drain();
+        Histogram taken = interval;
+        interval = new Histogram(significantDigits);
+        return taken;
+    }
+
+    /**
+     * Forgets all the latencies measured so far, e.g. those of a warm up.
+     */
+    public synchronized void reset() {
+        drain();
+        accumulated.reset();
+        operations.reset();
+        totalLatencyNs.reset();
+        minNs.set(Long.MAX_VALUE);
+        maxNs.set(-1);
+    }
+
+    /**
+     * @return a copy of all the latencies measured so far
+     */
+    public synchronized Histogram getHistogram() {
+        drain();
+        return accumulated.copy();
+    }
+
+    /**
+     * @return the latency in nano seconds at the percentile, within the significant digits
+     */
+    public long getValueAtPercentile(double percentile) {
+        return getHistogram().getValueAtPercentile(percentile);
+    }
+
+    public void printout(MetricsOutput out) throws IOException {
+        Histogram histogram = getHistogram();
+        long operationCount = operations.sum();
+        out.write(name, "Operations", operationCount);
+        out.write(name, "Average(us)", totalLatencyNs.sum() / (double) operationCount / 1000d);
+        out.write(name, "Variance(us)", histogram.getStdDeviation() / 1000d);
+        out.write(name, "Min(us)", minNs.get() / 1000d);
+        out.write(name, "Max(us)", maxNs.get() / 1000d);
+        for (double percentile : PERCENTILES) {
+            out.write(name, percentileName(percentile) + "Percentile(us)",
+                histogram.getValueAtPercentile(percentile) / 1000d);
+        }
+    }
+
+    static String percentileName(double percentile) {
+        return percentile == Math.rint(percentile)
+            ? (long) percentile + "th" : String.valueOf(percentile) + "th";
+    }
 
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        drain();
+        ByteBuffer buffer = ByteBuffer.allocate(accumulated.getNeededByteBufferCapacity());
+        int length = accumulated.encodeIntoCompressedByteBuffer(buffer);
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try {
+            this.accumulated = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+            this.accumulated.setAutoResize(true);
+        } catch (DataFormatException e) {
+            throw new IOException("bad histogram of " + name, e);
+        }
+        this.recorders = new AtomicReferenceArray<>(STRIPES);
+        this.interval = new Histogram(significantDigits);
     }
 
 }
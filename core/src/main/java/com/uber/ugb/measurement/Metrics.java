@@ -29,29 +29,149 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The metrics of a run. The fixed fields are registered in a MetricsRegistry, next to the metrics keyed by
+ * query name and step, and are printed under the same names as ever.
+ */
 public class Metrics implements Serializable {
+    // significant digits of the latency percentiles, 3 (default) keeps them within 0.1%
+    public static final String LATENCY_SIGNIFICANT_DIGITS_PROPERTY = "latency.significant.digits";
+    public static final String QUERY_PREFIX = "query.";
+
+    private final MetricsRegistry registry;
+
     public LatencyHistogram writeVertex;
     public LatencyHistogram writeEdge;
+    // one sample per batch written, with the writes of the batches counted apart
+    public LatencyHistogram writeVertexBatch;
+    public LatencyHistogram writeEdgeBatch;
+    public AtomicLong writeVertexBatchItems;
+    public AtomicLong writeEdgeBatchItems;
     public LatencyHistogram batchCommit;
     public LatencyHistogram readVertex;
     public LatencyHistogram readEdge;
+    // one sample per batch read, with the vertices read in the batches counted apart
+    public LatencyHistogram readVertexBatch;
+    public LatencyHistogram readEdgeBatch;
+    public AtomicLong readVertexBatchItems;
+    public AtomicLong readEdgeBatchItems;
     public LatencyHistogram subgraph;
+    public LatencyHistogram subgraphCorrected;
     public AtomicLong subgraphVertexCount;
     public AtomicLong subgraphEdgeCount;
     public AtomicLong subgraphWithEdgesCount;
+    public AtomicLong writeQueueDepthTotal;
+    public AtomicLong writeQueueDepthSamples;
+    public AtomicLong writeQueueDepthMax;
+    public AtomicLong writeProducerStallNs;
+    public AtomicLong writeWorkerIdleNs;
+    public AtomicLong cacheHitCount;
+    public AtomicLong cacheMissCount;
+    public AtomicLong cacheEvictionCount;
+    public AtomicLong cacheBytes;
+    public AtomicLong missedScheduleSlots;
 
     public Metrics() {
-        this.writeVertex = new LatencyHistogram("write.vertex");
-        this.writeEdge = new LatencyHistogram("write.edge");
-        this.batchCommit = new LatencyHistogram("batch.commit");
-        this.readVertex = new LatencyHistogram("read.vertex");
-        this.readEdge = new LatencyHistogram("read.edge");
-        this.subgraph = new LatencyHistogram("subgraph");
-        this.subgraphVertexCount = new AtomicLong();
-        this.subgraphEdgeCount = new AtomicLong();
-        this.subgraphWithEdgesCount = new AtomicLong();
+        this(LatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    public Metrics(int significantDigits) {
+        this.registry = new MetricsRegistry(significantDigits);
+        this.writeVertex = registry.histogram("write.vertex");
+        this.writeEdge = registry.histogram("write.edge");
+        this.writeVertexBatch = registry.histogram("write.vertex.batch");
+        this.writeEdgeBatch = registry.histogram("write.edge.batch");
+        this.writeVertexBatchItems = registry.counter("write.vertex.batch.items");
+        this.writeEdgeBatchItems = registry.counter("write.edge.batch.items");
+        this.batchCommit = registry.histogram("batch.commit");
+        this.readVertex = registry.histogram("read.vertex");
+        this.readEdge = registry.histogram("read.edge");
+        this.readVertexBatch = registry.histogram("read.vertex.batch");
+        this.readEdgeBatch = registry.histogram("read.edge.batch");
+        this.readVertexBatchItems = registry.counter("read.vertex.batch.items");
+        this.readEdgeBatchItems = registry.counter("read.edge.batch.items");
+        this.subgraph = registry.histogram("subgraph");
+        this.subgraphCorrected = registry.histogram("subgraph.corrected");
+        this.subgraphVertexCount = registry.counter("subgraph.vertex.count");
+        this.subgraphEdgeCount = registry.counter("subgraph.edge.count");
+        this.subgraphWithEdgesCount = registry.counter("non.empty.subgraph.count");
+        this.writeQueueDepthTotal = registry.counter("write.queue.depth.total");
+        this.writeQueueDepthSamples = registry.counter("write.queue.depth.samples");
+        this.writeQueueDepthMax = registry.counter("write.queue.depth.max", MetricsRegistry.Kind.MAXIMUM);
+        this.writeProducerStallNs = registry.counter("write.producer.stall.ns");
+        this.writeWorkerIdleNs = registry.counter("write.worker.idle.ns");
+        this.cacheHitCount = registry.counter("cache.hit.count");
+        this.cacheMissCount = registry.counter("cache.miss.count");
+        this.cacheEvictionCount = registry.counter("cache.eviction.count");
+        this.cacheBytes = registry.counter("cache.bytes", MetricsRegistry.Kind.GAUGE);
+        this.missedScheduleSlots = registry.counter("subgraph.missed.slot.count");
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return the latency of the subgraphs of one query
+     */
+    public LatencyHistogram query(String queryName) {
+        return registry.histogram(QUERY_PREFIX + queryName + ".subgraph");
+    }
+
+    /**
+     * @param stepId the index of the step in the steps of the query
+     */
+    public StepMetrics step(String queryName, int stepId) {
+        return new StepMetrics(registry, QUERY_PREFIX + queryName + ".step" + stepId + ".");
+    }
+
+    /**
+     * @return the latency histograms, the fixed ones in the order they are printed, then those of the queries
+     */
+    public List<LatencyHistogram> getHistograms() {
+        List<LatencyHistogram> histograms = new ArrayList<>(Arrays.asList(
+            writeVertex, writeEdge, writeVertexBatch, writeEdgeBatch, batchCommit, readVertex, readEdge, readVertexBatch, readEdgeBatch,
+            subgraph, subgraphCorrected));
+        histograms.addAll(registry.getHistograms(QUERY_PREFIX).values());
+        return histograms;
+    }
+
+    /**
+     * Forgets everything measured so far, so that a summary leaves out the warm up.
+     */
+    public void reset() {
+        registry.reset();
+    }
+
+    public static Metrics fromProperties(Properties properties) {
+        return new Metrics(Integer.parseInt(properties.getProperty(LATENCY_SIGNIFICANT_DIGITS_PROPERTY,
+            String.valueOf(LatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS))));
+    }
+
+    /**
+     * Records the latency of one batch call, once whatever its size, and counts the items of the batch.
+     */
+    public static void measureBatch(LatencyHistogram batch, AtomicLong items, long latencyNs, int count) {
+        batch.measure(latencyNs);
+        items.addAndGet(count);
+    }
+
+    /**
+     * Records the number of queued writes seen by a write worker when it takes a batch.
+     */
+    public void sampleWriteQueueDepth(long depth) {
+        writeQueueDepthTotal.addAndGet(depth);
+        writeQueueDepthSamples.incrementAndGet();
+        writeQueueDepthMax.accumulateAndGet(depth, Math::max);
     }
 
     public void printOut(OutputStream out) throws IOException {
@@ -59,15 +179,39 @@ public class Metrics implements Serializable {
         JsonMetricsOutput jsonOutput = new JsonMetricsOutput();
         collectMetrics(jsonOutput, this.writeVertex);
         collectMetrics(jsonOutput, this.writeEdge);
+        collectBatchMetrics(jsonOutput, this.writeVertexBatch, this.writeVertexBatchItems);
+        collectBatchMetrics(jsonOutput, this.writeEdgeBatch, this.writeEdgeBatchItems);
         collectMetrics(jsonOutput, this.batchCommit);
         collectMetrics(jsonOutput, this.readVertex);
         collectMetrics(jsonOutput, this.readEdge);
+        collectBatchMetrics(jsonOutput, this.readVertexBatch, this.readVertexBatchItems);
+        collectBatchMetrics(jsonOutput, this.readEdgeBatch, this.readEdgeBatchItems);
         collectMetrics(jsonOutput, this.subgraph);
+        collectMetrics(jsonOutput, this.subgraphCorrected);
 
         JsonObject json = jsonOutput.getJson();
         json.add("subgraph.vertex.count", new JsonPrimitive(subgraphVertexCount.get()));
         json.add("subgraph.edge.count", new JsonPrimitive(subgraphEdgeCount.get()));
         json.add("non.empty.subgraph.count", new JsonPrimitive(subgraphWithEdgesCount.get()));
+        if (subgraphCorrected.hasData()) {
+            json.add("subgraph.missed.slot.count", new JsonPrimitive(missedScheduleSlots.get()));
+        }
+        if (writeQueueDepthSamples.get() > 0) {
+            json.add("write.queue.depth.mean",
+                new JsonPrimitive(writeQueueDepthTotal.get() / (double) writeQueueDepthSamples.get()));
+            json.add("write.queue.depth.max", new JsonPrimitive(writeQueueDepthMax.get()));
+            json.add("write.producer.stall(ms)", new JsonPrimitive(writeProducerStallNs.get() / 1000000d));
+            json.add("write.worker.idle(ms)", new JsonPrimitive(writeWorkerIdleNs.get() / 1000000d));
+        }
+        long cacheLookups = cacheHitCount.get() + cacheMissCount.get();
+        if (cacheLookups > 0) {
+            json.add("cache.hit.count", new JsonPrimitive(cacheHitCount.get()));
+            json.add("cache.miss.count", new JsonPrimitive(cacheMissCount.get()));
+            json.add("cache.hit.ratio", new JsonPrimitive(cacheHitCount.get() / (double) cacheLookups));
+            json.add("cache.eviction.count", new JsonPrimitive(cacheEvictionCount.get()));
+            json.add("cache.bytes", new JsonPrimitive(cacheBytes.get()));
+        }
+        collectQueryMetrics(jsonOutput);
 
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
         Writer writer = new BufferedWriter(new OutputStreamWriter(out));
@@ -81,18 +225,42 @@ public class Metrics implements Serializable {
         }
     }
 
-    public Metrics merge(Metrics that) {
+    private void collectBatchMetrics(JsonMetricsOutput jsonOutput, LatencyHistogram batch, AtomicLong items)
+        throws IOException {
+        if (batch.hasData()) {
+            batch.printout(jsonOutput);
+            jsonOutput.getJson().add(batch.getName() + ".items", new JsonPrimitive(items.get()));
+        }
+    }
 
-        this.writeVertex.merge(that.writeVertex);
-        this.writeEdge.merge(that.writeEdge);
-        this.batchCommit.merge(that.batchCommit);
-        this.readVertex.merge(that.readVertex);
-        this.readEdge.merge(that.readEdge);
-        this.subgraph.merge(that.subgraph);
-        this.subgraphVertexCount.addAndGet(that.subgraphVertexCount.get());
-        this.subgraphEdgeCount.addAndGet(that.subgraphEdgeCount.get());
-        this.subgraphWithEdgesCount.addAndGet(that.subgraphWithEdgesCount.get());
+    /**
+     * Adds the metrics of the queries and their steps, ordered by name so that the steps of a query are together,
+     * with the fan out of each step.
+     */
+    private void collectQueryMetrics(JsonMetricsOutput jsonOutput) throws IOException {
+        Map<String, LatencyHistogram> histograms = registry.getHistograms(QUERY_PREFIX);
+        Map<String, Long> counters = registry.getCounters(QUERY_PREFIX);
+        Set<String> names = new TreeSet<>(histograms.keySet());
+        names.addAll(counters.keySet());
+        JsonObject json = jsonOutput.getJson();
+        for (String name : names) {
+            if (histograms.containsKey(name)) {
+                collectMetrics(jsonOutput, histograms.get(name));
+                continue;
+            }
+            json.add(name, new JsonPrimitive(counters.get(name)));
+            if (name.endsWith("." + StepMetrics.EDGES_SELECTED)) {
+                String step = name.substring(0, name.length() - StepMetrics.EDGES_SELECTED.length());
+                Long frontier = counters.get(step + StepMetrics.FRONTIER);
+                if (frontier != null && frontier > 0) {
+                    json.add(step + StepMetrics.FANOUT, new JsonPrimitive(counters.get(name) / (double) frontier));
+                }
+            }
+        }
+    }
 
+    public Metrics merge(Metrics that) {
+        this.registry.merge(that.registry);
         return this;
     }
 }
@@ -0,0 +1,126 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.measurement;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters by name, created on first use, so that metrics can be keyed by what is
+ * measured, e.g. the query and the step of a traversal. Registries merge by name.
+ */
+public class MetricsRegistry implements Serializable {
+
+    /**
+     * How a counter merges and whether a reset clears it.
+     */
+    public enum Kind {
+        // summed, cleared by a reset
+        COUNTER,
+        // the largest value, cleared by a reset
+        MAXIMUM,
+        // summed and kept by a reset, as it measures what is held rather than what happened
+        GAUGE
+    }
+
+    private final int significantDigits;
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Kind> kinds = new ConcurrentHashMap<>();
+
+    public MetricsRegistry(int significantDigits) {
+        this.significantDigits = significantDigits;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(name, n -> new LatencyHistogram(n, significantDigits));
+        }
+        return histogram;
+    }
+
+    public AtomicLong counter(String name) {
+        return counter(name, Kind.COUNTER);
+    }
+
+    public AtomicLong counter(String name, Kind kind) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            kinds.putIfAbsent(name, kind);
+            counter = counters.computeIfAbsent(name, n -> new AtomicLong());
+        }
+        return counter;
+    }
+
+    /**
+     * @return the histograms whose names start with the prefix, ordered by name
+     */
+    public Map<String, LatencyHistogram> getHistograms(String prefix) {
+        Map<String, LatencyHistogram> selected = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                selected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return the values of the counters whose names start with the prefix, ordered by name
+     */
+    public Map<String, Long> getCounters(String prefix) {
+        Map<String, Long> selected = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                selected.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        return selected;
+    }
+
+    public MetricsRegistry merge(MetricsRegistry that) {
+        for (Map.Entry<String, LatencyHistogram> entry : that.histograms.entrySet()) {
+            histogram(entry.getKey()).merge(entry.getValue());
+        }
+        for (Map.Entry<String, AtomicLong> entry : that.counters.entrySet()) {
+            Kind kind = that.kinds.getOrDefault(entry.getKey(), Kind.COUNTER);
+            AtomicLong counter = counter(entry.getKey(), kind);
+            if (kind == Kind.MAXIMUM) {
+                counter.accumulateAndGet(entry.getValue().get(), Math::max);
+            } else {
+                counter.addAndGet(entry.getValue().get());
+            }
+        }
+        return this;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            if (kinds.getOrDefault(entry.getKey(), Kind.COUNTER) != Kind.GAUGE) {
+                entry.getValue().set(0);
+            }
+        }
+    }
+}
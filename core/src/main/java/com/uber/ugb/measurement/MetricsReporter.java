@@ -0,0 +1,213 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.measurement;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Reports the throughput and latency percentiles of every interval of a run, as json lines or csv, and
+ * optionally the interval histograms as an HdrHistogram log. The metrics of a phase are reset once its
+ * warm up is over, so that the final summary leaves the warm up out.
+ */
+public class MetricsReporter implements Closeable {
+
+    // seconds between interval reports, 0 (default) for none
+    public static final String METRICS_INTERVAL_SECONDS_PROPERTY = "metrics.interval.seconds";
+    public static final String METRICS_INTERVAL_FORMAT_PROPERTY = "metrics.interval.format";
+    public static final String METRICS_INTERVAL_OUTPUT_PROPERTY = "metrics.interval.output";
+    public static final String METRICS_HDR_LOG_PROPERTY = "metrics.hdr.log";
+    public static final String METRICS_WARMUP_SECONDS_PROPERTY = "metrics.warmup.seconds";
+    public static final String JSON_FORMAT = "json";
+    public static final String CSV_FORMAT = "csv";
+    public static final String STANDARD_OUTPUT = "-";
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private static Logger logger = Logger.getLogger(MetricsReporter.class.getName());
+
+    private final Supplier<Metrics> metrics;
+    private final long intervalMs;
+    private final long warmupMs;
+    private final boolean csv;
+    private final PrintStream out;
+    private final HistogramLogWriter hdrLog;
+    private final ScheduledExecutorService timer;
+    private ScheduledFuture<?> warmup;
+    private volatile String phase;
+    private long lastReportMs;
+
+    public MetricsReporter(Supplier<Metrics> metrics, long intervalMs, long warmupMs, String format,
+                           PrintStream out, HistogramLogWriter hdrLog) {
+        if (!JSON_FORMAT.equals(format) && !CSV_FORMAT.equals(format)) {
+            throw new IllegalArgumentException("unknown " + METRICS_INTERVAL_FORMAT_PROPERTY + ": " + format);
+        }
+        this.metrics = metrics;
+        this.intervalMs = intervalMs;
+        this.warmupMs = warmupMs;
+        this.csv = CSV_FORMAT.equals(format);
+        this.out = out;
+        this.hdrLog = hdrLog;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long now = System.currentTimeMillis();
+        this.lastReportMs = now;
+        if (intervalMs > 0 && csv) {
+            out.println(csvHeader());
+        }
+        if (intervalMs > 0 && hdrLog != null) {
+            hdrLog.outputLogFormatVersion();
+            hdrLog.outputStartTime(now);
+            hdrLog.setBaseTime(now);
+            hdrLog.outputLegend();
+        }
+        if (intervalMs > 0) {
+            timer.scheduleAtFixedRate(this::report, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static MetricsReporter fromProperties(Properties properties, Supplier<Metrics> metrics)
+        throws FileNotFoundException {
+        String output = properties.getProperty(METRICS_INTERVAL_OUTPUT_PROPERTY, STANDARD_OUTPUT);
+        String hdrLogPath = properties.getProperty(METRICS_HDR_LOG_PROPERTY);
+        return new MetricsReporter(metrics,
+            (long) (Double.parseDouble(properties.getProperty(METRICS_INTERVAL_SECONDS_PROPERTY, "0")) * 1000),
+            (long) (Double.parseDouble(properties.getProperty(METRICS_WARMUP_SECONDS_PROPERTY, "0")) * 1000),
+            properties.getProperty(METRICS_INTERVAL_FORMAT_PROPERTY, JSON_FORMAT),
+            STANDARD_OUTPUT.equals(output) ? System.out : new PrintStream(new FileOutputStream(output), true),
+            hdrLogPath == null ? null : new HistogramLogWriter(hdrLogPath));
+    }
+
+    /**
+     * Starts a phase, e.g. writing or reading, whose metrics are reset after the warm up.
+     */
+    public synchronized void startPhase(String phase) {
+        report();
+        this.phase = phase;
+        if (warmup != null) {
+            warmup.cancel(false);
+        }
+        if (warmupMs > 0) {
+            warmup = timer.schedule(() -> {
+                synchronized (this) {
+                    report();
+                    metrics.get().reset();
+                    logger.info(phase + " warmed up after " + warmupMs + "ms, its metrics start over");
+                }
+            }, warmupMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes the interval histograms of the metrics and reports those with measures.
+     */
+    public synchronized void report() {
+        if (intervalMs <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        double seconds = Math.max(1, now - lastReportMs) / 1000d;
+        for (LatencyHistogram latencyHistogram : metrics.get().getHistograms()) {
+            Histogram histogram = latencyHistogram.takeIntervalHistogram();
+            if (histogram.getTotalCount() == 0 || phase == null) {
+                continue;
+            }
+            if (csv) {
+                out.println(csvLine(now, latencyHistogram.getName(), histogram, seconds));
+            } else {
+                out.println(jsonLine(now, latencyHistogram.getName(), histogram, seconds));
+            }
+            if (hdrLog != null) {
+                histogram.setTag(phase + "." + latencyHistogram.getName());
+                histogram.setStartTimeStamp(lastReportMs);
+                histogram.setEndTimeStamp(now);
+                hdrLog.outputIntervalHistogram(histogram);
+            }
+        }
+        out.flush();
+        lastReportMs = now;
+    }
+
+    private String jsonLine(long now, String name, Histogram histogram, double seconds) {
+        JsonObject json = new JsonObject();
+        json.add("time", new JsonPrimitive(now));
+        json.add("phase", new JsonPrimitive(phase));
+        json.add("name", new JsonPrimitive(name));
+        json.add("Operations", new JsonPrimitive(histogram.getTotalCount()));
+        json.add("Throughput(ops/sec)", new JsonPrimitive(histogram.getTotalCount() / seconds));
+        json.add("Average(us)", new JsonPrimitive(histogram.getMean() / 1000d));
+        for (double percentile : PERCENTILES) {
+            json.add(LatencyHistogram.percentileName(percentile) + "Percentile(us)",
+                new JsonPrimitive(histogram.getValueAtPercentile(percentile) / 1000d));
+        }
+        json.add("Max(us)", new JsonPrimitive(histogram.getMaxValue() / 1000d));
+        return json.toString();
+    }
+
+    private static String csvHeader() {
+        StringBuilder header = new StringBuilder("time,phase,name,Operations,Throughput(ops/sec),Average(us)");
+        for (double percentile : PERCENTILES) {
+            header.append(',').append(LatencyHistogram.percentileName(percentile)).append("Percentile(us)");
+        }
+        return header.append(",Max(us)").toString();
+    }
+
+    private String csvLine(long now, String name, Histogram histogram, double seconds) {
+        StringBuilder line = new StringBuilder()
+            .append(now).append(',').append(phase).append(',').append(name)
+            .append(',').append(histogram.getTotalCount())
+            .append(',').append(histogram.getTotalCount() / seconds)
+            .append(',').append(histogram.getMean() / 1000d);
+        for (double percentile : PERCENTILES) {
+            line.append(',').append(histogram.getValueAtPercentile(percentile) / 1000d);
+        }
+        return line.append(',').append(histogram.getMaxValue() / 1000d).toString();
+    }
+
+    /**
+     * Reports the last interval and stops.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        report();
+        if (hdrLog != null) {
+            hdrLog.close();
+        }
+        if (out != System.out) {
+            out.close();
+        }
+    }
+}
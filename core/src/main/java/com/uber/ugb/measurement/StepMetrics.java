@@ -0,0 +1,54 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.measurement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one step of a query, summed over the traversals of the query.
+ */
+public class StepMetrics {
+    public static final String LATENCY = "latency";
+    public static final String FRONTIER = "frontier";
+    public static final String EDGES_READ = "edges.read";
+    public static final String EDGES_KEPT = "edges.kept";
+    public static final String EDGES_SELECTED = "edges.selected";
+    public static final String VERTICES_READ = "vertices.read";
+    public static final String FANOUT = "fanout";
+
+    // from reading the edges of the frontier to having the edges of the next frontier
+    public final LatencyHistogram latency;
+    // vertices the step starts from
+    public final AtomicLong frontier;
+    // edges the store returned
+    public final AtomicLong edgesRead;
+    // edges left after the edge filter, the limit and the visited vertices
+    public final AtomicLong edgesKept;
+    // edges left after the vertex filter, i.e. the next frontier
+    public final AtomicLong edgesSelected;
+    public final AtomicLong verticesRead;
+
+    StepMetrics(MetricsRegistry registry, String prefix) {
+        this.latency = registry.histogram(prefix + LATENCY);
+        this.frontier = registry.counter(prefix + FRONTIER);
+        this.edgesRead = registry.counter(prefix + EDGES_READ);
+        this.edgesKept = registry.counter(prefix + EDGES_KEPT);
+        this.edgesSelected = registry.counter(prefix + EDGES_SELECTED);
+        this.verticesRead = registry.counter(prefix + VERTICES_READ);
+    }
+}
@@ -20,7 +20,7 @@ package com.uber.ugb.model;
 
 import com.google.common.base.Preconditions;
 import com.uber.ugb.model.distro.DegreeDistribution;
-import com.uber.ugb.util.RandomPermutation;
+import com.uber.ugb.util.FeistelPermutation;
 
 import java.util.Arrays;
 import java.util.Random;
@@ -33,11 +33,16 @@ public class BucketedEdgeDistribution {
     Random random;
 
     public BucketedEdgeDistribution(Incidence incidence, long domainSize, final Random random) {
+        this(incidence, domainSize, random, WeightedBuckets.Sampling.ALIAS);
+    }
+
+    public BucketedEdgeDistribution(Incidence incidence, long domainSize, final Random random,
+                                    WeightedBuckets.Sampling sampling) {
         domainBucketWidth = domainSize > 1024 * 1024 ? 1024 : 1;
         int domainBucketCount = (int) (domainSize / domainBucketWidth);
         domainSubset = createRandomSubset(
             new DirectSet(domainBucketCount), incidence.getExistenceProbability(), random);
-        domainWeightedBuckets = incidence.getDegreeDistribution(domainSubset.size(), random);
+        domainWeightedBuckets = incidence.getDegreeDistribution(domainSubset.size(), random, sampling);
         this.random = random;
     }
 
@@ -63,12 +68,12 @@ public class BucketedEdgeDistribution {
 
     public static class RandomSubset<T> implements IndexSet<T> {
         private final IndexSet<T> base;
-        private final int[] permutation;
+        private final FeistelPermutation permutation;
         private final int size;
 
         RandomSubset(final IndexSet<T> base, final int size, final Random random) {
             this.base = base;
-            this.permutation = new RandomPermutation(base.size(), random).getPermutation();
+            this.permutation = new FeistelPermutation(base.size(), random);
             this.size = size;
         }
 
@@ -80,7 +85,7 @@ public class BucketedEdgeDistribution {
         @Override
         public T get(final int index) {
             Preconditions.checkArgument(index < size);
-            return base.get(permutation[index]);
+            return base.get(permutation.get(index));
         }
     }
 
@@ -124,11 +129,31 @@ public class BucketedEdgeDistribution {
         }
     }
 
+    /**
+     * WeightedBuckets picks a bucket with probability proportional to its degree.
+     * <p>
+     * ALIAS sampling uses Walker's alias method, built in O(n) with Vose's algorithm, and picks a bucket
+     * in O(1) with two array reads. CDF sampling binary-searches the cumulative distribution, and is kept
+     * as a fallback. Both consume a single random double per pick.
+     */
     public static class WeightedBuckets {
+
+        public enum Sampling {
+            ALIAS, CDF
+        }
+
+        private final Sampling sampling;
         double[] accumulatedWeights;
+        double[] probabilities;
+        int[] aliases;
         double totalWeight;
 
         public WeightedBuckets(DegreeDistribution.Sample sample, int bucketCount) {
+            this(sample, bucketCount, Sampling.ALIAS);
+        }
+
+        public WeightedBuckets(DegreeDistribution.Sample sample, int bucketCount, Sampling sampling) {
+            this.sampling = sampling;
             double[] weights = new double[bucketCount];
             int[] degrees = new int[bucketCount];
             for (int i = 0; i < bucketCount; i++) {
@@ -138,6 +163,11 @@ public class BucketedEdgeDistribution {
         }
 
         public WeightedBuckets(int[] degrees, double[] weights) {
+            this(degrees, weights, Sampling.ALIAS);
+        }
+
+        public WeightedBuckets(int[] degrees, double[] weights, Sampling sampling) {
+            this.sampling = sampling;
             init(degrees, weights);
         }
 
@@ -145,12 +175,20 @@ public class BucketedEdgeDistribution {
 
             Preconditions.checkArgument(degrees.length == weights.length);
 
-            accumulatedWeights = new double[weights.length];
             totalWeight = 0;
             for (int i = 0; i < degrees.length; i++) {
                 weights[i] = degrees[i];
                 totalWeight += weights[i];
             }
+            if (sampling == Sampling.CDF) {
+                initCumulative(weights);
+            } else {
+                initAlias(weights);
+            }
+        }
+
+        private void initCumulative(double[] weights) {
+            accumulatedWeights = new double[weights.length];
             double currentWeight = 0;
             for (int i = 0; i < weights.length; i++) {
                 currentWeight += weights[i];
@@ -158,13 +196,73 @@ public class BucketedEdgeDistribution {
             }
         }
 
+        private void initAlias(double[] weights) {
+            int n = weights.length;
+            probabilities = new double[n];
+            aliases = new int[n];
+
+            // scaled probabilities average to 1; buckets below 1 are topped up by an alias above 1
+            double[] scaled = new double[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / totalWeight;
+                if (scaled[i] < 1.0) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                probabilities[less] = scaled[less];
+                aliases[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+                if (scaled[more] < 1.0) {
+                    small[smallCount++] = more;
+                } else {
+                    large[largeCount++] = more;
+                }
+            }
+
+            // the remaining buckets are full, up to rounding errors
+            while (largeCount > 0) {
+                int more = large[--largeCount];
+                probabilities[more] = 1.0;
+                aliases[more] = more;
+            }
+            while (smallCount > 0) {
+                int less = small[--smallCount];
+                probabilities[less] = 1.0;
+                aliases[less] = less;
+            }
+        }
+
         public int locate(Random random) {
             double r = random.nextDouble();
-            int x = Arrays.binarySearch(this.accumulatedWeights, r);
-            if (x < 0) {
-                x = (-x) - 1;
+            if (sampling == Sampling.CDF) {
+                int x = Arrays.binarySearch(this.accumulatedWeights, r);
+                if (x < 0) {
+                    x = (-x) - 1;
+                }
+                return x;
             }
-            return x;
+            int n = probabilities.length;
+            if (n == 0) {
+                return 0;
+            }
+            // the integer part picks the column, the fraction decides between the column and its alias
+            double u = r * n;
+            int x = (int) u;
+            return u - x < probabilities[x] ? x : aliases[x];
+        }
+
+        public Sampling getSampling() {
+            return sampling;
         }
 
         public double getTotalWeight() {
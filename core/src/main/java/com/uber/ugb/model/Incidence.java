@@ -36,6 +36,7 @@ public class Incidence implements Serializable {
     private final QualifiedName vertexLabel;
     private final double existenceProbability;
     private DegreeDistribution degreeDistribution;
+    private int[] degrees;
     private BucketedEdgeDistribution.WeightedBuckets weightedBuckets;
 
     public Incidence(final QualifiedName vertexLabel,
@@ -65,6 +66,7 @@ public class Incidence implements Serializable {
                     vertexLabel.toString(), direction, edgeLabel));
             }
         }
+        this.degrees = degrees;
         this.weightedBuckets = new BucketedEdgeDistribution.WeightedBuckets(degrees, weights);
     }
 
@@ -97,9 +99,18 @@ public class Incidence implements Serializable {
     }
 
     public BucketedEdgeDistribution.WeightedBuckets getDegreeDistribution(int size, final Random random) {
-        if (weightedBuckets == null) {
+        return getDegreeDistribution(size, random, BucketedEdgeDistribution.WeightedBuckets.Sampling.ALIAS);
+    }
+
+    public synchronized BucketedEdgeDistribution.WeightedBuckets getDegreeDistribution(
+        int size, final Random random, BucketedEdgeDistribution.WeightedBuckets.Sampling sampling) {
+        if (degrees == null) {
             DegreeDistribution.Sample domainSample = degreeDistribution.createSample(size, random);
-            return new BucketedEdgeDistribution.WeightedBuckets(domainSample, size);
+            return new BucketedEdgeDistribution.WeightedBuckets(domainSample, size, sampling);
+        }
+        if (weightedBuckets.getSampling() != sampling) {
+            weightedBuckets = new BucketedEdgeDistribution.WeightedBuckets(
+                degrees, new double[degrees.length], sampling);
         }
         return weightedBuckets;
     }
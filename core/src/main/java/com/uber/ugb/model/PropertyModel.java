@@ -54,10 +54,11 @@ public class PropertyModel implements Serializable {
             }
             if (propertyModels.containsKey(relationType.getName().toString())){
                 StatisticsSpec.PropertyValueWeight[] vw = propertyModels.get(relationType.getName().toString());
-                properties.add(new SimpleProperty(relationType, new WeightedValueslGenerator(vw)));
+                properties.add(new SimpleProperty(entityType.getName(), relationType,
+                    new WeightedValueslGenerator(vw)));
             }else{
                 Generator generator = generatorFactory.make(vocabulary, toType);
-                properties.add(new SimpleProperty(relationType, generator));
+                properties.add(new SimpleProperty(entityType.getName(), relationType, generator));
             }
         }
     }
@@ -66,4 +67,21 @@ public class PropertyModel implements Serializable {
         return properties;
     }
 
+    /**
+     * Generates the properties of one element as alternating keys and values.
+     *
+     * @param randomSeed the graph seed
+     * @param id         the index of the vertex or edge which owns the properties
+     */
+    public Object[] generateKeyValues(long randomSeed, long id) {
+        Object[] keyValues = new Object[properties.size() * 2];
+        int i = 0;
+        for (SimpleProperty prop : properties) {
+            keyValues[i] = prop.getKey();
+            keyValues[i + 1] = prop.generateValue(randomSeed, id);
+            i += 2;
+        }
+        return keyValues;
+    }
+
 }
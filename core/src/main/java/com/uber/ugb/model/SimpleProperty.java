@@ -19,6 +19,7 @@
 package com.uber.ugb.model;
 
 import com.uber.ugb.model.generator.Generator;
+import com.uber.ugb.schema.QualifiedName;
 import com.uber.ugb.schema.model.RelationType;
 
 import java.io.Serializable;
@@ -28,10 +29,14 @@ public class SimpleProperty<T> implements Serializable {
 
     private final RelationType relationType;
     private final Generator valueGenerator;
+    // hash of the element label and property key, computed once rather than per generated value
+    private final int keyHash;
 
-    public SimpleProperty(final RelationType relationType, Generator valueGenerator) {
+    public SimpleProperty(final QualifiedName elementLabel, final RelationType relationType,
+                          Generator valueGenerator) {
         this.relationType = relationType;
         this.valueGenerator = valueGenerator;
+        this.keyHash = Generator.keyHash(elementLabel.toString(), relationType.getLabel());
     }
 
     public RelationType getRelationType() {
@@ -45,4 +50,14 @@ public class SimpleProperty<T> implements Serializable {
     public Generator getValueGenerator() {
         return valueGenerator;
     }
+
+    /**
+     * Generates the value of this property for one element.
+     *
+     * @param randomSeed the graph seed
+     * @param id         the index of the vertex or edge which owns the property
+     */
+    public Object generateValue(long randomSeed, long id) {
+        return valueGenerator.generate(randomSeed, id, keyHash);
+    }
 }
@@ -21,7 +21,7 @@ package com.uber.ugb.model.generator;
 public class BooleanGenerator extends Generator<Boolean> {
 
     @Override
-    protected Boolean genValue() {
-        return random.nextBoolean();
+    protected Boolean genValue(long stream) {
+        return CounterBasedRandom.nextBoolean(stream, 0);
     }
 }
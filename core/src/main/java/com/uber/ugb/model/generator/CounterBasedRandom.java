@@ -0,0 +1,99 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.model.generator;
+
+/**
+ * A stateless, counter-based random number generator built on the SplitMix64 mixing function.
+ * Every draw is a pure function of a stream, derived from the seed, element id and key hash, and a counter
+ * which numbers the draws within the stream. Values can therefore be generated from any number of threads
+ * without shared state, and the same seed always produces the same values.
+ */
+public final class CounterBasedRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private CounterBasedRandom() {
+    }
+
+    /**
+     * Derives the random stream of one property of one element.
+     *
+     * @param seed    the graph seed
+     * @param id      the index of the vertex or edge
+     * @param keyHash the precomputed hash of the element label and property key
+     * @return the stream to pass to the draw methods
+     */
+    public static long stream(long seed, long id, int keyHash) {
+        long h = mix64(seed + GOLDEN_GAMMA);
+        h = mix64(h + keyHash * GOLDEN_GAMMA);
+        return mix64(h + id * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Draws the first random long of the stream of one property of one element.
+     */
+    public static long next(long seed, long id, int keyHash) {
+        return nextLong(stream(seed, id, keyHash), 0);
+    }
+
+    /**
+     * Draws the counter-th random long of a stream.
+     */
+    public static long nextLong(long stream, int counter) {
+        return mix64(stream + counter * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Draws the counter-th random int of a stream, uniformly distributed in [0, bound).
+     */
+    public static int nextInt(long stream, int counter, int bound) {
+        return (int) (((nextLong(stream, counter) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Draws the counter-th random non-negative long of a stream.
+     */
+    public static long nextNonNegativeLong(long stream, int counter) {
+        return nextLong(stream, counter) >>> 1;
+    }
+
+    /**
+     * Draws the counter-th random double of a stream, uniformly distributed in [0, 1).
+     */
+    public static double nextDouble(long stream, int counter) {
+        return (nextLong(stream, counter) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Draws the counter-th random float of a stream, uniformly distributed in [0, 1).
+     */
+    public static float nextFloat(long stream, int counter) {
+        return (nextLong(stream, counter) >>> 40) * 0x1.0p-24f;
+    }
+
+    public static boolean nextBoolean(long stream, int counter) {
+        return nextLong(stream, counter) < 0;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -29,10 +29,10 @@ public class DateGenerator extends Generator<String> {
     }
 
     @Override
-    protected String genValue() {
-        int year = random.nextInt(range);
-        int month = random.nextInt(12);
-        int day = random.nextInt(30);
+    protected String genValue(long stream) {
+        int year = CounterBasedRandom.nextInt(stream, 0, range);
+        int month = CounterBasedRandom.nextInt(stream, 1, 12);
+        int day = CounterBasedRandom.nextInt(stream, 2, 30);
         return String.format("%4d-%2d-%2d", year + min, month + 1, day + 1);
     }
 }
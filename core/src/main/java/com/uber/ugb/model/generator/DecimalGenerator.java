@@ -33,7 +33,7 @@ public class DecimalGenerator extends Generator<BigDecimal> {
     }
 
     @Override
-    protected BigDecimal genValue() {
-        return new BigDecimal(Math.abs(random.nextDouble()*this.range)+this.min);
+    protected BigDecimal genValue(long stream) {
+        return new BigDecimal(Math.abs(CounterBasedRandom.nextDouble(stream, 0) * this.range) + this.min);
     }
 }
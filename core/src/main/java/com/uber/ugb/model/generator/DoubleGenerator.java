@@ -31,7 +31,7 @@ public class DoubleGenerator extends Generator<Double> {
     }
 
     @Override
-    protected Double genValue() {
-        return Math.abs(random.nextDouble() * this.range) + this.min;
+    protected Double genValue(long stream) {
+        return Math.abs(CounterBasedRandom.nextDouble(stream, 0) * this.range) + this.min;
     }
 }
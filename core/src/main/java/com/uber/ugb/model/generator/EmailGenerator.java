@@ -24,16 +24,16 @@ public class EmailGenerator extends Generator<String> {
     private static String[] domains = {"gmail.com", "yahoo.com", "outlook.com", "inbox.com", "icloud.com", "mail.com"};
 
     @Override
-    protected String genValue() {
-        int lengh = random.nextInt(8) + 3;
+    protected String genValue(long stream) {
+        int lengh = CounterBasedRandom.nextInt(stream, 0, 8) + 3;
 
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(lengh + 12);
         for (int i = 0; i < lengh; i++) {
-            int x = random.nextInt(randomText.length());
+            int x = CounterBasedRandom.nextInt(stream, i + 1, randomText.length());
             sb.append(randomText.charAt(x));
         }
         sb.append("@");
-        sb.append(domains[random.nextInt(domains.length)]);
+        sb.append(domains[CounterBasedRandom.nextInt(stream, lengh + 1, domains.length)]);
 
         return sb.toString();
     }
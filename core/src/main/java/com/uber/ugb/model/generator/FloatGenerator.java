@@ -31,7 +31,7 @@ public class FloatGenerator extends Generator<Float> {
     }
 
     @Override
-    protected Float genValue() {
-        return Math.abs(random.nextFloat() * this.range) + this.min;
+    protected Float genValue(long stream) {
+        return Math.abs(CounterBasedRandom.nextFloat(stream, 0) * this.range) + this.min;
     }
 }
@@ -19,22 +19,38 @@
 package com.uber.ugb.model.generator;
 
 import java.io.Serializable;
-import java.util.Random;
 
+/**
+ * Generates property values. Generators are stateless: a value is a pure function of the seed, the element id
+ * and the property key, so a single generator can be shared by all generating threads.
+ */
 public abstract class Generator<V> implements Serializable {
 
-    protected Random random = new Random();
+    /**
+     * Generates a value. Implementations draw random numbers from the given stream with
+     * {@link CounterBasedRandom}, using a distinct counter for every draw.
+     *
+     * @param stream the random stream of the generated property
+     */
+    protected abstract V genValue(long stream);
+
+    /**
+     * Combines an element label and a property key into the key hash expected by
+     * {@link #generate(long, long, int)}. The hash can be computed once per property.
+     */
+    public static int keyHash(String label, String key) {
+        int hash = label.hashCode();
+        hash = 31 * hash + ".".hashCode();
+        hash = 31 * hash + key.hashCode();
+        return hash;
+    }
 
-    protected abstract V genValue();
+    public V generate(long randomSeed, long id, int keyHash) {
+        return genValue(CounterBasedRandom.stream(randomSeed, id, keyHash));
+    }
 
     public Object generate(long randomSeed, String label, long id, String key) {
-        long seed = randomSeed;
-        seed = ((seed << 5) - seed) + id;
-        seed = ((seed << 5) - seed) + label.hashCode();
-        seed = ((seed << 5) - seed) + ".".hashCode();
-        seed = ((seed << 5) - seed) + key.hashCode();
-        this.random.setSeed(seed);
-        return genValue();
+        return generate(randomSeed, id, keyHash(label, key));
     }
 
 }
@@ -31,7 +31,7 @@ public class LongGenerator extends Generator<Long> {
     }
 
     @Override
-    protected Long genValue() {
-        return Math.abs(random.nextLong() % this.range) + this.min;
+    protected Long genValue(long stream) {
+        return CounterBasedRandom.nextNonNegativeLong(stream, 0) % this.range + this.min;
     }
 }
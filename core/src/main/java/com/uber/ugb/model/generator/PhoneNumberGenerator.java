@@ -23,20 +23,20 @@ public class PhoneNumberGenerator extends Generator<String> {
     private static String text = "0123456789";
 
     @Override
-    protected String genValue() {
-        StringBuilder sb = new StringBuilder();
+    protected String genValue(long stream) {
+        StringBuilder sb = new StringBuilder(12);
         for (int i = 0; i < 3; i++) {
-            int x = random.nextInt(text.length());
+            int x = CounterBasedRandom.nextInt(stream, i, text.length());
             sb.append(text.charAt(x));
         }
         sb.append("-");
-        for (int i = 0; i < 3; i++) {
-            int x = random.nextInt(text.length());
+        for (int i = 3; i < 6; i++) {
+            int x = CounterBasedRandom.nextInt(stream, i, text.length());
             sb.append(text.charAt(x));
         }
         sb.append("-");
-        for (int i = 0; i < 4; i++) {
-            int x = random.nextInt(text.length());
+        for (int i = 6; i < 10; i++) {
+            int x = CounterBasedRandom.nextInt(stream, i, text.length());
             sb.append(text.charAt(x));
         }
 
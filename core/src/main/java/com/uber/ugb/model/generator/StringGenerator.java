@@ -31,12 +31,13 @@ public class StringGenerator extends Generator<String> {
     }
 
     @Override
-    protected String genValue() {
-        int lengh = maxLength - minLength > 0 ? random.nextInt(maxLength - minLength) + minLength : minLength;
+    protected String genValue(long stream) {
+        int lengh = maxLength - minLength > 0
+            ? CounterBasedRandom.nextInt(stream, 0, maxLength - minLength) + minLength : minLength;
 
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(lengh);
         for (int i = 0; i < lengh; i++) {
-            int x = random.nextInt(text.length());
+            int x = CounterBasedRandom.nextInt(stream, i + 1, text.length());
             sb.append(text.charAt(x));
         }
 
@@ -29,8 +29,8 @@ public class UniformLongGenerator extends Generator<Long> {
     }
 
     @Override
-    protected Long genValue() {
-        return Math.abs(random.nextLong()) % this.range + lowerBound;
+    protected Long genValue(long stream) {
+        return CounterBasedRandom.nextNonNegativeLong(stream, 0) % this.range + lowerBound;
     }
 
 }
@@ -34,8 +34,8 @@ public class WeightedValueslGenerator extends Generator<String> {
     }
 
     @Override
-    protected String genValue() {
-        int x = random.nextInt(this.totalWeights);
+    protected String genValue(long stream) {
+        int x = CounterBasedRandom.nextInt(stream, 0, this.totalWeights);
 
         for (int i = 0; i < valueWeights.length; i++) {
             if (x < valueWeights[i].weight) {
@@ -29,7 +29,7 @@ public class YearGenerator extends Generator<Long> {
     }
 
     @Override
-    protected Long genValue() {
-        return Math.abs(random.nextLong()) / range + min;
+    protected Long genValue(long stream) {
+        return CounterBasedRandom.nextNonNegativeLong(stream, 0) % range + min;
     }
 }
@@ -18,29 +18,409 @@
 
 package com.uber.ugb.queries;
 
-public class Filter {
-    public final String field;
-    public final Operator operator;
-    public final String value;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
-    public Filter(String field, Operator operator, String value) {
-        this.field = field;
-        this.operator = operator;
-        this.value = value;
+/**
+ * Filter is the compiled form of a step filter, such as
+ * <pre>
+ *   round >= 2 AND (status IN ('completed', 'canceled') OR amount > 10.5)
+ *   requestedAt < timestamp '2018-06-01T00:00:00Z'
+ * </pre>
+ * The literals are typed once, when the filter is compiled: integers compare as longs, decimals as doubles,
+ * quoted text as strings, true and false as booleans, and timestamps as epoch milliseconds. Property values are
+ * compared as the type of the literal, numbers stored as strings included. A comparison with a missing or
+ * incomparable value is false, and NOT negates it like any other result.
+ */
+public abstract class Filter {
+
+    /**
+     * @param text the filter of a query step, see {@link FilterParser} for the grammar
+     * @throws IllegalArgumentException if the text is not a valid filter
+     */
+    public static Filter compile(String text) {
+        return new FilterParser(text).parse();
     }
 
-    public Object getValueObject() {
-        Object valueObject = null;
-        // support either single quoted string or integers
-        if (this.value.startsWith("'") && this.value.endsWith("'")) {
-            valueObject = this.value.substring(1, this.value.length() - 1);
-        } else {
-            valueObject = Integer.parseInt(this.value);
-        }
-        return valueObject;
+    public abstract boolean matches(PropertyReader properties);
+
+    public boolean matches(Properties properties) {
+        return properties != null && matches(PropertyReader.of(properties));
+    }
+
+    /**
+     * @return the fields the filter reads, in the order they appear
+     */
+    public Set<String> getFields() {
+        Set<String> fields = new LinkedHashSet<>();
+        collectFields(fields);
+        return fields;
+    }
+
+    abstract void collectFields(Set<String> fields);
+
+    /**
+     * @return the filters that all have to match for this filter to match, the filter itself if it is no AND
+     */
+    public List<Filter> getConjuncts() {
+        return Collections.singletonList(this);
     }
 
     public enum Operator {
-        GreaterThan, Equal, LessThan
+        Equal, NotEqual, LessThan, LessOrEqual, GreaterThan, GreaterOrEqual;
+
+        /**
+         * @param order the sign of the property value compared to the literal
+         */
+        boolean test(int order) {
+            switch (this) {
+                case Equal:
+                    return order == 0;
+                case NotEqual:
+                    return order != 0;
+                case LessThan:
+                    return order < 0;
+                case LessOrEqual:
+                    return order <= 0;
+                case GreaterThan:
+                    return order > 0;
+                case GreaterOrEqual:
+                    return order >= 0;
+            }
+            return false;
+        }
+    }
+
+    public static class And extends Filter {
+        final Filter[] operands;
+
+        And(Filter... operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public boolean matches(PropertyReader properties) {
+            for (Filter operand : operands) {
+                if (!operand.matches(properties)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            for (Filter operand : operands) {
+                operand.collectFields(fields);
+            }
+        }
+
+        @Override
+        public List<Filter> getConjuncts() {
+            List<Filter> conjuncts = new ArrayList<>();
+            for (Filter operand : operands) {
+                conjuncts.addAll(operand.getConjuncts());
+            }
+            return conjuncts;
+        }
+
+        @Override
+        public String toString() {
+            return join(" AND ", operands);
+        }
+    }
+
+    public static class Or extends Filter {
+        final Filter[] operands;
+
+        Or(Filter... operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public boolean matches(PropertyReader properties) {
+            for (Filter operand : operands) {
+                if (operand.matches(properties)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            for (Filter operand : operands) {
+                operand.collectFields(fields);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(" OR ", operands);
+        }
+    }
+
+    public static class Not extends Filter {
+        final Filter operand;
+
+        Not(Filter operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean matches(PropertyReader properties) {
+            return !operand.matches(properties);
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            operand.collectFields(fields);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT (" + operand + ")";
+        }
+    }
+
+    public static class Comparison extends Filter {
+        public final String field;
+        public final Operator operator;
+        public final Literal literal;
+
+        Comparison(String field, Operator operator, Literal literal) {
+            this.field = field;
+            this.operator = operator;
+            this.literal = literal;
+        }
+
+        @Override
+        public boolean matches(PropertyReader properties) {
+            int order = literal.compare(properties.get(field));
+            return order != Literal.INCOMPARABLE && operator.test(order);
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            fields.add(field);
+        }
+
+        @Override
+        public String toString() {
+            return field + " " + operator + " " + literal;
+        }
+    }
+
+    public static class In extends Filter {
+        public final String field;
+        public final Literal[] literals;
+
+        In(String field, Literal[] literals) {
+            this.field = field;
+            this.literals = literals;
+        }
+
+        @Override
+        public boolean matches(PropertyReader properties) {
+            Object value = properties.get(field);
+            if (value == null) {
+                return false;
+            }
+            for (Literal literal : literals) {
+                if (literal.compare(value) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void collectFields(Set<String> fields) {
+            fields.add(field);
+        }
+
+        @Override
+        public String toString() {
+            return field + " IN " + Arrays.toString(literals);
+        }
     }
+
+    /**
+     * Literal is a typed constant of a filter. Its value is converted once, so comparing it to a property value
+     * only converts the property value, and only if it is not stored as the type of the literal already.
+     */
+    public static final class Literal {
+        static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+        public enum Type {
+            LONG, DOUBLE, STRING, BOOLEAN, TIMESTAMP
+        }
+
+        public final Type type;
+        final long longValue;
+        final double doubleValue;
+        final String stringValue;
+
+        private Literal(Type type, long longValue, double doubleValue, String stringValue) {
+            this.type = type;
+            this.longValue = longValue;
+            this.doubleValue = doubleValue;
+            this.stringValue = stringValue;
+        }
+
+        public static Literal ofLong(long value) {
+            return new Literal(Type.LONG, value, value, null);
+        }
+
+        public static Literal ofDouble(double value) {
+            return new Literal(Type.DOUBLE, (long) value, value, null);
+        }
+
+        public static Literal ofString(String value) {
+            return new Literal(Type.STRING, 0, 0, value);
+        }
+
+        public static Literal ofBoolean(boolean value) {
+            return new Literal(Type.BOOLEAN, value ? 1 : 0, value ? 1 : 0, null);
+        }
+
+        public static Literal ofTimestamp(long epochMillis) {
+            return new Literal(Type.TIMESTAMP, epochMillis, epochMillis, null);
+        }
+
+        /**
+         * @return the value as a Long, Double, String or Boolean, timestamps as epoch milliseconds
+         */
+        public Object getValue() {
+            switch (type) {
+                case LONG:
+                case TIMESTAMP:
+                    return longValue;
+                case DOUBLE:
+                    return doubleValue;
+                case STRING:
+                    return stringValue;
+                case BOOLEAN:
+                    return longValue == 1;
+            }
+            return null;
+        }
+
+        /**
+         * @return the sign of the value compared to this literal, or INCOMPARABLE if the value is missing or
+         * cannot be read as the type of this literal
+         */
+        int compare(Object value) {
+            if (value == null) {
+                return INCOMPARABLE;
+            }
+            switch (type) {
+                case LONG:
+                    if (value instanceof Long || value instanceof Integer
+                        || value instanceof Short || value instanceof Byte) {
+                        return Long.compare(((Number) value).longValue(), longValue);
+                    }
+                    if (value instanceof Number) {
+                        return Integer.signum(Double.compare(((Number) value).doubleValue(), doubleValue));
+                    }
+                    if (value instanceof String) {
+                        return compareNumberText((String) value);
+                    }
+                    return INCOMPARABLE;
+                case DOUBLE:
+                    if (value instanceof Number) {
+                        return Integer.signum(Double.compare(((Number) value).doubleValue(), doubleValue));
+                    }
+                    if (value instanceof String) {
+                        return compareNumberText((String) value);
+                    }
+                    return INCOMPARABLE;
+                case STRING:
+                    return Integer.signum(value.toString().compareTo(stringValue));
+                case BOOLEAN:
+                    if (value instanceof Boolean) {
+                        return Long.compare((Boolean) value ? 1 : 0, longValue);
+                    }
+                    if ("true".equalsIgnoreCase(value.toString()) || "false".equalsIgnoreCase(value.toString())) {
+                        return Long.compare(Boolean.parseBoolean(value.toString()) ? 1 : 0, longValue);
+                    }
+                    return INCOMPARABLE;
+                case TIMESTAMP:
+                    Long epochMillis = toEpochMillis(value);
+                    return epochMillis == null ? INCOMPARABLE : Long.compare(epochMillis, longValue);
+            }
+            return INCOMPARABLE;
+        }
+
+        private int compareNumberText(String text) {
+            try {
+                if (type == Type.LONG) {
+                    return Long.compare(Long.parseLong(text), longValue);
+                }
+            } catch (NumberFormatException e) {
+                // a decimal, compared as a double below
+            }
+            try {
+                return Integer.signum(Double.compare(Double.parseDouble(text), doubleValue));
+            } catch (NumberFormatException e) {
+                return INCOMPARABLE;
+            }
+        }
+
+        private static Long toEpochMillis(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            if (value instanceof Date) {
+                return ((Date) value).getTime();
+            }
+            if (value instanceof Instant) {
+                return ((Instant) value).toEpochMilli();
+            }
+            if (value instanceof String) {
+                try {
+                    return FilterParser.parseTimestamp((String) value);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case LONG:
+                    return Long.toString(longValue);
+                case DOUBLE:
+                    return Double.toString(doubleValue);
+                case STRING:
+                    return "'" + stringValue.replace("'", "''") + "'";
+                case BOOLEAN:
+                    return longValue == 1 ? "true" : "false";
+                case TIMESTAMP:
+                    return "timestamp '" + Instant.ofEpochMilli(longValue) + "'";
+            }
+            return super.toString();
+        }
+    }
+
+    private static String join(String separator, Filter[] operands) {
+        StringBuilder sb = new StringBuilder();
+        for (Filter operand : operands) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append('(').append(operand).append(')');
+        }
+        return sb.toString();
+    }
+
 }
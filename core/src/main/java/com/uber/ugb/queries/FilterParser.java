@@ -0,0 +1,292 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.queries;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FilterParser compiles the text of a step filter into a {@link Filter}. The grammar, with case insensitive
+ * keywords, is
+ * <pre>
+ *   filter     := and ( OR and )*
+ *   and        := unary ( AND unary )*
+ *   unary      := NOT unary | '(' filter ')' | comparison
+ *   comparison := field operator literal | field [NOT] IN '(' literal ( ',' literal )* ')'
+ *   operator   := = | == | != | &lt;&gt; | &lt; | &lt;= | &gt; | &gt;=
+ *   literal    := integer | decimal | 'text' | "text" | true | false | timestamp 'iso instant or date'
+ * </pre>
+ */
+class FilterParser {
+
+    private final String text;
+    private int pos;
+
+    FilterParser(String text) {
+        this.text = text;
+    }
+
+    Filter parse() {
+        Filter filter = parseOr();
+        skipSpaces();
+        if (pos < text.length()) {
+            throw error("unexpected '" + text.charAt(pos) + "'");
+        }
+        return filter;
+    }
+
+    /**
+     * @return the epoch milliseconds of an ISO instant, a local date time or a date, the last two in UTC
+     */
+    static long parseTimestamp(String value) {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // not an instant
+        }
+        try {
+            return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // not a local date time
+        }
+        try {
+            return LocalDate.parse(value).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("bad timestamp '" + value + "'", e);
+        }
+    }
+
+    private Filter parseOr() {
+        List<Filter> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while (acceptKeyword("OR")) {
+            operands.add(parseAnd());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Filter.Or(operands.toArray(new Filter[0]));
+    }
+
+    private Filter parseAnd() {
+        List<Filter> operands = new ArrayList<>();
+        operands.add(parseUnary());
+        while (acceptKeyword("AND")) {
+            operands.add(parseUnary());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Filter.And(operands.toArray(new Filter[0]));
+    }
+
+    private Filter parseUnary() {
+        if (acceptKeyword("NOT")) {
+            return new Filter.Not(parseUnary());
+        }
+        if (accept("(")) {
+            Filter filter = parseOr();
+            expect(")");
+            return filter;
+        }
+        return parseComparison();
+    }
+
+    private Filter parseComparison() {
+        String field = parseIdentifier();
+        if (acceptKeyword("NOT")) {
+            expectKeyword("IN");
+            return new Filter.Not(parseIn(field));
+        }
+        if (acceptKeyword("IN")) {
+            return parseIn(field);
+        }
+        Filter.Operator operator;
+        if (accept("==") || accept("=")) {
+            operator = Filter.Operator.Equal;
+        } else if (accept("!=") || accept("<>")) {
+            operator = Filter.Operator.NotEqual;
+        } else if (accept("<=")) {
+            operator = Filter.Operator.LessOrEqual;
+        } else if (accept(">=")) {
+            operator = Filter.Operator.GreaterOrEqual;
+        } else if (accept("<")) {
+            operator = Filter.Operator.LessThan;
+        } else if (accept(">")) {
+            operator = Filter.Operator.GreaterThan;
+        } else {
+            throw error("expected an operator after '" + field + "'");
+        }
+        return new Filter.Comparison(field, operator, parseLiteral());
+    }
+
+    private Filter parseIn(String field) {
+        expect("(");
+        List<Filter.Literal> literals = new ArrayList<>();
+        do {
+            literals.add(parseLiteral());
+        } while (accept(","));
+        expect(")");
+        return new Filter.In(field, literals.toArray(new Filter.Literal[0]));
+    }
+
+    private Filter.Literal parseLiteral() {
+        skipSpaces();
+        if (pos >= text.length()) {
+            throw error("expected a literal");
+        }
+        char c = text.charAt(pos);
+        if (c == '\'' || c == '"') {
+            return Filter.Literal.ofString(parseQuoted());
+        }
+        if (c == '-' || c == '+' || c == '.' || Character.isDigit(c)) {
+            return parseNumber();
+        }
+        if (acceptKeyword("TRUE")) {
+            return Filter.Literal.ofBoolean(true);
+        }
+        if (acceptKeyword("FALSE")) {
+            return Filter.Literal.ofBoolean(false);
+        }
+        if (acceptKeyword("TIMESTAMP")) {
+            skipSpaces();
+            int start = pos;
+            String value = parseQuoted();
+            try {
+                return Filter.Literal.ofTimestamp(parseTimestamp(value));
+            } catch (IllegalArgumentException e) {
+                pos = start;
+                throw error(e.getMessage());
+            }
+        }
+        throw error("expected a literal");
+    }
+
+    private Filter.Literal parseNumber() {
+        int start = pos;
+        if (text.charAt(pos) == '-' || text.charAt(pos) == '+') {
+            pos++;
+        }
+        boolean decimal = false;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!Character.isDigit(c)
+                && !((c == '-' || c == '+') && (text.charAt(pos - 1) == 'e' || text.charAt(pos - 1) == 'E'))) {
+                break;
+            }
+            pos++;
+        }
+        String number = text.substring(start, pos);
+        try {
+            return decimal ? Filter.Literal.ofDouble(Double.parseDouble(number))
+                : Filter.Literal.ofLong(Long.parseLong(number));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("bad number '" + number + "'");
+        }
+    }
+
+    private String parseQuoted() {
+        if (pos >= text.length() || (text.charAt(pos) != '\'' && text.charAt(pos) != '"')) {
+            throw error("expected a quoted text");
+        }
+        char quote = text.charAt(pos++);
+        StringBuilder sb = new StringBuilder();
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == quote) {
+                // a doubled quote stands for the quote itself
+                if (pos < text.length() && text.charAt(pos) == quote) {
+                    sb.append(quote);
+                    pos++;
+                    continue;
+                }
+                return sb.toString();
+            }
+            sb.append(c);
+        }
+        throw error("unterminated text");
+    }
+
+    private String parseIdentifier() {
+        skipSpaces();
+        int start = pos;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '.' && c != '$') {
+                break;
+            }
+            pos++;
+        }
+        if (start == pos || Character.isDigit(text.charAt(start))) {
+            pos = start;
+            throw error("expected a field");
+        }
+        return text.substring(start, pos);
+    }
+
+    private boolean accept(String token) {
+        skipSpaces();
+        if (text.startsWith(token, pos)) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("expected '" + token + "'");
+        }
+    }
+
+    /**
+     * Accepts a keyword only as a whole word, so that a field such as "order" is not read as OR.
+     */
+    private boolean acceptKeyword(String keyword) {
+        skipSpaces();
+        int end = pos + keyword.length();
+        if (end > text.length() || !text.regionMatches(true, pos, keyword, 0, keyword.length())) {
+            return false;
+        }
+        if (end < text.length() && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+            return false;
+        }
+        pos = end;
+        return true;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error("expected " + keyword);
+        }
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("bad filter \"" + text + "\" at " + pos + ": " + message);
+    }
+
+}
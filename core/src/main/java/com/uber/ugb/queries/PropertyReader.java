@@ -0,0 +1,38 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.queries;
+
+import java.util.Properties;
+
+/**
+ * PropertyReader gives a compiled filter the values of the fields it compares, so that a filter can be evaluated
+ * against whatever holds the properties, a Properties object or their serialized bytes.
+ */
+public interface PropertyReader {
+
+    /**
+     * @return the value of the field, or null if there is none
+     */
+    Object get(String field);
+
+    static PropertyReader of(Properties properties) {
+        return properties::get;
+    }
+
+}
@@ -50,27 +50,6 @@ public class QueriesSpec {
             @JsonProperty("vertex")
             public Vertex vertex;
 
-            public static Filter parseFilter(String filter) {
-                if (Strings.isNullOrEmpty(filter)) {
-                    return null;
-                }
-                String[] parts = filter.split("\\s+");
-                if (parts.length != 3) {
-                    return null;
-                }
-
-                if (parts[1].equals("=")) {
-                    return new Filter(parts[0], Filter.Operator.Equal, parts[2]);
-                }
-                if (parts[1].equals(">")) {
-                    return new Filter(parts[0], Filter.Operator.GreaterThan, parts[2]);
-                }
-                if (parts[1].equals("<")) {
-                    return new Filter(parts[0], Filter.Operator.LessThan, parts[2]);
-                }
-                return null;
-            }
-
             public static class Edge {
                 @JsonProperty("label")
                 public String label;
@@ -85,43 +64,31 @@ public class QueriesSpec {
                 @JsonProperty("direction")
                 public String direction;
 
-                private Filter filterObect;
+                private transient volatile Filter compiledFilter;
 
+                /**
+                 * @return the filter compiled on first use, or null if the step has none
+                 */
                 public Filter getFilter() {
-                    if (filterObect == null) {
-                        filterObect = parseFilter(filter);
+                    if (compiledFilter == null && !Strings.isNullOrEmpty(filter)) {
+                        compiledFilter = Filter.compile(filter);
                     }
-                    return filterObect;
+                    return compiledFilter;
                 }
 
                 public boolean isBackward() {
                     return "in".equals(direction);
                 }
 
-                public boolean matchEdgeFilter(Properties properties) {
-                    if (filter == null) {
-                        return true;
-                    }
-
-                    if (properties == null) {
-                        return false;
-                    }
+                /**
+                 * @return the limit a store can apply while reading, 0 if the filter has to see every edge first
+                 */
+                public int storageLimit() {
+                    return Strings.isNullOrEmpty(filter) ? limit : 0;
+                }
 
-                    if (filterObect == null) {
-                        filterObect = parseFilter(filter);
-                    }
-                    Object value = filterObect.getValueObject();
-
-                    String propertyValue = properties.getProperty(filterObect.field);
-                    switch (filterObect.operator) {
-                        case Equal:
-                            return value.equals(propertyValue);
-                        case GreaterThan:
-                            return (Integer) value - Integer.parseInt(propertyValue) > 0;
-                        case LessThan:
-                            return (Integer) value - Integer.parseInt(propertyValue) < 0;
-                    }
-                    return false;
+                public boolean matchEdgeFilter(Properties properties) {
+                    return getFilter() == null || getFilter().matches(properties);
                 }
 
             }
@@ -129,6 +96,24 @@ public class QueriesSpec {
             public static class Vertex {
                 @JsonProperty("select")
                 public String select;
+                @JsonProperty("filter")
+                public String filter;
+
+                private transient volatile Filter compiledFilter;
+
+                /**
+                 * @return the filter compiled on first use, or null if the step has none
+                 */
+                public Filter getFilter() {
+                    if (compiledFilter == null && !Strings.isNullOrEmpty(filter)) {
+                        compiledFilter = Filter.compile(filter);
+                    }
+                    return compiledFilter;
+                }
+
+                public boolean matchVertexFilter(Properties properties) {
+                    return getFilter() == null || getFilter().matches(properties);
+                }
             }
 
         }
@@ -0,0 +1,43 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * BlockingAdapter turns a blocking store call into a future, for stores without an asynchronous client.
+ * The call runs on the calling thread, and its failure completes the future exceptionally.
+ */
+public final class BlockingAdapter {
+
+    private BlockingAdapter() {
+    }
+
+    public static <T> CompletableFuture<T> call(Supplier<T> blockingCall) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(blockingCall.get());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.uber.ugb.measurement.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A size bounded read cache in front of a key value store, so that reads of hot vertices and adjacency
+ * lists can be benchmarked the way a cache fronted graph service serves them.
+ * Entries are weighted by their bytes, evicted least recently used within each segment and expire after
+ * a ttl. Puts either write through to the cache or invalidate the key; appends always invalidate.
+ */
+public class CachingKeyValueStore implements KeyValueStore {
+
+    // bytes the cache may hold, 0 (default) for no cache
+    public static final String CACHE_MAX_BYTES_PROPERTY = "cache.max.bytes";
+    public static final String CACHE_TTL_SECONDS_PROPERTY = "cache.ttl.seconds";
+    public static final String CACHE_WRITE_POLICY_PROPERTY = "cache.write.policy";
+    public static final String CACHE_CONCURRENCY_PROPERTY = "cache.concurrency";
+    public static final String WRITE_THROUGH = "through";
+    public static final String INVALIDATE_ON_WRITE = "invalidate";
+
+    // bytes of the cache entry, key and arrays around the raw bytes, roughly
+    static final int ENTRY_OVERHEAD = 64;
+    private static final byte[] ABSENT = new byte[0];
+
+    protected final KeyValueStore store;
+    private final Supplier<Metrics> metrics;
+    private final boolean writeThrough;
+    private final Cache<CacheKey, Object> cache;
+
+    public CachingKeyValueStore(KeyValueStore store, Properties properties, Supplier<Metrics> metrics) {
+        this.store = store;
+        this.metrics = metrics;
+        String writePolicy = properties.getProperty(CACHE_WRITE_POLICY_PROPERTY, INVALIDATE_ON_WRITE);
+        if (!WRITE_THROUGH.equals(writePolicy) && !INVALIDATE_ON_WRITE.equals(writePolicy)) {
+            throw new IllegalArgumentException("unknown " + CACHE_WRITE_POLICY_PROPERTY + ": " + writePolicy);
+        }
+        this.writeThrough = WRITE_THROUGH.equals(writePolicy);
+        CacheBuilder<CacheKey, Object> builder = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes(properties))
+            .weigher((CacheKey key, Object value) -> weigh(key, value))
+            .concurrencyLevel(Integer.parseInt(properties.getProperty(CACHE_CONCURRENCY_PROPERTY, "16")))
+            .removalListener(notification -> {
+                if (notification.getCause() != RemovalCause.REPLACED
+                    && notification.getCause() != RemovalCause.EXPLICIT) {
+                    metrics.get().cacheEvictionCount.incrementAndGet();
+                }
+                metrics.get().cacheBytes.addAndGet(-weigh(notification.getKey(), notification.getValue()));
+            });
+        long ttlSeconds = Long.parseLong(properties.getProperty(CACHE_TTL_SECONDS_PROPERTY, "0"));
+        if (ttlSeconds > 0) {
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+        }
+        this.cache = builder.build();
+    }
+
+    public static long maxBytes(Properties properties) {
+        return Long.parseLong(properties.getProperty(CACHE_MAX_BYTES_PROPERTY, "0"));
+    }
+
+    /**
+     * @return the store behind a cache if the properties size one, otherwise the store itself
+     */
+    public static KeyValueStore wrap(KeyValueStore store, Properties properties, Supplier<Metrics> metrics) {
+        if (maxBytes(properties) <= 0 || store instanceof CachingKeyValueStore) {
+            return store;
+        }
+        return new CachingKeyValueStore(store, properties, metrics);
+    }
+
+    public static PrefixKeyValueStore wrap(PrefixKeyValueStore store, Properties properties,
+                                           Supplier<Metrics> metrics) {
+        if (maxBytes(properties) <= 0 || store instanceof CachingKeyValueStore) {
+            return store;
+        }
+        return new CachingPrefixKeyValueStore(store, properties, metrics);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        CacheKey cacheKey = CacheKey.of(key);
+        Object cached = lookup(cacheKey);
+        if (cached != null) {
+            return present((byte[]) cached);
+        }
+        byte[] value = store.get(key);
+        cache(cacheKey, value == null ? ABSENT : value);
+        return value;
+    }
+
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        List<Integer> missed = new ArrayList<>();
+        List<byte[]> missedKeys = collectHits(keys, values, missed);
+        if (!missedKeys.isEmpty()) {
+            fillMisses(keys, values, missed, store.multiGet(missedKeys));
+        }
+        return values;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(byte[] key) {
+        CacheKey cacheKey = CacheKey.of(key);
+        Object cached = lookup(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(present((byte[]) cached));
+        }
+        return store.getAsync(key).thenApply(value -> {
+            cache(cacheKey, value == null ? ABSENT : value);
+            return value;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> multiGetAsync(List<byte[]> keys) {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        List<Integer> missed = new ArrayList<>();
+        List<byte[]> missedKeys = collectHits(keys, values, missed);
+        if (missedKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(values);
+        }
+        return store.multiGetAsync(missedKeys).thenApply(missedValues -> {
+            fillMisses(keys, values, missed, missedValues);
+            return values;
+        });
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        store.put(key, value);
+        written(key, value);
+    }
+
+    @Override
+    public void multiPut(List<byte[]> keys, List<byte[]> values) {
+        store.multiPut(keys, values);
+        for (int i = 0; i < keys.size(); i++) {
+            written(keys.get(i), values.get(i));
+        }
+    }
+
+    @Override
+    public void append(byte[] key, byte[] value) {
+        store.append(key, value);
+        invalidate(CacheKey.of(key));
+    }
+
+    /**
+     * @return the bytes held by the cache, as weighed for eviction
+     */
+    public long weightedSize() {
+        long bytes = 0;
+        for (Map.Entry<CacheKey, Object> entry : cache.asMap().entrySet()) {
+            bytes += weigh(entry.getKey(), entry.getValue());
+        }
+        return bytes;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    protected Object lookup(CacheKey key) {
+        Object cached = cache.getIfPresent(key);
+        record(cached != null);
+        return cached;
+    }
+
+    protected Object peek(CacheKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    protected void record(boolean hit) {
+        if (hit) {
+            metrics.get().cacheHitCount.incrementAndGet();
+        } else {
+            metrics.get().cacheMissCount.incrementAndGet();
+        }
+    }
+
+    protected void cache(CacheKey key, Object value) {
+        cache.put(key, value);
+        metrics.get().cacheBytes.addAndGet(weigh(key, value));
+    }
+
+    protected void invalidate(CacheKey key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * @return the bytes of a cached value, rows of a scan count the bytes of their suffixes and values
+     */
+    protected int weigh(CacheKey key, Object value) {
+        long bytes = ENTRY_OVERHEAD + key.bytes.length;
+        if (value instanceof byte[]) {
+            bytes += ((byte[]) value).length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private void written(byte[] key, byte[] value) {
+        CacheKey cacheKey = CacheKey.of(key);
+        if (writeThrough && value != null) {
+            cache(cacheKey, value);
+        } else {
+            invalidate(cacheKey);
+        }
+    }
+
+    private List<byte[]> collectHits(List<byte[]> keys, List<byte[]> values, List<Integer> missed) {
+        List<byte[]> missedKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Object cached = lookup(CacheKey.of(keys.get(i)));
+            if (cached == null) {
+                missed.add(i);
+                missedKeys.add(keys.get(i));
+                values.add(null);
+            } else {
+                values.add(present((byte[]) cached));
+            }
+        }
+        return missedKeys;
+    }
+
+    private void fillMisses(List<byte[]> keys, List<byte[]> values, List<Integer> missed, List<byte[]> missedValues) {
+        for (int i = 0; i < missed.size(); i++) {
+            int index = missed.get(i);
+            byte[] value = missedValues.get(i);
+            values.set(index, value);
+            cache(CacheKey.of(keys.get(index)), value == null ? ABSENT : value);
+        }
+    }
+
+    private static byte[] present(byte[] cached) {
+        return cached == ABSENT ? null : cached;
+    }
+
+    /**
+     * Keys of point reads and of prefix scans, kept apart so that a prefix never shadows a row of the same bytes.
+     */
+    protected static final class CacheKey {
+        final boolean scan;
+        final byte[] bytes;
+        private final int hash;
+
+        private CacheKey(boolean scan, byte[] bytes) {
+            this.scan = scan;
+            this.bytes = bytes;
+            this.hash = 31 * Arrays.hashCode(bytes) + (scan ? 1 : 0);
+        }
+
+        static CacheKey of(byte[] key) {
+            return new CacheKey(false, key.clone());
+        }
+
+        static CacheKey ofPrefix(byte[] prefix) {
+            return new CacheKey(true, prefix.clone());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return scan == that.scan && Arrays.equals(bytes, that.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
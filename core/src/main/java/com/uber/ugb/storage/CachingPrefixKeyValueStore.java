@@ -0,0 +1,224 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.storage;
+
+import com.uber.ugb.measurement.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Caches the rows of prefix scans, i.e. the adjacency of a vertex, on top of the point reads.
+ * A scan is served from the cache if the cached scan read the whole prefix or at least as many rows as asked.
+ * Writes to a prefix always invalidate its scan, as the new row would have to be merged in key order.
+ * Scans with a column scan go to the store, since their rows depend on the filter and projection.
+ */
+public class CachingPrefixKeyValueStore extends CachingKeyValueStore implements PrefixKeyValueStore {
+
+    // bytes of a row and its arrays around the raw bytes, roughly
+    static final int ROW_OVERHEAD = 48;
+
+    private final PrefixKeyValueStore prefixStore;
+
+    public CachingPrefixKeyValueStore(PrefixKeyValueStore store, Properties properties, Supplier<Metrics> metrics) {
+        super(store, properties, metrics);
+        this.prefixStore = store;
+    }
+
+    @Override
+    public List<PrefixQueriedRow> scan(byte[] prefix, int limit) {
+        CacheKey cacheKey = CacheKey.ofPrefix(prefix);
+        List<PrefixQueriedRow> cached = cachedRows(cacheKey, limit);
+        if (cached != null) {
+            return cached;
+        }
+        List<PrefixQueriedRow> rows = prefixStore.scan(prefix, limit);
+        cache(cacheKey, new ScannedRows(limit, rows));
+        return rows;
+    }
+
+    @Override
+    public List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit) {
+        List<List<PrefixQueriedRow>> rows = new ArrayList<>(prefixes.size());
+        List<Integer> missed = new ArrayList<>();
+        List<byte[]> missedPrefixes = collectHits(prefixes, limit, rows, missed);
+        if (!missedPrefixes.isEmpty()) {
+            fillMisses(prefixes, limit, rows, missed, prefixStore.multiScan(missedPrefixes, limit));
+        }
+        return rows;
+    }
+
+    @Override
+    public CompletableFuture<List<PrefixQueriedRow>> scanAsync(byte[] prefix, int limit) {
+        CacheKey cacheKey = CacheKey.ofPrefix(prefix);
+        List<PrefixQueriedRow> cached = cachedRows(cacheKey, limit);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return prefixStore.scanAsync(prefix, limit).thenApply(rows -> {
+            cache(cacheKey, new ScannedRows(limit, rows));
+            return rows;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> prefixes, int limit) {
+        List<List<PrefixQueriedRow>> rows = new ArrayList<>(prefixes.size());
+        List<Integer> missed = new ArrayList<>();
+        List<byte[]> missedPrefixes = collectHits(prefixes, limit, rows, missed);
+        if (missedPrefixes.isEmpty()) {
+            return CompletableFuture.completedFuture(rows);
+        }
+        return prefixStore.multiScanAsync(missedPrefixes, limit).thenApply(missedRows -> {
+            fillMisses(prefixes, limit, rows, missed, missedRows);
+            return rows;
+        });
+    }
+
+    @Override
+    public List<PrefixQueriedRow> scan(byte[] prefix, int limit, ColumnScan columnScan) {
+        return prefixStore.scan(prefix, limit, columnScan);
+    }
+
+    @Override
+    public List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit, ColumnScan columnScan) {
+        return prefixStore.multiScan(prefixes, limit, columnScan);
+    }
+
+    @Override
+    public CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> prefixes, int limit,
+                                                                         ColumnScan columnScan) {
+        return prefixStore.multiScanAsync(prefixes, limit, columnScan);
+    }
+
+    @Override
+    public void put(byte[] keyPrefix, byte[] keySuffix, byte[] value) {
+        prefixStore.put(keyPrefix, keySuffix, value);
+        rowWritten(keyPrefix, keySuffix);
+    }
+
+    @Override
+    public void multiPut(List<byte[]> keyPrefixes, List<byte[]> keySuffixes, List<byte[]> values) {
+        prefixStore.multiPut(keyPrefixes, keySuffixes, values);
+        for (int i = 0; i < keyPrefixes.size(); i++) {
+            rowWritten(keyPrefixes.get(i), keySuffixes.get(i));
+        }
+    }
+
+    @Override
+    public void putColumns(byte[] keyPrefix, byte[] keySuffix, Map<String, byte[]> columns) {
+        prefixStore.putColumns(keyPrefix, keySuffix, columns);
+        rowWritten(keyPrefix, keySuffix);
+    }
+
+    @Override
+    public void multiPutColumns(List<byte[]> keyPrefixes, List<byte[]> keySuffixes,
+                                List<Map<String, byte[]>> columns) {
+        prefixStore.multiPutColumns(keyPrefixes, keySuffixes, columns);
+        for (int i = 0; i < keyPrefixes.size(); i++) {
+            rowWritten(keyPrefixes.get(i), keySuffixes.get(i));
+        }
+    }
+
+    @Override
+    protected int weigh(CacheKey key, Object value) {
+        if (!(value instanceof ScannedRows)) {
+            return super.weigh(key, value);
+        }
+        long bytes = ENTRY_OVERHEAD + key.bytes.length;
+        for (PrefixQueriedRow row : ((ScannedRows) value).rows) {
+            bytes += ROW_OVERHEAD + row.keySuffix.length;
+            if (row.value != null) {
+                bytes += row.value.length;
+            }
+            if (row.columns != null) {
+                for (Map.Entry<String, byte[]> column : row.columns.entrySet()) {
+                    bytes += column.getKey().length() + column.getValue().length;
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private List<PrefixQueriedRow> cachedRows(CacheKey cacheKey, int limit) {
+        ScannedRows cached = (ScannedRows) peek(cacheKey);
+        List<PrefixQueriedRow> rows = cached == null ? null : cached.serve(limit);
+        record(rows != null);
+        return rows;
+    }
+
+    private List<byte[]> collectHits(List<byte[]> prefixes, int limit, List<List<PrefixQueriedRow>> rows,
+                                     List<Integer> missed) {
+        List<byte[]> missedPrefixes = new ArrayList<>();
+        for (int i = 0; i < prefixes.size(); i++) {
+            List<PrefixQueriedRow> cached = cachedRows(CacheKey.ofPrefix(prefixes.get(i)), limit);
+            if (cached == null) {
+                missed.add(i);
+                missedPrefixes.add(prefixes.get(i));
+            }
+            rows.add(cached);
+        }
+        return missedPrefixes;
+    }
+
+    private void fillMisses(List<byte[]> prefixes, int limit, List<List<PrefixQueriedRow>> rows,
+                            List<Integer> missed, List<List<PrefixQueriedRow>> missedRows) {
+        for (int i = 0; i < missed.size(); i++) {
+            int index = missed.get(i);
+            rows.set(index, missedRows.get(i));
+            cache(CacheKey.ofPrefix(prefixes.get(index)), new ScannedRows(limit, missedRows.get(i)));
+        }
+    }
+
+    private void rowWritten(byte[] keyPrefix, byte[] keySuffix) {
+        invalidate(CacheKey.ofPrefix(keyPrefix));
+        byte[] key = new byte[keyPrefix.length + keySuffix.length];
+        System.arraycopy(keyPrefix, 0, key, 0, keyPrefix.length);
+        System.arraycopy(keySuffix, 0, key, keyPrefix.length, keySuffix.length);
+        invalidate(CacheKey.of(key));
+    }
+
+    /**
+     * The rows of a scan and the limit it was read with.
+     */
+    private static final class ScannedRows {
+        final int limit;
+        final List<PrefixQueriedRow> rows;
+
+        ScannedRows(int limit, List<PrefixQueriedRow> rows) {
+            this.limit = limit;
+            this.rows = new ArrayList<>(rows);
+        }
+
+        /**
+         * @return the rows of a scan with the limit, or null if the cached scan stopped short of it
+         */
+        List<PrefixQueriedRow> serve(int limit) {
+            boolean complete = this.limit <= 0 || rows.size() < this.limit;
+            if (!complete && (limit <= 0 || limit > this.limit)) {
+                return null;
+            }
+            int size = limit <= 0 ? rows.size() : Math.min(limit, rows.size());
+            return new ArrayList<>(rows.subList(0, size));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ColumnScan is the work a prefix scan can do in the store instead of the client: a range of key suffixes,
+ * conditions on column values, and the columns to return.
+ *
+ * Rows written with putColumns keep each column apart, so a store with columns can filter and project them.
+ * Other stores keep the columns packed in the value, and {@link #apply} does the same work on the client.
+ */
+public class ColumnScan {
+
+    /**
+     * The rows were written with putColumns, so rows come back with their columns rather than a value.
+     */
+    public final boolean columnar;
+    /**
+     * The columns to return, null for all of them. It holds the columns of the conditions.
+     */
+    public final Set<String> columns;
+    public final List<Condition> conditions;
+    /**
+     * The first key suffix to return, null to start at the prefix.
+     */
+    public final byte[] keySuffixStart;
+    /**
+     * The key suffix to stop before, null to stop at the end of the prefix.
+     */
+    public final byte[] keySuffixStop;
+
+    public ColumnScan(boolean columnar, Set<String> columns, List<Condition> conditions,
+                      byte[] keySuffixStart, byte[] keySuffixStop) {
+        this.columnar = columnar;
+        this.columns = columns;
+        this.conditions = conditions == null ? Collections.emptyList() : conditions;
+        this.keySuffixStart = keySuffixStart;
+        this.keySuffixStop = keySuffixStop;
+    }
+
+    /**
+     * @return true if the scan may drop rows, so a limit on the rows read is not a limit on the rows returned
+     */
+    public boolean isSelective() {
+        return !conditions.isEmpty() || keySuffixStart != null || keySuffixStop != null;
+    }
+
+    /**
+     * Does the work of the scan on rows read without it: keeps the rows in the key range meeting the conditions,
+     * unpacks their columns and keeps the requested ones.
+     *
+     * @param limit the most rows to return, 0 for all of them
+     */
+    public List<PrefixKeyValueStore.PrefixQueriedRow> apply(List<PrefixKeyValueStore.PrefixQueriedRow> rows,
+                                                            int limit) {
+        List<PrefixKeyValueStore.PrefixQueriedRow> out = new ArrayList<>(rows.size());
+        for (PrefixKeyValueStore.PrefixQueriedRow row : rows) {
+            if (limit > 0 && out.size() >= limit) {
+                break;
+            }
+            if (!inKeyRange(row.keySuffix)) {
+                continue;
+            }
+            if (!columnar) {
+                out.add(row);
+                continue;
+            }
+            Map<String, byte[]> rowColumns = row.columns != null ? row.columns : unpack(row.value);
+            if (!matches(rowColumns)) {
+                continue;
+            }
+            out.add(new PrefixKeyValueStore.PrefixQueriedRow(row.keySuffix, project(rowColumns)));
+        }
+        return out;
+    }
+
+    public boolean inKeyRange(byte[] keySuffix) {
+        return (keySuffixStart == null || compareUnsigned(keySuffix, 0, keySuffix.length,
+            keySuffixStart, 0, keySuffixStart.length) >= 0)
+            && (keySuffixStop == null || compareUnsigned(keySuffix, 0, keySuffix.length,
+            keySuffixStop, 0, keySuffixStop.length) < 0);
+    }
+
+    public boolean matches(Map<String, byte[]> rowColumns) {
+        for (Condition condition : conditions) {
+            if (!condition.test(rowColumns.get(condition.column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, byte[]> project(Map<String, byte[]> rowColumns) {
+        if (columns == null) {
+            return rowColumns;
+        }
+        Map<String, byte[]> projected = new LinkedHashMap<>();
+        for (String column : columns) {
+            byte[] value = rowColumns.get(column);
+            if (value != null) {
+                projected.put(column, value);
+            }
+        }
+        return projected;
+    }
+
+    /**
+     * Packs columns into one value, for stores that keep a single value per row.
+     */
+    public static byte[] pack(Map<String, byte[]> columns) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer lengths = ByteBuffer.allocate(Integer.BYTES);
+        for (Map.Entry<String, byte[]> column : columns.entrySet()) {
+            byte[] name = column.getKey().getBytes(StandardCharsets.UTF_8);
+            lengths.clear();
+            out.write(lengths.putInt(name.length).array(), 0, Integer.BYTES);
+            out.write(name, 0, name.length);
+            lengths.clear();
+            out.write(lengths.putInt(column.getValue().length).array(), 0, Integer.BYTES);
+            out.write(column.getValue(), 0, column.getValue().length);
+        }
+        return out.toByteArray();
+    }
+
+    public static Map<String, byte[]> unpack(byte[] value) {
+        Map<String, byte[]> columns = new LinkedHashMap<>();
+        if (value == null) {
+            return columns;
+        }
+        ByteBuffer in = ByteBuffer.wrap(value);
+        while (in.hasRemaining()) {
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            byte[] columnValue = new byte[in.getInt()];
+            in.get(columnValue);
+            columns.put(new String(name, StandardCharsets.UTF_8), columnValue);
+        }
+        return columns;
+    }
+
+    static int compareUnsigned(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        for (int i = 0; i < Math.min(aLength, bLength); i++) {
+            int c = Integer.compare(a[aOffset + i] & 0xff, b[bOffset + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(aLength, bLength);
+    }
+
+    /**
+     * Condition compares the start of a column value with a value, byte by byte and unsigned, as the
+     * BinaryPrefixComparator of HBase does. A row without the column does not meet the condition.
+     */
+    public static class Condition {
+        public final String column;
+        public final Operator operator;
+        public final byte[] value;
+
+        public Condition(String column, Operator operator, byte[] value) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public boolean test(byte[] columnValue) {
+            if (columnValue == null) {
+                return false;
+            }
+            int order = compareUnsigned(columnValue, 0, Math.min(columnValue.length, value.length),
+                value, 0, value.length);
+            switch (operator) {
+                case Equal:
+                    return order == 0;
+                case LessThan:
+                    return order < 0;
+                case LessOrEqual:
+                    return order <= 0;
+                case GreaterThan:
+                    return order > 0;
+                case GreaterOrEqual:
+                    return order >= 0;
+            }
+            return false;
+        }
+
+        public enum Operator {
+            Equal, LessThan, LessOrEqual, GreaterThan, GreaterOrEqual
+        }
+    }
+
+}
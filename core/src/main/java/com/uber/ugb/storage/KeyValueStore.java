@@ -18,10 +18,63 @@
 
 package com.uber.ugb.storage;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * KeyValueStore is a blocking key value store. The asynchronous methods default to BlockingAdapter;
+ * stores with an asynchronous client override them to read without holding a thread.
+ */
 public interface KeyValueStore {
 
     byte[] get(byte[] key);
 
     void put(byte[] key, byte[] value);
 
+    /**
+     * Gets a batch of keys, in the order of the keys, with null for the missing keys.
+     * Stores override this to read the batch in fewer round trips.
+     */
+    default List<byte[]> multiGet(List<byte[]> keys) {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
+    default CompletableFuture<byte[]> getAsync(byte[] key) {
+        return BlockingAdapter.call(() -> get(key));
+    }
+
+    default CompletableFuture<List<byte[]>> multiGetAsync(List<byte[]> keys) {
+        return BlockingAdapter.call(() -> multiGet(keys));
+    }
+
+    /**
+     * Puts a batch of key values. Stores override this to write the batch in fewer round trips.
+     */
+    default void multiPut(List<byte[]> keys, List<byte[]> values) {
+        for (int i = 0; i < keys.size(); i++) {
+            put(keys.get(i), values.get(i));
+        }
+    }
+
+    /**
+     * Appends the value to the existing value of the key, or puts it if there is none. Stores with a native
+     * append override this; the default reads and rewrites the whole value.
+     */
+    default void append(byte[] key, byte[] value) {
+        byte[] existing = get(key);
+        if (existing == null) {
+            put(key, value);
+            return;
+        }
+        byte[] appended = new byte[existing.length + value.length];
+        System.arraycopy(existing, 0, appended, 0, existing.length);
+        System.arraycopy(value, 0, appended, existing.length, value.length);
+        put(key, appended);
+    }
+
 }
@@ -18,21 +18,102 @@
 
 package com.uber.ugb.storage;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface PrefixKeyValueStore extends KeyValueStore {
 
     List<PrefixQueriedRow> scan(byte[] prefix, int limit);
 
+    /**
+     * Scans a batch of prefixes, returning the rows of each prefix in the order of the prefixes.
+     * Stores override this to scan the batch in fewer round trips.
+     */
+    default List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit) {
+        List<List<PrefixQueriedRow>> rows = new ArrayList<>(prefixes.size());
+        for (byte[] prefix : prefixes) {
+            rows.add(scan(prefix, limit));
+        }
+        return rows;
+    }
+
+    default CompletableFuture<List<PrefixQueriedRow>> scanAsync(byte[] prefix, int limit) {
+        return BlockingAdapter.call(() -> scan(prefix, limit));
+    }
+
+    default CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> prefixes, int limit) {
+        return BlockingAdapter.call(() -> multiScan(prefixes, limit));
+    }
+
+    /**
+     * Scans a prefix, doing the work of the column scan in the store where it can.
+     * Stores with columns or key ranges override this; the others scan the prefix and apply the scan after.
+     */
+    default List<PrefixQueriedRow> scan(byte[] prefix, int limit, ColumnScan columnScan) {
+        return columnScan.apply(scan(prefix, columnScan.isSelective() ? 0 : limit), limit);
+    }
+
+    default List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit, ColumnScan columnScan) {
+        List<List<PrefixQueriedRow>> rows = new ArrayList<>(prefixes.size());
+        for (byte[] prefix : prefixes) {
+            rows.add(scan(prefix, limit, columnScan));
+        }
+        return rows;
+    }
+
+    default CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> prefixes, int limit,
+                                                                         ColumnScan columnScan) {
+        return BlockingAdapter.call(() -> multiScan(prefixes, limit, columnScan));
+    }
+
     void put(byte[] keyPrefix, byte[] keySuffix, byte[] value);
 
+    /**
+     * Puts a row of columns, which a ColumnScan can filter and project. Stores without columns keep them
+     * packed in the value.
+     */
+    default void putColumns(byte[] keyPrefix, byte[] keySuffix, Map<String, byte[]> columns) {
+        put(keyPrefix, keySuffix, ColumnScan.pack(columns));
+    }
+
+    default void multiPutColumns(List<byte[]> keyPrefixes, List<byte[]> keySuffixes,
+                                 List<Map<String, byte[]>> columns) {
+        List<byte[]> values = new ArrayList<>(columns.size());
+        for (Map<String, byte[]> rowColumns : columns) {
+            values.add(ColumnScan.pack(rowColumns));
+        }
+        multiPut(keyPrefixes, keySuffixes, values);
+    }
+
+    /**
+     * Puts a batch of prefixed key values. Stores override this to write the batch in fewer round trips.
+     */
+    default void multiPut(List<byte[]> keyPrefixes, List<byte[]> keySuffixes, List<byte[]> values) {
+        for (int i = 0; i < keyPrefixes.size(); i++) {
+            put(keyPrefixes.get(i), keySuffixes.get(i), values.get(i));
+        }
+    }
+
     class PrefixQueriedRow {
         public final byte[] keySuffix;
         public final byte[] value;
+        /**
+         * The columns of a row written with putColumns, if the store returns them apart, otherwise null.
+         */
+        public final Map<String, byte[]> columns;
 
         public PrefixQueriedRow(byte[] keySuffix, byte[] value) {
             this.keySuffix = keySuffix;
             this.value = value;
+            this.columns = null;
+        }
+
+        public PrefixQueriedRow(byte[] keySuffix, Map<String, byte[]> columns) {
+            this.keySuffix = keySuffix;
+            this.value = null;
+            this.columns = columns;
         }
 
         public PrefixQueriedRow(byte[] keySuffix, int keySuffixOffset, int keySuffixLength,
@@ -41,6 +122,7 @@ public interface PrefixKeyValueStore extends KeyValueStore {
             System.arraycopy(keySuffix, keySuffixOffset, this.keySuffix, 0, keySuffixLength);
             this.value = new byte[valueLength];;
             System.arraycopy(value, valueOffset, this.value, 0, valueLength);
+            this.columns = null;
         }
 
     }
@@ -0,0 +1,107 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.storage;
+
+import com.uber.ugb.trace.Span;
+import com.uber.ugb.trace.Tracer;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Traces every call to a key value store. Stores are only wrapped if the tracer is enabled.
+ */
+public class TracingKeyValueStore implements KeyValueStore {
+
+    protected final KeyValueStore store;
+    protected final Tracer tracer;
+
+    public TracingKeyValueStore(KeyValueStore store, Tracer tracer) {
+        this.store = store;
+        this.tracer = tracer;
+    }
+
+    public static KeyValueStore wrap(KeyValueStore store, Tracer tracer) {
+        return tracer.isEnabled() && !(store instanceof TracingKeyValueStore)
+            ? new TracingKeyValueStore(store, tracer) : store;
+    }
+
+    public static PrefixKeyValueStore wrap(PrefixKeyValueStore store, Tracer tracer) {
+        return tracer.isEnabled() && !(store instanceof TracingKeyValueStore)
+            ? new TracingPrefixKeyValueStore(store, tracer) : store;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        Span span = tracer.storeCall("get", 1);
+        byte[] value = store.get(key);
+        span.finish(value == null ? 0 : 1);
+        return value;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        Span span = tracer.storeCall("put", 1);
+        store.put(key, value);
+        span.finish();
+    }
+
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        Span span = tracer.storeCall("multiGet", keys.size());
+        List<byte[]> values = store.multiGet(keys);
+        span.finish(countPresent(values));
+        return values;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(byte[] key) {
+        Span span = tracer.storeCall("getAsync", 1);
+        return store.getAsync(key).whenComplete((value, e) -> span.finish(value == null ? 0 : 1));
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> multiGetAsync(List<byte[]> keys) {
+        Span span = tracer.storeCall("multiGetAsync", keys.size());
+        return store.multiGetAsync(keys).whenComplete((values, e) -> span.finish(countPresent(values)));
+    }
+
+    @Override
+    public void multiPut(List<byte[]> keys, List<byte[]> values) {
+        Span span = tracer.storeCall("multiPut", keys.size());
+        store.multiPut(keys, values);
+        span.finish();
+    }
+
+    @Override
+    public void append(byte[] key, byte[] value) {
+        Span span = tracer.storeCall("append", 1);
+        store.append(key, value);
+        span.finish();
+    }
+
+    private static long countPresent(List<byte[]> values) {
+        long count = 0;
+        if (values != null) {
+            for (byte[] value : values) {
+                count += value == null ? 0 : 1;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.storage;
+
+import com.uber.ugb.trace.Span;
+import com.uber.ugb.trace.Tracer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Traces every call to a prefix key value store; scans finish with the number of rows.
+ */
+public class TracingPrefixKeyValueStore extends TracingKeyValueStore implements PrefixKeyValueStore {
+
+    private final PrefixKeyValueStore prefixStore;
+
+    public TracingPrefixKeyValueStore(PrefixKeyValueStore store, Tracer tracer) {
+        super(store, tracer);
+        this.prefixStore = store;
+    }
+
+    @Override
+    public List<PrefixQueriedRow> scan(byte[] prefix, int limit) {
+        Span span = tracer.storeCall("scan", 1);
+        List<PrefixQueriedRow> rows = prefixStore.scan(prefix, limit);
+        span.finish(rows.size());
+        return rows;
+    }
+
+    @Override
+    public List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit) {
+        Span span = tracer.storeCall("multiScan", prefixes.size());
+        List<List<PrefixQueriedRow>> rows = prefixStore.multiScan(prefixes, limit);
+        span.finish(countRows(rows));
+        return rows;
+    }
+
+    @Override
+    public CompletableFuture<List<PrefixQueriedRow>> scanAsync(byte[] prefix, int limit) {
+        Span span = tracer.storeCall("scanAsync", 1);
+        return prefixStore.scanAsync(prefix, limit)
+            .whenComplete((rows, e) -> span.finish(rows == null ? 0 : rows.size()));
+    }
+
+    @Override
+    public CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> prefixes, int limit) {
+        Span span = tracer.storeCall("multiScanAsync", prefixes.size());
+        return prefixStore.multiScanAsync(prefixes, limit).whenComplete((rows, e) -> span.finish(countRows(rows)));
+    }
+
+    @Override
+    public List<PrefixQueriedRow> scan(byte[] prefix, int limit, ColumnScan columnScan) {
+        Span span = tracer.storeCall("columnScan", 1);
+        List<PrefixQueriedRow> rows = prefixStore.scan(prefix, limit, columnScan);
+        span.finish(rows.size());
+        return rows;
+    }
+
+    @Override
+    public List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit, ColumnScan columnScan) {
+        Span span = tracer.storeCall("multiColumnScan", prefixes.size());
+        List<List<PrefixQueriedRow>> rows = prefixStore.multiScan(prefixes, limit, columnScan);
+        span.finish(countRows(rows));
+        return rows;
+    }
+
+    @Override
+    public CompletableFuture<List<List<PrefixQueriedRow>>> multiScanAsync(List<byte[]> prefixes, int limit,
+                                                                         ColumnScan columnScan) {
+        Span span = tracer.storeCall("multiColumnScanAsync", prefixes.size());
+        return prefixStore.multiScanAsync(prefixes, limit, columnScan)
+            .whenComplete((rows, e) -> span.finish(countRows(rows)));
+    }
+
+    @Override
+    public void put(byte[] keyPrefix, byte[] keySuffix, byte[] value) {
+        Span span = tracer.storeCall("put", 1);
+        prefixStore.put(keyPrefix, keySuffix, value);
+        span.finish();
+    }
+
+    @Override
+    public void multiPut(List<byte[]> keyPrefixes, List<byte[]> keySuffixes, List<byte[]> values) {
+        Span span = tracer.storeCall("multiPut", keyPrefixes.size());
+        prefixStore.multiPut(keyPrefixes, keySuffixes, values);
+        span.finish();
+    }
+
+    @Override
+    public void putColumns(byte[] keyPrefix, byte[] keySuffix, Map<String, byte[]> columns) {
+        Span span = tracer.storeCall("putColumns", 1);
+        prefixStore.putColumns(keyPrefix, keySuffix, columns);
+        span.finish();
+    }
+
+    @Override
+    public void multiPutColumns(List<byte[]> keyPrefixes, List<byte[]> keySuffixes,
+                                List<Map<String, byte[]>> columns) {
+        Span span = tracer.storeCall("multiPutColumns", keyPrefixes.size());
+        prefixStore.multiPutColumns(keyPrefixes, keySuffixes, columns);
+        span.finish();
+    }
+
+    private static long countRows(List<List<PrefixQueriedRow>> rows) {
+        long count = 0;
+        if (rows != null) {
+            for (List<PrefixQueriedRow> prefixRows : rows) {
+                count += prefixRows.size();
+            }
+        }
+        return count;
+    }
+}
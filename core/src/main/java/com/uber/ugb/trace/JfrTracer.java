@@ -0,0 +1,191 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Traces the operations as JFR events, e.g. for
+ * java -XX:StartFlightRecording=settings=profile,filename=ugb.jfr ...
+ * Events of a type are only filled in while a recording enables the type. Only loaded through Tracers,
+ * as it needs jdk.jfr.
+ */
+public class JfrTracer implements Tracer {
+
+    private static final String CATEGORY = "Uber Graph Benchmark";
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public Span partition(String kind, long start, long stop) {
+        PartitionEvent event = new PartitionEvent();
+        if (!event.isEnabled()) {
+            return Span.NOOP;
+        }
+        event.kind = kind;
+        event.start = start;
+        event.stop = stop;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span producerStall(int queue) {
+        ProducerStallEvent event = new ProducerStallEvent();
+        if (!event.isEnabled()) {
+            return Span.NOOP;
+        }
+        event.queue = queue;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span commitBatch() {
+        CommitBatchEvent event = new CommitBatchEvent();
+        if (!event.isEnabled()) {
+            return Span.NOOP;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span traversalStep(String query, int step, Object startVertexId, int frontier) {
+        TraversalStepEvent event = new TraversalStepEvent();
+        if (!event.isEnabled()) {
+            return Span.NOOP;
+        }
+        event.query = query;
+        event.step = step;
+        event.startVertexId = String.valueOf(startVertexId);
+        event.frontier = frontier;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span storeCall(String operation, int keys) {
+        StoreCallEvent event = new StoreCallEvent();
+        if (!event.isEnabled()) {
+            return Span.NOOP;
+        }
+        event.operation = operation;
+        event.keys = keys;
+        event.begin();
+        return event;
+    }
+
+    @Name("com.uber.ugb.Partition")
+    @Label("Partition Generation")
+    @Category({CATEGORY, "Generate"})
+    @StackTrace(false)
+    static class PartitionEvent extends Event implements Span {
+        @Label("Kind")
+        String kind;
+        @Label("Start")
+        long start;
+        @Label("Stop")
+        long stop;
+        @Label("Generated")
+        long generated;
+
+        @Override
+        public void finish(long result) {
+            generated = result;
+            commit();
+        }
+    }
+
+    @Name("com.uber.ugb.ProducerStall")
+    @Label("Write Producer Stall")
+    @Description("A write producer waiting for a free slot in the queue of a write worker")
+    @Category({CATEGORY, "Write"})
+    @StackTrace(false)
+    static class ProducerStallEvent extends Event implements Span {
+        @Label("Queue")
+        int queue;
+
+        @Override
+        public void finish(long result) {
+            commit();
+        }
+    }
+
+    @Name("com.uber.ugb.CommitBatch")
+    @Label("Commit Batch")
+    @Category({CATEGORY, "Write"})
+    @StackTrace(false)
+    static class CommitBatchEvent extends Event implements Span {
+        @Override
+        public void finish(long result) {
+            commit();
+        }
+    }
+
+    @Name("com.uber.ugb.TraversalStep")
+    @Label("Traversal Step")
+    @Category({CATEGORY, "Read"})
+    @StackTrace(false)
+    static class TraversalStepEvent extends Event implements Span {
+        @Label("Query")
+        String query;
+        @Label("Step")
+        int step;
+        @Label("Start Vertex Id")
+        String startVertexId;
+        @Label("Frontier")
+        int frontier;
+        @Label("Fan Out")
+        @Description("Edges selected by the step")
+        long fanOut;
+
+        @Override
+        public void finish(long result) {
+            fanOut = result;
+            commit();
+        }
+    }
+
+    @Name("com.uber.ugb.StoreCall")
+    @Label("Store Call")
+    @Category({CATEGORY, "Store"})
+    @StackTrace(false)
+    static class StoreCallEvent extends Event implements Span {
+        @Label("Operation")
+        String operation;
+        @Label("Keys")
+        int keys;
+        @Label("Results")
+        long results;
+
+        @Override
+        public void finish(long result) {
+            results = result;
+            commit();
+        }
+    }
+}
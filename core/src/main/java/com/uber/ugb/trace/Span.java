@@ -0,0 +1,36 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.trace;
+
+/**
+ * An operation being traced, from when the tracer started it until it is finished.
+ */
+public interface Span {
+
+    Span NOOP = result -> {
+    };
+
+    /**
+     * @param result what the operation came to, as documented by the Tracer method that started it
+     */
+    void finish(long result);
+
+    default void finish() {
+        finish(0);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.trace;
+
+/**
+ * Traces the operations of the benchmark, e.g. as JFR events, so that their latency can be lined up with GC
+ * and I/O in one recording. The spans of a disabled tracer do nothing.
+ */
+public interface Tracer {
+
+    Tracer NOOP = new Tracer() {
+    };
+
+    default boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * Generating the vertices or edges [start, stop) of a partition; finished with the number generated.
+     */
+    default Span partition(String kind, long start, long stop) {
+        return Span.NOOP;
+    }
+
+    /**
+     * A write producer waiting for a free slot in the queue of a write worker.
+     */
+    default Span producerStall(int queue) {
+        return Span.NOOP;
+    }
+
+    default Span commitBatch() {
+        return Span.NOOP;
+    }
+
+    /**
+     * A step of a traversal from its frontier; finished with the number of edges it selected.
+     */
+    default Span traversalStep(String query, int step, Object startVertexId, int frontier) {
+        return Span.NOOP;
+    }
+
+    /**
+     * A call to the store with a number of keys or prefixes; finished with the number of values or rows.
+     */
+    default Span storeCall(String operation, int keys) {
+        return Span.NOOP;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.trace;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+public final class Tracers {
+
+    // none (default) or jfr, which commits JFR events to the flight recordings that enable them
+    public static final String TRACER_PROPERTY = "tracer";
+    public static final String NONE = "none";
+    public static final String JFR = "jfr";
+
+    private static final String JFR_TRACER_CLASS = "com.uber.ugb.trace.JfrTracer";
+
+    private static Logger logger = Logger.getLogger(Tracers.class.getName());
+
+    private Tracers() {
+    }
+
+    /**
+     * @return the tracer the properties ask for; the JFR one is loaded by name, so that jdks without
+     * jdk.jfr run with no tracer instead
+     */
+    public static Tracer fromProperties(Properties properties) {
+        String tracer = properties.getProperty(TRACER_PROPERTY, NONE);
+        if (NONE.equals(tracer)) {
+            return Tracer.NOOP;
+        }
+        if (!JFR.equals(tracer)) {
+            throw new IllegalArgumentException("unknown " + TRACER_PROPERTY + ": " + tracer);
+        }
+        try {
+            return (Tracer) Class.forName(JFR_TRACER_CLASS).newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warning("no JFR in this jdk, tracing nothing: " + e);
+            return Tracer.NOOP;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.util;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * An O(1) time, O(1) space random permutation of [0, size) which computes each position on the fly.
+ * <p>
+ * A balanced Feistel network with seeded round keys is a bijection on the smallest domain of 2^(2k) values
+ * covering size. Positions which map outside of [0, size) are encrypted again (cycle walking) until they land
+ * inside, which restricts the bijection to [0, size). The domain is less than four times size, so a position
+ * takes fewer than four encryptions on average.
+ */
+public class FeistelPermutation implements Serializable {
+    private static final long serialVersionUID = 4851394760264751374L;
+
+    private static final int ROUNDS = 4;
+
+    private final int size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    public FeistelPermutation(final int size, final Random random) {
+        Preconditions.checkArgument(size > 0);
+        this.size = size;
+        int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(size - 1));
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+        long seed = random.nextLong();
+        for (int i = 0; i < ROUNDS; i++) {
+            seed += 0x9e3779b97f4a7c15L;
+            roundKeys[i] = mix64(seed);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index a position in [0, size)
+     * @return the value at that position of the permutation
+     */
+    public int get(final int index) {
+        Preconditions.checkArgument(index >= 0 && index < size);
+        long x = index;
+        do {
+            x = encrypt(x);
+        } while (x >= size);
+        return (int) x;
+    }
+
+    private long encrypt(long x) {
+        long left = x >>> halfBits;
+        long right = x & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ (mix64(right ^ roundKeys[i]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.util;
+
+/**
+ * A set of pairs of primitive longs, open addressed with linear probing, for edges between long vertex ids
+ * without boxing. The pair (0, 0) is tracked by a flag. Not thread safe.
+ */
+public class LongPairHashSet {
+
+    // pairs are stored side by side, the first at 2 * slot and the second at 2 * slot + 1
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean hasZero;
+
+    public LongPairHashSet() {
+        this(16);
+    }
+
+    public LongPairHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity * 2];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return true if the pair was not in the set
+     */
+    public boolean add(long first, long second) {
+        if (first == 0 && second == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int slot = slot(first, second, mask);
+        while (keys[2 * slot] != 0 || keys[2 * slot + 1] != 0) {
+            if (keys[2 * slot] == first && keys[2 * slot + 1] == second) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[2 * slot] = first;
+        keys[2 * slot + 1] = second;
+        size++;
+        if (4 * size > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        mask = keys.length / 2 - 1;
+        for (int i = 0; i < oldKeys.length; i += 2) {
+            long first = oldKeys[i];
+            long second = oldKeys[i + 1];
+            if (first != 0 || second != 0) {
+                int slot = slot(first, second, mask);
+                while (keys[2 * slot] != 0 || keys[2 * slot + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[2 * slot] = first;
+                keys[2 * slot + 1] = second;
+            }
+        }
+    }
+
+    private static int slot(long first, long second, int mask) {
+        return LongHashSet.slot(first * 0x9e3779b97f4a7c15L + second, mask);
+    }
+
+}
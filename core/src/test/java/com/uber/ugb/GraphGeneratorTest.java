@@ -18,9 +18,14 @@
 
 package com.uber.ugb;
 
+import com.uber.ugb.db.CsvOutputDB;
 import com.uber.ugb.db.DBException;
 import com.uber.ugb.db.GremlinDB;
+import com.uber.ugb.db.NoopDB;
+import com.uber.ugb.db.ParallelWriteDBWrapper;
+import com.uber.ugb.db.Status;
 import com.uber.ugb.model.GraphModel;
+import com.uber.ugb.model.PropertyModel;
 import com.uber.ugb.schema.InvalidSchemaException;
 import com.uber.ugb.schema.QualifiedName;
 import com.uber.ugb.schema.SchemaUtils;
@@ -32,9 +37,15 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static org.junit.Assert.*;
@@ -106,6 +117,61 @@ public class GraphGeneratorTest extends GraphGenTestBase {
         }
     }
 
+    @Test
+    public void concurrentGenerationMatchesSequentialGeneration() throws Exception {
+        int totalVertices = 10000;
+        long randomSeed = System.nanoTime();
+        List<String> sequential = generateGraphToCsv(totalVertices, randomSeed, 1);
+        List<String> concurrent = generateGraphToCsv(totalVertices, randomSeed, 4);
+        assertTrue(sequential.size() > totalVertices);
+        assertEquals(sequential, concurrent);
+    }
+
+    @Test
+    public void batchedWritesMatchSingleWrites() throws Exception {
+        int totalVertices = 10000;
+        long randomSeed = System.nanoTime();
+        List<String> single = generateGraphToCsv(totalVertices, randomSeed, 1);
+        List<String> batched = generateGraphToCsv(totalVertices, randomSeed, 1, 64);
+        assertEquals(single, batched);
+    }
+
+    @Test
+    public void edgesCarryGeneratedProperties() throws Exception {
+        int totalVertices = 10000;
+        GraphGenerator gen = newGraphGenerator();
+        gen.setRandomSeed(42);
+        Map<String, Integer> propertyCountByLabel = new HashMap<>();
+        for (Map.Entry<QualifiedName, PropertyModel> e : gen.getModel().getEdgePropertyModels().entrySet()) {
+            propertyCountByLabel.put(e.getKey().toString(), e.getValue().getProperties().size());
+        }
+        assertTrue(propertyCountByLabel.values().stream().anyMatch(count -> count > 0));
+
+        // edges are written on the writer threads, so failures are collected rather than asserted there
+        Map<String, Integer> edgesWithProperties = new ConcurrentHashMap<>();
+        AtomicInteger mismatches = new AtomicInteger();
+        gen.generateTo(new NoopDB() {
+            @Override
+            public Status writeEdge(QualifiedName edgeLabel,
+                                    QualifiedName outVertexLabel, Object outVertexId,
+                                    QualifiedName inVertexLabel, Object inVertexId,
+                                    Object... keyValues) {
+                if (2 * propertyCountByLabel.getOrDefault(edgeLabel.toString(), 0) != keyValues.length) {
+                    mismatches.incrementAndGet();
+                }
+                if (keyValues.length > 0) {
+                    edgesWithProperties.merge(edgeLabel.toString(), 1, Integer::sum);
+                }
+                return Status.OK;
+            }
+        }, totalVertices, 4, 2);
+        assertEquals(0, mismatches.get());
+        assertFalse(edgesWithProperties.isEmpty());
+
+        // properties are seeded by the edge index, so they do not depend on the write threads
+        assertEquals(generateGraphToCsv(totalVertices, 42, 1), generateGraphToCsv(totalVertices, 42, 4));
+    }
+
     @Ignore
     @Test
     public void verifyStatsManuallyInR() throws Exception {
@@ -134,6 +200,30 @@ public class GraphGeneratorTest extends GraphGenTestBase {
         return countEdges(graph);
     }
 
+    private List<String> generateGraphToCsv(final int totalVertices, final long randomSeed,
+                                            final int generateConcurrency) throws Exception {
+        return generateGraphToCsv(totalVertices, randomSeed, generateConcurrency, 1);
+    }
+
+    private List<String> generateGraphToCsv(final int totalVertices, final long randomSeed,
+                                            final int generateConcurrency, final int writeBatchSize)
+        throws Exception {
+        File file = File.createTempFile("graph", ".csv");
+        file.deleteOnExit();
+        Properties properties = new Properties();
+        properties.setProperty("csv.output", file.getAbsolutePath());
+        properties.setProperty(ParallelWriteDBWrapper.WRITE_BATCH_SIZE_PROPERTY, String.valueOf(writeBatchSize));
+        CsvOutputDB csvOutputDB = new CsvOutputDB();
+        csvOutputDB.setProperties(properties);
+        GraphGenerator gen = newGraphGenerator();
+        gen.setRandomSeed(randomSeed);
+        gen.generateTo(csvOutputDB, totalVertices, 4, 8, generateConcurrency);
+        // writes are spread over several threads, so only the set of lines is deterministic
+        List<String> lines = Files.readAllLines(file.toPath());
+        Collections.sort(lines);
+        return lines;
+    }
+
     private long countEdges(final Graph graph) {
         return count(graph.traversal().E());
     }
@@ -0,0 +1,80 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb;
+
+import com.uber.ugb.db.NoopDB;
+import com.uber.ugb.db.Status;
+import com.uber.ugb.db.Subgraph;
+import com.uber.ugb.queries.QueriesSpec;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GraphScraperTest {
+
+    @Test
+    public void testSchedules() {
+        assertNull(GraphScraper.Schedule.fromProperties(new Properties(), 1));
+
+        GraphScraper.Schedule fixed = new GraphScraper.Schedule(1000, false, 1);
+        assertEquals(0, fixed.nextOffsetNs());
+        assertEquals(1000000, fixed.nextOffsetNs());
+        assertEquals(2000000, fixed.nextOffsetNs());
+
+        GraphScraper.Schedule poisson = new GraphScraper.Schedule(1000, true, 1);
+        long last = 0;
+        for (int i = 0; i < 100000; i++) {
+            last = poisson.nextOffsetNs();
+        }
+        // 100000 gaps of 1ms on average
+        assertEquals(100000 * 1e6, last, 100000 * 1e6 * 0.02);
+    }
+
+    @Test
+    public void testOpenLoopMeasuresFromTheIntendedStart() {
+        NoopDB db = new NoopDB() {
+            @Override
+            public Status subgraph(QueriesSpec.Query query, Subgraph subgraph) {
+                try {
+                    // a stall of the store, so that the queries behind it queue up
+                    Thread.sleep(subgraph.startVertexId.hashCode() % 10 == 0 ? 50 : 1);
+                } catch (InterruptedException e) {
+                }
+                return Status.OK;
+            }
+        };
+        Properties properties = new Properties();
+        properties.setProperty(GraphScraper.READ_OPS_PER_SECOND_PROPERTY, "500");
+        db.setProperties(properties);
+        QueriesSpec.Query query = new QueriesSpec.Query();
+        query.name = "stalls";
+        query.startVertexLabel = "users.User";
+
+        new GraphScraper().scrape(db, 1, 1000, query, 200, 1);
+
+        assertEquals(200, db.getMetrics().subgraph.getHistogram().getTotalCount());
+        assertEquals(200, db.getMetrics().subgraphCorrected.getHistogram().getTotalCount());
+        assertTrue(db.getMetrics().missedScheduleSlots.get() > 0);
+        assertTrue(db.getMetrics().subgraphCorrected.getValueAtPercentile(99)
+            > db.getMetrics().subgraph.getValueAtPercentile(99));
+    }
+}
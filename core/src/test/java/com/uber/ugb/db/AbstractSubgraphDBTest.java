@@ -0,0 +1,227 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.GraphGeneratorTest;
+import com.uber.ugb.db.mock.MockKeyValueStore;
+import com.uber.ugb.measurement.StepMetrics;
+import com.uber.ugb.queries.QueriesSpec;
+import com.uber.ugb.schema.QualifiedName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractSubgraphDBTest {
+
+    @Test
+    public void eachStepReadsItsFrontierInOneBatch() {
+        MapSubgraphDB db = new MapSubgraphDB();
+        db.addEdges(1L, 2L, 3L, 4L);
+        db.addEdges(2L, 5L, 6L);
+        db.addEdges(3L, 5L, 7L);
+        db.addEdges(4L, 1L);
+        db.addEdges(5L, 8L);
+
+        Subgraph subgraph = new Subgraph(1L);
+        assertEquals(Status.OK, db.subgraph(newQuery(2, 0), subgraph));
+
+        assertEquals(2, db.frontierSizes.size());
+        assertEquals(1, (int) db.frontierSizes.get(0));
+        assertEquals(3, (int) db.frontierSizes.get(1));
+        // 5 is reached once, from the first vertex of the frontier; the start vertex is not marked visited
+        assertEquals(7, subgraph.getEdgeCount());
+        assertNotNull(subgraph.findEdge(2L, 5L));
+        assertNull(subgraph.findEdge(3L, 5L));
+        assertNotNull(subgraph.findEdge(4L, 1L));
+        assertNull(subgraph.findEdge(5L, 8L));
+    }
+
+    @Test
+    public void limitKeepsTheFirstLimitEdges() {
+        MapSubgraphDB db = new MapSubgraphDB();
+        db.addEdges(1L, 2L, 3L, 4L, 5L);
+
+        Subgraph subgraph = new Subgraph(1L);
+        db.subgraph(newQuery(1, 3), subgraph);
+
+        assertEquals(3, subgraph.getEdgeCount());
+        assertNotNull(subgraph.findEdge(1L, 4L));
+        assertNull(subgraph.findEdge(1L, 5L));
+    }
+
+    @Test
+    public void verticesRejectedByTheFilterStayReachable() throws Exception {
+        MapSubgraphDB db = new MapSubgraphDB();
+        db.setVocabulary(GraphGeneratorTest.newGraphGenerator().getModel().getSchemaVocabulary());
+        db.addEdges(1L, 2L, 3L);
+        db.addEdges(3L, 2L);
+        db.vertexProperties.put(2L, "b");
+        db.vertexProperties.put(3L, "a");
+
+        QueriesSpec.Query query = newQuery(2, 0);
+        for (QueriesSpec.Query.Step step : query.steps) {
+            step.edge.label = "documents.usedDocument";
+        }
+        query.steps[0].vertex = new QueriesSpec.Query.Step.Vertex();
+        query.steps[0].vertex.filter = "kind = 'a'";
+
+        Subgraph subgraph = new Subgraph(1L);
+        assertEquals(Status.OK, db.subgraph(query, subgraph));
+
+        // 2 is rejected in the first step, and reached from 3 in the second
+        assertNull(subgraph.findEdge(1L, 2L));
+        assertNotNull(subgraph.findEdge(1L, 3L));
+        assertNotNull(subgraph.findEdge(3L, 2L));
+    }
+
+    @Test
+    public void namedQueriesAreMeasuredByStep() {
+        MapSubgraphDB db = new MapSubgraphDB();
+        db.addEdges(1L, 2L, 3L, 4L);
+        db.addEdges(2L, 5L, 6L);
+        db.addEdges(3L, 5L, 7L);
+        db.addEdges(4L, 1L);
+        QueriesSpec.Query query = newQuery(2, 0);
+        query.name = "two.hops";
+
+        db.subgraph(query, new Subgraph(1L));
+        db.subgraph(query, new Subgraph(1L));
+
+        StepMetrics first = db.getMetrics().step("two.hops", 0);
+        assertEquals(2, first.frontier.get());
+        assertEquals(6, first.edgesRead.get());
+        assertEquals(6, first.edgesSelected.get());
+        assertEquals(2, first.latency.getHistogram().getTotalCount());
+        StepMetrics second = db.getMetrics().step("two.hops", 1);
+        assertEquals(6, second.frontier.get());
+        assertEquals(10, second.edgesRead.get());
+        // 5 is reached twice in each subgraph, and 1 was visited
+        assertEquals(8, second.edgesKept.get());
+        assertEquals(0, second.verticesRead.get());
+    }
+
+    @Test
+    public void subgraphAsyncDoesNotWaitForTheStore() throws Exception {
+        Queue<Runnable> pendingReads = new ConcurrentLinkedQueue<>();
+        KeyValueDB db = new KeyValueDB();
+        db.setKeyValueStore(new MockKeyValueStore() {
+            @Override
+            public CompletableFuture<List<byte[]>> multiGetAsync(List<byte[]> keys) {
+                CompletableFuture<List<byte[]>> future = new CompletableFuture<>();
+                pendingReads.add(() -> future.complete(multiGet(keys)));
+                return future;
+            }
+        });
+        QualifiedName label = new QualifiedName("trips.Took");
+        db.writeEdge(label, label, 1L, label, 2L);
+        db.writeEdge(label, label, 1L, label, 3L);
+
+        Subgraph subgraph = new Subgraph(1L);
+        CompletableFuture<Status> status = db.subgraphAsync(newQuery(1, 0), subgraph);
+        assertFalse(status.isDone());
+        // the steps continue on the query executor, which may issue the next read after these complete
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!status.isDone() && System.nanoTime() < deadline) {
+            Runnable read = pendingReads.poll();
+            if (read != null) {
+                read.run();
+            } else {
+                Thread.yield();
+            }
+        }
+        assertTrue(pendingReads.isEmpty());
+        assertEquals(Status.OK, status.get(10, TimeUnit.SECONDS));
+        assertEquals(2, subgraph.getEdgeCount());
+    }
+
+    private static QueriesSpec.Query newQuery(int stepCount, int limit) {
+        QueriesSpec.Query query = new QueriesSpec.Query();
+        query.steps = new QueriesSpec.Query.Step[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            query.steps[i] = new QueriesSpec.Query.Step();
+            query.steps[i].edge = new QueriesSpec.Query.Step.Edge();
+            query.steps[i].edge.label = "trips.Took";
+            query.steps[i].edge.limit = limit;
+        }
+        return query;
+    }
+
+    private static class MapSubgraphDB extends AbstractSubgraphDB {
+
+        final Map<Object, List<Subgraph.Edge>> adjacency = new HashMap<>();
+        final List<Integer> frontierSizes = new ArrayList<>();
+        final Map<Object, String> vertexProperties = new HashMap<>();
+
+        void addEdges(Object outVertexId, Object... inVertexIds) {
+            List<Subgraph.Edge> edges = adjacency.computeIfAbsent(outVertexId, k -> new ArrayList<>());
+            for (Object inVertexId : inVertexIds) {
+                edges.add(new Subgraph.Edge(outVertexId, inVertexId, new Properties()));
+            }
+        }
+
+        @Override
+        public CompletableFuture<List<List<Subgraph.Edge>>> batchReadEdgesAsync(
+            List<Object> startVertexIds, QueriesSpec.Query.Step.Edge edgeQuerySpec, Executor executor) {
+            frontierSizes.add(startVertexIds.size());
+            return super.batchReadEdgesAsync(startVertexIds, edgeQuerySpec, executor);
+        }
+
+        @Override
+        public Properties readVertex(QualifiedName label, Object id, QueriesSpec.Query.Step.Vertex vertexQuerySpec) {
+            Properties properties = new Properties();
+            if (vertexProperties.containsKey(id)) {
+                properties.put("kind", vertexProperties.get(id));
+            }
+            return properties;
+        }
+
+        @Override
+        public List<Subgraph.Edge> readEdges(Object startVertexId, QueriesSpec.Query.Step.Edge edgeQuerySpec) {
+            return adjacency.getOrDefault(startVertexId, new ArrayList<>());
+        }
+
+        @Override
+        public Status writeVertex(QualifiedName label, Object id, Object... keyValues) {
+            return Status.OK;
+        }
+
+        @Override
+        public Status writeEdge(QualifiedName edgeLabel,
+                                QualifiedName outVertexLabel, Object outVertexId,
+                                QualifiedName inVertexLabel, Object inVertexId,
+                                Object... keyValues) {
+            return Status.OK;
+        }
+    }
+}
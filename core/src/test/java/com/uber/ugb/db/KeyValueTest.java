@@ -18,13 +18,21 @@
 
 package com.uber.ugb.db;
 
+import com.uber.ugb.db.mock.MockKeyValueStore;
+import com.uber.ugb.db.mock.MockPrefixKeyValueStore;
+import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
+import com.uber.ugb.storage.ColumnScan;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class KeyValueTest {
 
@@ -70,4 +78,270 @@ public class KeyValueTest {
 
     }
 
+    @Test
+    public void testChunkedLayoutReadsSameEdgesAsList() {
+        List<Integer> writtenSizes = new ArrayList<>();
+        KeyValueDB chunked = newKeyValueDB(KeyValueDB.CHUNKED_LAYOUT, writtenSizes);
+        KeyValueDB list = newKeyValueDB(KeyValueDB.LIST_LAYOUT, new ArrayList<>());
+
+        QualifiedName label = new QualifiedName("trips.Took");
+        for (KeyValueDB db : new KeyValueDB[]{chunked, list}) {
+            for (long i = 0; i < 20; i++) {
+                db.writeEdge(label, label, 1L, label, i, "round", 0L);
+            }
+            // appended again with new properties, and once more unchanged
+            db.writeEdge(label, label, 1L, label, 5L, "round", 1L);
+            db.writeEdge(label, label, 1L, label, 5L, "round", 1L);
+            List<EdgeWrite> batch = new ArrayList<>();
+            for (long i = 18; i < 25; i++) {
+                batch.add(new EdgeWrite(label, label, 1L, label, i, new Object[]{"round", 2L}));
+            }
+            db.writeEdges(batch);
+        }
+
+        QueriesSpec.Query.Step.Edge out = new QueriesSpec.Query.Step.Edge();
+        out.label = label.toString();
+        out.direction = "out";
+        List<Subgraph.Edge> expected = list.readEdges(1L, out);
+        List<Subgraph.Edge> actual = chunked.readEdges(1L, out);
+        assertEquals(25, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).nextVertexId, actual.get(i).nextVertexId);
+            assertEquals(expected.get(i).edgeProperties, actual.get(i).edgeProperties);
+        }
+
+        QueriesSpec.Query.Step.Edge in = new QueriesSpec.Query.Step.Edge();
+        in.label = label.toString();
+        in.direction = "in";
+        assertEquals(1, chunked.readEdges(5L, in).size());
+        assertEquals(1L, chunked.readEdges(5L, in).get(0).nextVertexId);
+
+        // no write is larger than a chunk of 4 edges, whatever the degree
+        int chunkLimit = writtenSizes.get(0) * 4 + 16;
+        for (int size : writtenSizes) {
+            assertTrue(size <= chunkLimit);
+        }
+    }
+
+    @Test
+    public void testBatchReadEdgesMatchesReadEdges() {
+        List<String> calls = new ArrayList<>();
+        KeyValueDB kvdb = new KeyValueDB();
+        kvdb.setKeyValueStore(new MockKeyValueStore() {
+            @Override
+            public List<byte[]> multiGet(List<byte[]> keys) {
+                calls.add("multiGet");
+                return super.multiGet(keys);
+            }
+        });
+        PrefixKeyValueDB pkvdb = new PrefixKeyValueDB();
+        pkvdb.setPrefixKeyValueStore(new MockPrefixKeyValueStore() {
+            @Override
+            public List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit) {
+                calls.add("multiScan");
+                return super.multiScan(prefixes, limit);
+            }
+        });
+
+        QualifiedName label = new QualifiedName("trips.Took");
+        QueriesSpec.Query.Step.Edge out = new QueriesSpec.Query.Step.Edge();
+        out.label = label.toString();
+        out.direction = "out";
+        List<Object> startVertexIds = Arrays.asList(1L, 2L, 3L, 4L);
+        for (AbstractSubgraphDB db : new AbstractSubgraphDB[]{kvdb, pkvdb}) {
+            for (long i = 1; i <= 3; i++) {
+                for (long j = 0; j < i; j++) {
+                    db.writeEdge(label, label, i, label, 10 * i + j, "j", j);
+                }
+            }
+            calls.clear();
+            List<List<Subgraph.Edge>> batch = db.batchReadEdges(startVertexIds, out);
+            // the heads and the chunks of all the lists, or all the prefixes in one scan
+            assertEquals(db == kvdb ? 2 : 1, calls.size());
+            assertEquals(startVertexIds.size(), batch.size());
+            for (int i = 0; i < startVertexIds.size(); i++) {
+                List<Subgraph.Edge> single = db.readEdges(startVertexIds.get(i), out);
+                assertEquals(single.size(), batch.get(i).size());
+                for (int e = 0; e < single.size(); e++) {
+                    assertEquals(single.get(e), batch.get(i).get(e));
+                    assertEquals(single.get(e).edgeProperties, batch.get(i).get(e).edgeProperties);
+                }
+            }
+            assertEquals(0, batch.get(3).size());
+        }
+    }
+
+    @Test
+    public void testLayoutsReadEachOthersAdjacencyLists() {
+        MockKeyValueStore store = new MockKeyValueStore();
+        KeyValueDB list = newKeyValueDB(KeyValueDB.LIST_LAYOUT, new ArrayList<>());
+        list.setKeyValueStore(store);
+        KeyValueDB chunked = newKeyValueDB(KeyValueDB.CHUNKED_LAYOUT, new ArrayList<>());
+        chunked.setKeyValueStore(store);
+
+        QualifiedName label = new QualifiedName("trips.Took");
+        for (long i = 0; i < 3; i++) {
+            list.writeEdge(label, label, 1L, label, i, "round", 0L);
+        }
+        QueriesSpec.Query.Step.Edge out = new QueriesSpec.Query.Step.Edge();
+        out.label = label.toString();
+        out.direction = "out";
+        assertEquals(3, chunked.readEdges(1L, out).size());
+
+        // the chunked append carries the list over to chunks, and the list layout reads them back
+        for (long i = 3; i < 10; i++) {
+            chunked.writeEdge(label, label, 1L, label, i, "round", 0L);
+        }
+        assertEquals(10, chunked.readEdges(1L, out).size());
+        assertEquals(10, list.readEdges(1L, out).size());
+        list.writeEdge(label, label, 1L, label, 10L, "round", 0L);
+        assertEquals(11, chunked.batchReadEdges(Arrays.asList(1L), out).get(0).size());
+    }
+
+    @Test
+    public void testOrderByTsReadsTheNewestEdges() {
+        List<Integer> scanLimits = new ArrayList<>();
+        KeyValueDB kvdb = newKeyValueDB(KeyValueDB.CHUNKED_LAYOUT, new ArrayList<>());
+        PrefixKeyValueDB pkvdb = new PrefixKeyValueDB();
+        Properties properties = new Properties();
+        properties.setProperty(PrefixKeyValueDB.PREFIX_EDGE_ORDER_PROPERTY, PrefixKeyValueDB.TIMESTAMP_ORDER);
+        pkvdb.setProperties(properties);
+        pkvdb.setPrefixKeyValueStore(new MockPrefixKeyValueStore() {
+            @Override
+            public List<PrefixQueriedRow> scan(byte[] prefix, int limit) {
+                scanLimits.add(limit);
+                return super.scan(prefix, limit);
+            }
+        });
+
+        QualifiedName label = new QualifiedName("trips.Took");
+        for (AbstractSubgraphDB db : new AbstractSubgraphDB[]{kvdb, pkvdb}) {
+            // written out of time order
+            for (long ts : new long[]{30, 10, 50, 20, 40}) {
+                db.writeEdge(label, label, 1L, label, 100 + ts, "ts", ts);
+            }
+        }
+
+        QueriesSpec.Query.Step.Edge out = new QueriesSpec.Query.Step.Edge();
+        out.label = label.toString();
+        out.direction = "out";
+        out.orderByTs = true;
+        out.limit = 2;
+        for (AbstractSubgraphDB db : new AbstractSubgraphDB[]{kvdb, pkvdb}) {
+            List<Subgraph.Edge> single = db.readEdges(1L, out);
+            assertEquals(2, single.size());
+            assertEquals(150L, single.get(0).nextVertexId);
+            assertEquals(140L, single.get(1).nextVertexId);
+            List<Subgraph.Edge> batch = db.batchReadEdges(Arrays.asList(1L), out).get(0);
+            assertEquals(single, batch);
+        }
+        // the ordered rows let the store stop at the limit
+        assertEquals(Arrays.asList(2, 2), scanLimits);
+
+        // a filter sees every edge before the limit applies
+        scanLimits.clear();
+        out.filter = "ts > 0";
+        assertEquals(5, pkvdb.readEdges(1L, out).size());
+        assertEquals(Arrays.asList(0), scanLimits);
+    }
+
+    @Test
+    public void testTimestampOrderKeysByTheTsProperty() {
+        PrefixKeyValueDB db = newPrefixKeyValueDB(PrefixKeyValueDB.BLOB_LAYOUT, new ArrayList<>());
+        QualifiedName label = new QualifiedName("trips.Took");
+
+        // a rewritten edge overwrites its row
+        db.writeEdge(label, label, 1L, label, 101L, "ts", 10L);
+        db.writeEdge(label, label, 1L, label, 101L, "ts", 10L);
+        QueriesSpec.Query.Step.Edge out = new QueriesSpec.Query.Step.Edge();
+        out.label = label.toString();
+        out.direction = "out";
+        assertEquals(1, db.readEdges(1L, out).size());
+
+        try {
+            db.writeEdge(label, label, 1L, label, 102L, "round", 1L);
+            fail("edges without ts cannot be keyed by ts");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testColumnLayoutFiltersInTheScan() {
+        List<ColumnScan> columnScans = new ArrayList<>();
+        PrefixKeyValueDB columns = newPrefixKeyValueDB(PrefixKeyValueDB.COLUMNS_LAYOUT, columnScans);
+        PrefixKeyValueDB blob = newPrefixKeyValueDB(PrefixKeyValueDB.BLOB_LAYOUT, columnScans);
+
+        QualifiedName label = new QualifiedName("trips.Took");
+        for (PrefixKeyValueDB db : new PrefixKeyValueDB[]{columns, blob}) {
+            for (long i = 0; i < 10; i++) {
+                db.writeEdge(label, label, 1L, label, 100 + i, "ts", 10 * i, "round", i % 3, "name", "e" + i);
+            }
+        }
+
+        QueriesSpec.Query.Step.Edge out = new QueriesSpec.Query.Step.Edge();
+        out.label = label.toString();
+        out.direction = "out";
+        out.filter = "ts >= 20 AND ts < 60 AND round = 1";
+        out.select = "name";
+
+        // the column layout only returns the matching edge, with the selected and the filtered columns
+        List<Subgraph.Edge> edges = columns.readEdges(1L, out);
+        assertEquals(1, edges.size());
+        assertEquals(104L, edges.get(0).nextVertexId);
+        assertEquals(3, edges.get(0).edgeProperties.size());
+        assertEquals("e4", edges.get(0).edgeProperties.get("name"));
+        assertEquals(1L, edges.get(0).edgeProperties.get("round"));
+        assertEquals(40L, edges.get(0).edgeProperties.get("ts"));
+        assertEquals(5, columnScans.get(0).conditions.size());
+        assertTrue(columnScans.get(0).keySuffixStart != null && columnScans.get(0).keySuffixStop != null);
+
+        // the blob layout only narrows the range of timestamps, and the filter does the rest
+        List<Subgraph.Edge> inRange = blob.readEdges(1L, out);
+        assertEquals(4, inRange.size());
+        assertEquals(105L, inRange.get(0).nextVertexId);
+        assertEquals(102L, inRange.get(3).nextVertexId);
+        List<Object> matching = new ArrayList<>();
+        for (Subgraph.Edge edge : inRange) {
+            if (out.matchEdgeFilter(edge.edgeProperties)) {
+                matching.add(edge.nextVertexId);
+            }
+        }
+        assertEquals(Arrays.asList(104L), matching);
+
+        assertEquals(edges, columns.batchReadEdges(Arrays.asList(1L), out).get(0));
+    }
+
+    private PrefixKeyValueDB newPrefixKeyValueDB(String layout, List<ColumnScan> columnScans) {
+        PrefixKeyValueDB db = new PrefixKeyValueDB();
+        Properties properties = new Properties();
+        properties.setProperty(PrefixKeyValueDB.PREFIX_EDGE_ORDER_PROPERTY, PrefixKeyValueDB.TIMESTAMP_ORDER);
+        properties.setProperty(PrefixKeyValueDB.PREFIX_EDGE_LAYOUT_PROPERTY, layout);
+        db.setProperties(properties);
+        db.setPrefixKeyValueStore(new MockPrefixKeyValueStore() {
+            @Override
+            public List<PrefixQueriedRow> scan(byte[] prefix, int limit, ColumnScan columnScan) {
+                columnScans.add(columnScan);
+                return super.scan(prefix, limit, columnScan);
+            }
+        });
+        return db;
+    }
+
+    private KeyValueDB newKeyValueDB(String layout, List<Integer> writtenSizes) {
+        KeyValueDB db = new KeyValueDB();
+        Properties properties = new Properties();
+        properties.setProperty(KeyValueDB.KV_ADJACENCY_LAYOUT_PROPERTY, layout);
+        properties.setProperty(KeyValueDB.KV_ADJACENCY_CHUNK_SIZE_PROPERTY, "4");
+        db.setProperties(properties);
+        db.setKeyValueStore(new MockKeyValueStore() {
+            @Override
+            public void put(byte[] key, byte[] value) {
+                writtenSizes.add(value.length);
+                super.put(key, value);
+            }
+        });
+        return db;
+    }
+
 }
@@ -0,0 +1,164 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.db.mock.MockKeyValueStore;
+import com.uber.ugb.queries.QueriesSpec;
+import com.uber.ugb.schema.QualifiedName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelWriteDBWrapperTest {
+
+    @Test
+    public void everyWriteIsDeliveredOnceInBatches() throws Exception {
+        Set<Object> vertexIds = ConcurrentHashMap.newKeySet();
+        Set<Object> edgeIds = ConcurrentHashMap.newKeySet();
+        AtomicInteger largestBatch = new AtomicInteger();
+        DB db = new NoopDB() {
+            @Override
+            public Status writeVertices(List<VertexWrite> writes) {
+                largestBatch.accumulateAndGet(writes.size(), Math::max);
+                for (VertexWrite write : writes) {
+                    assertTrue(vertexIds.add(write.id));
+                }
+                return Status.OK;
+            }
+
+            @Override
+            public Status writeEdges(List<EdgeWrite> writes) {
+                for (EdgeWrite write : writes) {
+                    assertEquals(2, write.keyValues.length);
+                    assertTrue(edgeIds.add(write.keyValues[1]));
+                }
+                return Status.OK;
+            }
+        };
+
+        int producers = 4;
+        int writesPerProducer = 20000;
+        ParallelWriteDBWrapper pdb = new ParallelWriteDBWrapper(db, 3, 16);
+        pdb.init();
+        pdb.startup();
+
+        QualifiedName label = new QualifiedName("users.User");
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final long offset = (long) p * writesPerProducer;
+            Thread thread = new Thread(() -> {
+                for (long i = offset; i < offset + writesPerProducer; i++) {
+                    pdb.writeVertex(label, i);
+                    pdb.writeEdge(label, label, i, label, i + 1, "index", i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pdb.shutdown();
+
+        assertEquals(producers * writesPerProducer, vertexIds.size());
+        assertEquals(producers * writesPerProducer, edgeIds.size());
+        assertTrue(largestBatch.get() <= 16);
+        // one latency sample per batch, and every write counted
+        long batches = pdb.getMetrics().writeVertexBatch.getHistogram().getTotalCount();
+        assertEquals(producers * writesPerProducer, pdb.getMetrics().writeVertexBatchItems.get());
+        assertTrue(batches >= producers * writesPerProducer / 16);
+        assertTrue(batches <= producers * writesPerProducer);
+        assertTrue(pdb.getMetrics().writeQueueDepthSamples.get() > 0);
+    }
+
+    @Test(timeout = 10000)
+    public void shutdownWithoutStartupReturns() throws Exception {
+        ParallelWriteDBWrapper pdb = new ParallelWriteDBWrapper(new NoopDB(), 3, 16);
+        pdb.init();
+        pdb.shutdown();
+    }
+
+    @Test
+    public void hubAdjacencyListsLoseNoEdges() throws Exception {
+        AtomicInteger hubPuts = new AtomicInteger();
+        KeyValueDB db = new KeyValueDB();
+        db.setKeyValueStore(new MockKeyValueStore() {
+            {
+                kvs = new ConcurrentHashMap<>();
+            }
+
+            @Override
+            public void put(byte[] key, byte[] value) {
+                if (new String(key).equals("-1:trips.Took")) {
+                    hubPuts.incrementAndGet();
+                }
+                super.put(key, value);
+            }
+        });
+
+        int producers = 4;
+        int edgesPerProducer = 2000;
+        long hub = -1L;
+        ParallelWriteDBWrapper pdb = new ParallelWriteDBWrapper(db, 3, 64);
+        pdb.init();
+        pdb.startup();
+
+        QualifiedName label = new QualifiedName("trips.Took");
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final long offset = (long) p * edgesPerProducer;
+            Thread thread = new Thread(() -> {
+                for (long i = offset; i < offset + edgesPerProducer; i++) {
+                    pdb.writeEdge(label, label, hub, label, i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pdb.shutdown();
+
+        int edges = producers * edgesPerProducer;
+        QueriesSpec.Query.Step.Edge out = new QueriesSpec.Query.Step.Edge();
+        out.label = label.toString();
+        out.direction = "out";
+        Set<Object> neighbors = db.readEdges(hub, out).stream()
+            .map(edge -> edge.nextVertexId).collect(Collectors.toSet());
+        assertEquals(edges, neighbors.size());
+
+        QueriesSpec.Query.Step.Edge in = new QueriesSpec.Query.Step.Edge();
+        in.label = label.toString();
+        in.direction = "in";
+        for (long i = 0; i < edges; i++) {
+            assertEquals(1, db.readEdges(i, in).size());
+        }
+        // the hub list is rewritten once per batch rather than once per edge
+        assertTrue(hubPuts.get() < edges / 8);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.db.mock.MockKeyValueStore;
+import com.uber.ugb.queries.PropertyReader;
+import com.uber.ugb.queries.QueriesSpec;
+import com.uber.ugb.schema.InvalidSchemaException;
+import com.uber.ugb.schema.QualifiedName;
+import com.uber.ugb.schema.SchemaBuilder;
+import com.uber.ugb.schema.Vocabulary;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PropertyCodecTest {
+
+    private static Vocabulary createVocabulary() throws InvalidSchemaException, IOException {
+        SchemaBuilder builder = new SchemaBuilder();
+        builder.addSchema(PropertyCodecTest.class.getClassLoader().getResourceAsStream("trips/concepts/core.yaml"));
+        builder.addSchema(PropertyCodecTest.class.getClassLoader().getResourceAsStream("trips/concepts/users.yaml"));
+        return builder.toVocabulary();
+    }
+
+    @Test
+    public void testDecodesAllOrSelectedFields() throws Exception {
+        PropertyCodec codec = new PropertyCodec(createVocabulary());
+        byte[] value = codec.encode(new Object[]{"isUberEmail", true, "email", "a@b.com", "ts", 5L,
+            "rating", 4.5, "tags", Arrays.asList("x", "y")});
+
+        assertTrue(PropertyCodec.isIndexed(value));
+        Properties all = codec.decode(value, null);
+        assertEquals(5, all.size());
+        assertEquals(Arrays.asList("x", "y"), all.get("tags"));
+
+        Properties selected = codec.decode(value, Arrays.asList("email", "ts", "absent"));
+        assertEquals(2, selected.size());
+        assertEquals("a@b.com", selected.get("email"));
+        assertEquals(5L, selected.get("ts"));
+
+        PropertyReader reader = codec.reader(value);
+        assertEquals(true, reader.get("isUberEmail"));
+        assertEquals(4.5, reader.get("rating"));
+        assertNull(reader.get("absent"));
+    }
+
+    @Test
+    public void testValuesOfAnotherVocabularyAreRejected() throws Exception {
+        byte[] value = new PropertyCodec(createVocabulary()).encode(new Object[]{"email", "a@b.com"});
+        try {
+            new PropertyCodec(null).decode(value, null);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFstValuesStayReadableAfterSwitchingFormat() throws Exception {
+        KeyValueDB db = new KeyValueDB();
+        db.setVocabulary(createVocabulary());
+        db.setKeyValueStore(new MockKeyValueStore());
+        QualifiedName label = new QualifiedName("users.User");
+
+        db.writeVertex(label, 1L, "email", "old@b.com", "isUberEmail", false);
+        Properties properties = new Properties();
+        properties.setProperty(PropertyCodec.PROPERTY_FORMAT_PROPERTY, PropertyCodec.INDEXED_FORMAT);
+        db.setProperties(properties);
+        db.writeVertex(label, 2L, "email", "new@b.com", "isUberEmail", true);
+
+        QueriesSpec.Query.Step.Vertex vertex = new QueriesSpec.Query.Step.Vertex();
+        vertex.select = "email";
+        assertEquals("old@b.com", db.readVertex(label, 1L, vertex).get("email"));
+        // only the selected field is decoded from the indexed value
+        assertEquals(Collections.singleton("email"), db.readVertex(label, 2L, vertex).keySet());
+        assertEquals("new@b.com", db.readVertex(label, 2L, vertex).get("email"));
+        assertFalse(PropertyCodec.isIndexed(new byte[]{1, 2}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormatIsRejected() {
+        Properties properties = new Properties();
+        properties.setProperty(PropertyCodec.PROPERTY_FORMAT_PROPERTY, "indexd");
+        new KeyValueDB().setProperties(properties);
+    }
+
+}
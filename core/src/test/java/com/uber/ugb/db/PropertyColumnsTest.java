@@ -0,0 +1,80 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.queries.Filter;
+import com.uber.ugb.storage.ColumnScan;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyColumnsTest {
+
+    @Test
+    public void testColumnsDecodeToTheWrittenValues() {
+        Object[] keyValues = {"long", 1L << 60, "int", 7, "double", -2.5, "float", 1.5f, "bool", true,
+            "text", "héllo", "list", Arrays.asList(1, 2)};
+        Map<String, byte[]> columns = PropertyColumns.encode(keyValues);
+        Properties properties = PropertyColumns.decode(ColumnScan.unpack(ColumnScan.pack(columns)));
+        for (int i = 0; i < keyValues.length; i += 2) {
+            assertEquals(keyValues[i + 1], properties.get(keyValues[i]));
+        }
+    }
+
+    @Test
+    public void testNumberColumnsSortAsTheNumbers() {
+        Object[] numbers = {Double.NEGATIVE_INFINITY, -1e9, -2L, -1.5, 0, 0.25, 1L, 3.0f, 1L << 40, Double.MAX_VALUE};
+        for (int i = 1; i < numbers.length; i++) {
+            byte[] lower = PropertyColumns.encodeValue(numbers[i - 1]);
+            byte[] higher = PropertyColumns.encodeValue(numbers[i]);
+            ColumnScan.Condition condition = new ColumnScan.Condition(
+                "n", ColumnScan.Condition.Operator.LessThan, Arrays.copyOf(higher, 1 + Long.BYTES));
+            assertTrue(numbers[i - 1] + " < " + numbers[i], condition.test(lower));
+        }
+    }
+
+    @Test
+    public void testConditionsKeepTheRowsTheFilterKeeps() {
+        Filter filter = Filter.compile("amount > 10 AND status = 'done' AND (a = 1 OR b = 2)");
+        List<ColumnScan.Condition> conditions = PropertyColumns.toConditions(filter);
+        ColumnScan columnScan = new ColumnScan(true, null, conditions, null, null);
+        // the OR is left to the filter
+        assertEquals(3, conditions.size());
+
+        for (Object amount : new Object[]{9L, 10L, 10.5, 11, "12"}) {
+            Map<String, byte[]> columns = PropertyColumns.encode(new Object[]{"amount", amount, "status", "done"});
+            Properties properties = PropertyColumns.decode(columns);
+            properties.put("a", 1);
+            if (filter.matches(properties) && !(amount instanceof String)) {
+                assertTrue(amount.toString(), columnScan.matches(columns));
+            }
+        }
+        assertFalse(columnScan.matches(PropertyColumns.encode(new Object[]{"amount", 9L, "status", "done"})));
+        assertFalse(columnScan.matches(PropertyColumns.encode(new Object[]{"amount", 12L, "status", "todo"})));
+        assertFalse(columnScan.matches(PropertyColumns.encode(new Object[]{"status", "done"})));
+    }
+
+}
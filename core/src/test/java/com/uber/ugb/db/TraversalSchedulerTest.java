@@ -0,0 +1,63 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+public class TraversalSchedulerTest {
+
+    @Test
+    public void queryKeepsAtMostMaxOutstandingReadsInThePool() throws Exception {
+        TraversalScheduler scheduler = new TraversalScheduler(8, 2, false);
+        Executor hugeQuery = scheduler.newQueryExecutor();
+        Executor smallQuery = scheduler.newQueryExecutor();
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch hugeDone = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            hugeQuery.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                }
+                running.decrementAndGet();
+                hugeDone.countDown();
+            });
+        }
+
+        // the small query gets threads while the huge query still has reads pending
+        CountDownLatch smallDone = new CountDownLatch(1);
+        smallQuery.execute(smallDone::countDown);
+        assertTrue(smallDone.await(1, TimeUnit.SECONDS));
+        assertTrue(hugeDone.getCount() > 0);
+
+        assertTrue(hugeDone.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 2);
+        scheduler.shutdown();
+    }
+}
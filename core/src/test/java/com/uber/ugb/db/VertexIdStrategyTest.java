@@ -0,0 +1,81 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.db;
+
+import com.uber.ugb.VertexIdChecker;
+import com.uber.ugb.model.GraphModel;
+import com.uber.ugb.schema.QualifiedName;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import static com.uber.ugb.GraphGeneratorTest.newGraphGenerator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VertexIdStrategyTest {
+
+    @Test
+    public void md5IsTheDefault() {
+        DB db = new NoopDB();
+        QualifiedName label = new QualifiedName("users.User");
+        long expected = UUID.nameUUIDFromBytes((label.toString() + 42).getBytes()).getLeastSignificantBits();
+        assertEquals(Math.abs(expected), db.genVertexId(label, 42));
+    }
+
+    @Test
+    public void strategiesProduceUniqueNonNegativeIds() throws Exception {
+        GraphModel model = newGraphGenerator().getModel();
+        for (String name : new String[]{VertexIdStrategy.MD5, VertexIdStrategy.HASH, VertexIdStrategy.DENSE}) {
+            VertexIdStrategy strategy = VertexIdStrategy.create(name, model.getSchemaVocabulary());
+            assertEquals(name, 0, VertexIdChecker.countDuplicates(strategy,
+                model.getVertexPartitioner().getPartitionSizes(200000)));
+            for (QualifiedName label : model.getVertexPartitioner().getLabels()) {
+                assertTrue(name, strategy.genVertexId(label, VertexIdStrategy.MAX_INDEX) >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void strategyIsSelectedByProperty() throws Exception {
+        GraphModel model = newGraphGenerator().getModel();
+        QualifiedName label = model.getVertexPartitioner().getLabels().iterator().next();
+
+        DB db = new NoopDB();
+        db.setVocabulary(model.getSchemaVocabulary());
+        Properties properties = new Properties();
+        properties.setProperty(VertexIdStrategy.VERTEX_ID_STRATEGY_PROPERTY, VertexIdStrategy.DENSE);
+        db.setProperties(properties);
+
+        long first = (Long) db.genVertexId(label, 0);
+        assertEquals(first + 1, db.genVertexId(label, 1));
+        assertEquals(0, first & VertexIdStrategy.MAX_INDEX);
+
+        properties.setProperty(VertexIdStrategy.VERTEX_ID_STRATEGY_PROPERTY, VertexIdStrategy.HASH);
+        db.setProperties(properties);
+        assertNotEquals(first, db.genVertexId(label, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStrategyIsRejected() throws Exception {
+        VertexIdStrategy.create("sha1", newGraphGenerator().getModel().getSchemaVocabulary());
+    }
+}
@@ -20,25 +20,41 @@ package com.uber.ugb.db.mock;
 
 import com.uber.ugb.GraphGenerator;
 import com.uber.ugb.db.DB;
+import com.uber.ugb.db.EdgeWrite;
 import com.uber.ugb.db.KeyValueDB;
+import com.uber.ugb.db.NoopDB;
 import com.uber.ugb.db.PrefixKeyValueDB;
+import com.uber.ugb.db.Status;
 import com.uber.ugb.db.Subgraph;
+import com.uber.ugb.db.VertexWrite;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
 import com.uber.ugb.schema.Vocabulary;
+import com.uber.ugb.storage.CachingKeyValueStore;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import static com.uber.ugb.GraphGeneratorTest.newGraphGenerator;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class GraphDbReadWriteTest {
 
     public static void testDBReadWrite(DB db) throws IOException {
         initGraphForTest(db);
+        verifySubgraph(db);
+    }
+
+    public static void testDBBatchedReadWrite(DB db) throws IOException {
+        initGraphForTestInBatches(db);
+        verifySubgraph(db);
+    }
 
+    private static void verifySubgraph(DB db) {
         QueriesSpec.Query query = new QueriesSpec.Query();
         query.steps = new QueriesSpec.Query.Step[2];
         // step 1
@@ -113,6 +129,32 @@ public class GraphDbReadWriteTest {
             new QualifiedName("users.User"), 5L, new QualifiedName("documents.Document"), 11L, "status", "active");
     }
 
+    // writes the same graph as initGraphForTest, as one vertex batch and one edge batch
+    public static void initGraphForTestInBatches(DB db) throws IOException {
+        List<VertexWrite> vertexWrites = new ArrayList<>();
+        List<EdgeWrite> edgeWrites = new ArrayList<>();
+        initGraphForTest(new NoopDB() {
+            @Override
+            public Status writeVertex(QualifiedName label, Object id, Object... keyValues) {
+                vertexWrites.add(new VertexWrite(label, id, keyValues));
+                return Status.OK;
+            }
+
+            @Override
+            public Status writeEdge(QualifiedName edgeLabel,
+                                    QualifiedName outVertexLabel, Object outVertexId,
+                                    QualifiedName inVertexLabel, Object inVertexId,
+                                    Object... keyValues) {
+                edgeWrites.add(new EdgeWrite(edgeLabel, outVertexLabel, outVertexId, inVertexLabel, inVertexId,
+                    keyValues));
+                return Status.OK;
+            }
+        });
+        db.setVocabulary(newGraphGenerator().getModel().getSchemaVocabulary());
+        assertEquals(Status.OK, db.writeVertices(vertexWrites));
+        assertEquals(Status.OK, db.writeEdges(edgeWrites));
+    }
+
     @Test
     public void testMockMemDocumentDB() throws IOException {
         testDBReadWrite(new MockMemAbstractSubgraphDB());
@@ -134,4 +176,46 @@ public class GraphDbReadWriteTest {
         testDBReadWrite(kvdb);
     }
 
+    @Test
+    public void testKeyValueDBBehindCache() throws IOException {
+        KeyValueDB kvdb = new KeyValueDB();
+        kvdb.setProperties(cacheProperties());
+        kvdb.setKeyValueStore(new MockKeyValueStore());
+
+        testDBReadWrite(kvdb);
+        assertTrue(kvdb.getMetrics().cacheMissCount.get() > 0);
+    }
+
+    @Test
+    public void testPrefixKeyValueDBBehindCache() throws IOException {
+        PrefixKeyValueDB kvdb = new PrefixKeyValueDB();
+        kvdb.setProperties(cacheProperties());
+        kvdb.setPrefixKeyValueStore(new MockPrefixKeyValueStore());
+
+        testDBReadWrite(kvdb);
+        assertTrue(kvdb.getMetrics().cacheMissCount.get() > 0);
+    }
+
+    private static Properties cacheProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(CachingKeyValueStore.CACHE_MAX_BYTES_PROPERTY, "1000000");
+        return properties;
+    }
+
+    @Test
+    public void testKeyValueDBBatchedWrites() throws IOException {
+        KeyValueDB kvdb = new KeyValueDB();
+        kvdb.setKeyValueStore(new MockKeyValueStore());
+
+        testDBBatchedReadWrite(kvdb);
+    }
+
+    @Test
+    public void testPrefixKeyValueDBBatchedWrites() throws IOException {
+        PrefixKeyValueDB kvdb = new PrefixKeyValueDB();
+        kvdb.setPrefixKeyValueStore(new MockPrefixKeyValueStore());
+
+        testDBBatchedReadWrite(kvdb);
+    }
+
 }
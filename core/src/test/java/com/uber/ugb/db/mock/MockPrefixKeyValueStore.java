@@ -24,7 +24,6 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class MockPrefixKeyValueStore extends MockKeyValueStore implements PrefixKeyValueStore {
 
@@ -35,13 +34,22 @@ public class MockPrefixKeyValueStore extends MockKeyValueStore implements Prefix
     @Override
     public List<PrefixQueriedRow> scan(byte[] prefix, int limit) {
 
-        List<PrefixQueriedRow> out = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>();
+        for (ByteBuffer key : super.kvs.keySet()) {
+            if (hasPrefix(key.array(), prefix)) {
+                keys.add(key.array());
+            }
+        }
+        // rows come back in key order, as from the real stores
+        keys.sort(MockPrefixKeyValueStore::compareUnsigned);
 
-        for (Map.Entry<ByteBuffer, byte[]> entry : super.kvs.entrySet()) {
-            byte[] key = entry.getKey().array();
-            if (hasPrefix(key, prefix)) {
-                out.add(new PrefixQueriedRow(Arrays.copyOfRange(key, prefix.length, key.length), entry.getValue()));
+        List<PrefixQueriedRow> out = new ArrayList<>();
+        for (byte[] key : keys) {
+            if (limit > 0 && out.size() >= limit) {
+                break;
             }
+            out.add(new PrefixQueriedRow(
+                Arrays.copyOfRange(key, prefix.length, key.length), super.kvs.get(ByteBuffer.wrap(key))));
         }
 
         return out;
@@ -56,6 +64,16 @@ public class MockPrefixKeyValueStore extends MockKeyValueStore implements Prefix
         super.kvs.put(key, value);
     }
 
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int c = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
     private boolean hasPrefix(byte[] text, byte[] prefix) {
         if (prefix == null) {
             return true;
@@ -21,10 +21,19 @@ package com.uber.ugb.measurement;
 import com.google.gson.JsonObject;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class LatencyHistogramTest {
 
@@ -57,7 +66,74 @@ public class LatencyHistogramTest {
         assertEquals(category.get("Operations").getAsString(), "103009200");
         assertEquals(category.get("Min(us)").getAsString(), "0.8");
         assertEquals(category.get("Max(us)").getAsString(), "651999.999");
-        assertEquals(category.get("95thPercentile(ms)").getAsString(), "597");
-        assertEquals(category.get("99thPercentile(ms)").getAsString(), "650");
+        assertEquals(597850, category.get("95thPercentile(us)").getAsDouble(), 597850 * 0.001);
+        assertEquals(650970, category.get("99thPercentile(us)").getAsDouble(), 650970 * 0.001);
+        assertEquals(651980, category.get("99.99thPercentile(us)").getAsDouble(), 651980 * 0.001);
+    }
+
+    @Test
+    public void testPercentilesKeepTheSignificantDigits() throws IOException {
+        LatencyHistogram coarse = new LatencyHistogram("read", 1);
+        LatencyHistogram fine = new LatencyHistogram("read", 4);
+        for (int i = 1; i <= 100000; i++) {
+            coarse.measure(i * 1000L);
+            fine.measure(i * 1000L);
+        }
+
+        assertEquals(50000000, fine.getValueAtPercentile(50), 50000000 * 0.0001);
+        assertEquals(99900000, fine.getValueAtPercentile(99.9), 99900000 * 0.0001);
+        assertEquals(50000000, coarse.getValueAtPercentile(50), 50000000 * 0.1);
+        assertTrue(coarse.getHistogram().getEstimatedFootprintInBytes()
+            < fine.getHistogram().getEstimatedFootprintInBytes());
+    }
+
+    @Test
+    public void testConcurrentMeasuresAreAllCounted() throws Exception {
+        LatencyHistogram mm = new LatencyHistogram("read");
+        int threads = 8;
+        int measures = 100000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < measures; i++) {
+                    mm.measure(1000 + i % 1000);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(threads * measures, mm.getHistogram().getTotalCount());
+        JsonMetricsOutput export = new JsonMetricsOutput();
+        mm.printout(export);
+        assertEquals(threads * measures, export.getJson().getAsJsonObject("read").get("Operations").getAsLong());
+    }
+
+    @Test
+    public void testSerializedHistogramsMerge() throws Exception {
+        LatencyHistogram mm = new LatencyHistogram("read");
+        for (int i = 1; i <= 1000; i++) {
+            mm.measure(i * 1000L);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(mm);
+        }
+        LatencyHistogram copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (LatencyHistogram) in.readObject();
+        }
+        assertTrue(bytes.size() < 4096);
+
+        copy.measure(5000000000L);
+        copy.merge(mm);
+
+        assertEquals(2001, copy.getHistogram().getTotalCount());
+        assertEquals(501000, copy.getValueAtPercentile(50), 501000 * 0.001);
+        assertEquals(5000000000L, copy.getValueAtPercentile(100), 5000000000L * 0.001);
     }
 }
@@ -0,0 +1,117 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.measurement;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsReporterTest {
+
+    private static final long NEVER = 3600000;
+
+    @Test
+    public void testIntervalsAreReportedAsJsonLines() {
+        Metrics metrics = new Metrics();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MetricsReporter reporter = new MetricsReporter(() -> metrics, NEVER, 0, MetricsReporter.JSON_FORMAT,
+            new PrintStream(bytes), null);
+        reporter.startPhase("read");
+
+        for (int i = 1; i <= 100; i++) {
+            metrics.subgraph.measure(i * 1000L);
+        }
+        reporter.report();
+        metrics.subgraph.measure(1000000L);
+        reporter.report();
+        reporter.report();
+
+        String[] lines = bytes.toString().trim().split("\n");
+        assertEquals(2, lines.length);
+        JsonObject first = new JsonParser().parse(lines[0]).getAsJsonObject();
+        assertEquals("read", first.get("phase").getAsString());
+        assertEquals("subgraph", first.get("name").getAsString());
+        assertEquals(100, first.get("Operations").getAsLong());
+        assertEquals(50, first.get("50thPercentile(us)").getAsDouble(), 0.05);
+        JsonObject second = new JsonParser().parse(lines[1]).getAsJsonObject();
+        assertEquals(1, second.get("Operations").getAsLong());
+        assertEquals(1000, second.get("Max(us)").getAsDouble(), 1);
+        // the intervals leave the totals alone
+        assertEquals(101, metrics.subgraph.getHistogram().getTotalCount());
+    }
+
+    @Test
+    public void testIntervalsAreReportedAsCsvAndHdrLog() throws Exception {
+        Metrics metrics = new Metrics();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        File log = File.createTempFile("ugb", ".hlog");
+        log.deleteOnExit();
+        MetricsReporter reporter = new MetricsReporter(() -> metrics, NEVER, 0, MetricsReporter.CSV_FORMAT,
+            new PrintStream(bytes), new HistogramLogWriter(log));
+        reporter.startPhase("write");
+
+        metrics.writeVertex.measure(2000L);
+        metrics.writeEdge.measure(3000L);
+        reporter.close();
+
+        String[] lines = bytes.toString().trim().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("time,phase,name,Operations"));
+        assertEquals("write.vertex", lines[1].split(",")[2]);
+        assertEquals(lines[0].split(",").length, lines[1].split(",").length);
+
+        HistogramLogReader reader = new HistogramLogReader(log);
+        Histogram vertex = (Histogram) reader.nextIntervalHistogram();
+        Histogram edge = (Histogram) reader.nextIntervalHistogram();
+        assertEquals("write.write.vertex", vertex.getTag());
+        assertEquals(1, vertex.getTotalCount());
+        assertEquals("write.write.edge", edge.getTag());
+        assertNull(reader.nextIntervalHistogram());
+    }
+
+    @Test
+    public void testWarmupIsLeftOutOfTheSummary() throws Exception {
+        Metrics metrics = new Metrics();
+        MetricsReporter reporter = new MetricsReporter(() -> metrics, 0, 200, MetricsReporter.JSON_FORMAT,
+            new PrintStream(new ByteArrayOutputStream()), null);
+        reporter.startPhase("read");
+
+        metrics.subgraph.measure(5000000000L);
+        metrics.subgraphVertexCount.addAndGet(10);
+        Thread.sleep(1000);
+        metrics.subgraph.measure(1000L);
+        reporter.close();
+
+        assertEquals(1, metrics.subgraph.getHistogram().getTotalCount());
+        assertEquals(1000, metrics.subgraph.getValueAtPercentile(100), 1);
+        assertEquals(0, metrics.subgraphVertexCount.get());
+        assertFalse(metrics.subgraphCorrected.hasData());
+    }
+}
@@ -18,12 +18,20 @@
 
 package com.uber.ugb.measurement;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class MetricsTest {
     @Test
@@ -43,4 +51,55 @@ public class MetricsTest {
         assertEquals(category.get("Max(us)").getAsString(), "0.001");
 
     }
+
+    @Test
+    public void testQueryMetricsMergeAndPrintAfterTheFixedOnes() throws IOException {
+        Metrics m = new Metrics();
+        Metrics m2 = new Metrics();
+        m.subgraph.measure(1000L);
+        m.writeQueueDepthMax.set(5);
+        m2.writeQueueDepthMax.set(3);
+        StepMetrics step = m2.step("client.trip", 0);
+        step.frontier.addAndGet(2);
+        step.edgesSelected.addAndGet(7);
+        step.latency.measure(2000L);
+        m2.query("client.trip").measure(3000L);
+
+        m.merge(m2);
+
+        assertEquals(5, m.writeQueueDepthMax.get());
+        assertEquals(7, m.step("client.trip", 0).edgesSelected.get());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        m.printOut(out);
+        JsonObject json = new JsonParser().parse(out.toString()).getAsJsonObject();
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+            names.add(entry.getKey());
+        }
+        assertEquals("subgraph", names.get(0));
+        assertTrue(names.indexOf("non.empty.subgraph.count") < names.indexOf("query.client.trip.step0.latency"));
+        assertEquals(3.5, json.get("query.client.trip.step0.fanout").getAsDouble(), 0);
+        assertEquals(1, json.getAsJsonObject("query.client.trip.subgraph").get("Operations").getAsLong());
+        assertEquals(1, json.getAsJsonObject("query.client.trip.step0.latency").get("Operations").getAsLong());
+
+        m.reset();
+        assertEquals(0, m.step("client.trip", 0).frontier.get());
+        assertFalse(m.subgraph.hasData());
+    }
+
+    @Test
+    public void testBatchesAreMeasuredOncePerCall() throws IOException {
+        Metrics m = new Metrics();
+        Metrics.measureBatch(m.readEdgeBatch, m.readEdgeBatchItems, 100000, 100);
+        Metrics.measureBatch(m.readEdgeBatch, m.readEdgeBatchItems, 5000000, 10);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        m.printOut(out);
+        JsonObject json = new JsonParser().parse(out.toString()).getAsJsonObject();
+        JsonObject batch = json.getAsJsonObject("read.edge.batch");
+        assertEquals(2, batch.get("Operations").getAsLong());
+        assertEquals(5000, batch.get("Max(us)").getAsDouble(), 5);
+        assertEquals(110, json.get("read.edge.batch.items").getAsLong());
+        assertFalse(m.readEdge.hasData());
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.model;
+
+import com.uber.ugb.model.BucketedEdgeDistribution.WeightedBuckets;
+import com.uber.ugb.model.distro.LogNormalDegreeDistribution;
+import com.uber.ugb.schema.QualifiedName;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BucketedEdgeDistributionTest {
+
+    @Test
+    public void aliasSamplingFollowsWeights() {
+        checkSamplingFollowsWeights(WeightedBuckets.Sampling.ALIAS);
+    }
+
+    @Test
+    public void cdfSamplingFollowsWeights() {
+        checkSamplingFollowsWeights(WeightedBuckets.Sampling.CDF);
+    }
+
+    @Test
+    public void zeroWeightBucketsAreNeverPicked() {
+        int[] degrees = new int[]{0, 3, 0, 1, 0};
+        WeightedBuckets buckets = new WeightedBuckets(degrees, new double[degrees.length],
+            WeightedBuckets.Sampling.ALIAS);
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int x = buckets.locate(random);
+            assertEquals(true, x == 1 || x == 3);
+        }
+    }
+
+    private void checkSamplingFollowsWeights(WeightedBuckets.Sampling sampling) {
+        int[] degrees = new int[]{1, 2, 3, 4, 10, 0, 5};
+        WeightedBuckets buckets = new WeightedBuckets(degrees, new double[degrees.length], sampling);
+        assertEquals(25, buckets.getTotalWeight(), 0);
+
+        int total = 1000000;
+        int[] counts = new int[degrees.length];
+        Random random = new Random(12345);
+        for (int i = 0; i < total; i++) {
+            counts[buckets.locate(random)]++;
+        }
+        for (int i = 0; i < degrees.length; i++) {
+            assertEquals(degrees[i] / 25.0, counts[i] * 1.0 / total, 0.005);
+        }
+    }
+
+    // the per-edge work of GraphGenerator.createEdgesForEdgeModel is two pickOne() calls
+    @Ignore
+    @Test
+    public void compareEdgeSamplingTime() {
+        Incidence incidence = new Incidence(new QualifiedName("users.User"), 0.9,
+            new LogNormalDegreeDistribution(1.5, 1.0));
+        long domainSize = 1000000;
+        int edges = 10000000;
+        for (int rep = 0; rep < 5; rep++) {
+            for (WeightedBuckets.Sampling sampling : WeightedBuckets.Sampling.values()) {
+                BucketedEdgeDistribution domain = new BucketedEdgeDistribution(
+                    incidence, domainSize, new Random(rep), sampling);
+                BucketedEdgeDistribution range = new BucketedEdgeDistribution(
+                    incidence, domainSize, new Random(rep + 1), sampling);
+                long sum = 0;
+                long startTime = System.currentTimeMillis();
+                for (int i = 0; i < edges; i++) {
+                    sum += domain.pickOne() + range.pickOne();
+                }
+                long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+                System.out.println(sampling + ": " + edges * 1000L / elapsed + " edges/sec (" + sum + ")");
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.model.generator;
+
+import com.uber.ugb.GraphGenerator;
+import com.uber.ugb.model.PropertyModel;
+import com.uber.ugb.model.SimpleProperty;
+import com.uber.ugb.schema.QualifiedName;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.uber.ugb.GraphGeneratorTest.newGraphGenerator;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratorTest {
+
+    @Test
+    public void precomputedKeyHashMatchesLabelAndKey() {
+        StringGenerator gen = new StringGenerator(5, 20);
+        int keyHash = Generator.keyHash("users.User", "name");
+        for (long id = 0; id < 100; id++) {
+            assertEquals(gen.generate(7, "users.User", id, "name"), gen.generate(7, id, keyHash));
+        }
+    }
+
+    @Test
+    public void valuesAreIndependentOfThreads() throws Exception {
+        GraphGenerator graphGenerator = newGraphGenerator();
+        List<PropertyModel> models = new ArrayList<>(graphGenerator.getModel().getVertexPropertyModels().values());
+        int n = 2000;
+        Object[][] expected = new Object[n][];
+        for (int id = 0; id < n; id++) {
+            expected[id] = models.get(id % models.size()).generateKeyValues(12345L, id);
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<Object[]>> futures = new ArrayList<>();
+        for (int id = 0; id < n; id++) {
+            final int x = id;
+            futures.add(executorService.submit(() -> models.get(x % models.size()).generateKeyValues(12345L, x)));
+        }
+        for (int id = 0; id < n; id++) {
+            assertArrayEquals(expected[id], futures.get(id).get());
+        }
+        executorService.shutdown();
+    }
+
+    @Test
+    public void intsAreWithinBounds() {
+        for (long id = 0; id < 10000; id++) {
+            long stream = CounterBasedRandom.stream(1, id, 2);
+            int x = CounterBasedRandom.nextInt(stream, 0, 7);
+            double d = CounterBasedRandom.nextDouble(stream, 1);
+            assertTrue(x >= 0 && x < 7);
+            assertTrue(d >= 0 && d < 1);
+        }
+    }
+
+    // compares the per-vertex property cost of reseeding a shared java.util.Random, as generators used to do,
+    // with the counter-based generators
+    @Ignore
+    @Test
+    public void comparePropertyGenerationTime() throws Exception {
+        GraphGenerator graphGenerator = newGraphGenerator();
+        Map<QualifiedName, PropertyModel> models = graphGenerator.getModel().getVertexPropertyModels();
+        int n = 1000000;
+        for (int rep = 0; rep < 5; rep++) {
+            for (Map.Entry<QualifiedName, PropertyModel> e : models.entrySet()) {
+                String label = e.getKey().toString();
+                PropertyModel model = e.getValue();
+                long legacyTime = timeToEvaluate(() -> {
+                    Random random = new Random();
+                    for (long id = 0; id < n; id++) {
+                        for (SimpleProperty prop : model.getProperties()) {
+                            random.setSeed(legacySeed(12345L, label, id, prop.getKey()));
+                            random.nextLong();
+                        }
+                    }
+                });
+                long counterTime = timeToEvaluate(() -> {
+                    for (long id = 0; id < n; id++) {
+                        model.generateKeyValues(12345L, id);
+                    }
+                });
+                System.out.println(label + " " + model.getProperties().size() + " properties: reseeded Random "
+                    + legacyTime * 1000000L / n + " ns/vertex (seeding and a single draw only), counter-based "
+                    + counterTime * 1000000L / n + " ns/vertex (complete values)");
+            }
+        }
+    }
+
+    private long legacySeed(long randomSeed, String label, long id, String key) {
+        long seed = randomSeed;
+        seed = ((seed << 5) - seed) + id;
+        seed = ((seed << 5) - seed) + label.hashCode();
+        seed = ((seed << 5) - seed) + ".".hashCode();
+        seed = ((seed << 5) - seed) + key.hashCode();
+        return seed;
+    }
+
+    private long timeToEvaluate(final Runnable task) {
+        long startTime = System.currentTimeMillis();
+        task.run();
+        long endTime = System.currentTimeMillis();
+        return endTime - startTime;
+    }
+}
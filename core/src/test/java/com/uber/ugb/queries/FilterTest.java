@@ -0,0 +1,94 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.queries;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FilterTest {
+
+    @Test
+    public void testComparisonsAreTypedByTheLiteral() {
+        Properties properties = new Properties();
+        properties.put("round", 3L);
+        properties.put("amount", 10.5);
+        properties.put("count", "42");
+        properties.put("status", "completed");
+        properties.put("requestedAt", 1527811200000L);
+
+        assertTrue(Filter.compile("round = 3").matches(properties));
+        assertTrue(Filter.compile("round >= 3 AND round <= 3").matches(properties));
+        assertFalse(Filter.compile("round > 3").matches(properties));
+        assertTrue(Filter.compile("round != 4").matches(properties));
+        assertTrue(Filter.compile("amount > 10").matches(properties));
+        assertTrue(Filter.compile("amount < 10.6").matches(properties));
+        // numbers stored as text compare as numbers
+        assertTrue(Filter.compile("count > 9").matches(properties));
+        assertTrue(Filter.compile("status = 'completed'").matches(properties));
+        assertTrue(Filter.compile("status IN ('canceled', \"completed\")").matches(properties));
+        assertFalse(Filter.compile("status NOT IN ('canceled', 'completed')").matches(properties));
+        assertTrue(Filter.compile("requestedAt >= timestamp '2018-06-01'").matches(properties));
+        assertFalse(Filter.compile("requestedAt > timestamp '2018-06-01T00:00:00Z'").matches(properties));
+    }
+
+    @Test
+    public void testAndBindsTighterThanOr() {
+        Properties properties = new Properties();
+        properties.put("a", 1);
+        properties.put("b", 2);
+
+        assertTrue(Filter.compile("a = 1 OR a = 5 AND b = 5").matches(properties));
+        assertFalse(Filter.compile("(a = 1 OR a = 5) AND b = 5").matches(properties));
+        assertTrue(Filter.compile("not (b = 5) and a in (0, 1)").matches(properties));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("a", "b")), Filter.compile("a = 1 OR b = 5").getFields());
+    }
+
+    @Test
+    public void testMissingValuesDoNotMatch() {
+        Properties properties = new Properties();
+        properties.put("a", "text");
+
+        assertFalse(Filter.compile("b = 1").matches(properties));
+        assertFalse(Filter.compile("b != 1").matches(properties));
+        assertFalse(Filter.compile("a > 1").matches(properties));
+        assertFalse(Filter.compile("a = 1").matches((Properties) null));
+    }
+
+    @Test
+    public void testBadFiltersAreRejected() {
+        for (String text : new String[]{"a", "a = ", "a ~ 1", "(a = 1", "a = 'b", "a IN 1", "a = 1 b = 2",
+            "a < timestamp 'yesterday'"}) {
+            try {
+                Filter.compile(text);
+                fail(text);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(text));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.storage;
+
+import com.uber.ugb.db.mock.MockPrefixKeyValueStore;
+import com.uber.ugb.measurement.Metrics;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachingKeyValueStoreTest {
+
+    private final Metrics metrics = new Metrics();
+    private final AtomicInteger gets = new AtomicInteger();
+    private final AtomicInteger scans = new AtomicInteger();
+    private final MockPrefixKeyValueStore store = new MockPrefixKeyValueStore() {
+        @Override
+        public byte[] get(byte[] key) {
+            gets.incrementAndGet();
+            return super.get(key);
+        }
+
+        @Override
+        public List<PrefixQueriedRow> scan(byte[] prefix, int limit) {
+            scans.incrementAndGet();
+            return super.scan(prefix, limit);
+        }
+    };
+
+    private CachingPrefixKeyValueStore newCache(long maxBytes, String writePolicy) {
+        Properties properties = new Properties();
+        properties.setProperty(CachingKeyValueStore.CACHE_MAX_BYTES_PROPERTY, String.valueOf(maxBytes));
+        properties.setProperty(CachingKeyValueStore.CACHE_WRITE_POLICY_PROPERTY, writePolicy);
+        properties.setProperty(CachingKeyValueStore.CACHE_CONCURRENCY_PROPERTY, "1");
+        return new CachingPrefixKeyValueStore(store, properties, () -> metrics);
+    }
+
+    @Test
+    public void testNoCacheUnlessSized() {
+        assertTrue(CachingKeyValueStore.wrap((PrefixKeyValueStore) store, new Properties(), () -> metrics) == store);
+    }
+
+    @Test
+    public void testGetsAreServedFromTheCache() {
+        CachingPrefixKeyValueStore cache = newCache(1 << 20, CachingKeyValueStore.INVALIDATE_ON_WRITE);
+        cache.put(bytes("a"), bytes("1"));
+
+        assertArrayEquals(bytes("1"), cache.get(bytes("a")));
+        assertArrayEquals(bytes("1"), cache.get(bytes("a")));
+        assertNull(cache.get(bytes("b")));
+        assertNull(cache.get(bytes("b")));
+        List<byte[]> values = cache.multiGet(Arrays.asList(bytes("a"), bytes("b"), bytes("c")));
+
+        assertArrayEquals(bytes("1"), values.get(0));
+        assertNull(values.get(1));
+        assertNull(values.get(2));
+        assertEquals(3, gets.get());
+        assertEquals(4, metrics.cacheHitCount.get());
+        assertEquals(3, metrics.cacheMissCount.get());
+    }
+
+    @Test
+    public void testWritesInvalidateOrWriteThrough() {
+        CachingPrefixKeyValueStore cache = newCache(1 << 20, CachingKeyValueStore.INVALIDATE_ON_WRITE);
+        cache.put(bytes("a"), bytes("1"));
+        cache.get(bytes("a"));
+        cache.put(bytes("a"), bytes("2"));
+        assertArrayEquals(bytes("2"), cache.get(bytes("a")));
+        cache.append(bytes("a"), bytes("3"));
+        assertArrayEquals(bytes("23"), cache.get(bytes("a")));
+        // three misses, and the read of the default append
+        assertEquals(4, gets.get());
+
+        gets.set(0);
+        CachingPrefixKeyValueStore through = newCache(1 << 20, CachingKeyValueStore.WRITE_THROUGH);
+        through.put(bytes("b"), bytes("1"));
+        assertArrayEquals(bytes("1"), through.get(bytes("b")));
+        assertEquals(0, gets.get());
+    }
+
+    @Test
+    public void testScansServeSmallerLimitsAndAreInvalidatedByWrites() {
+        CachingPrefixKeyValueStore cache = newCache(1 << 20, CachingKeyValueStore.WRITE_THROUGH);
+        for (int i = 0; i < 5; i++) {
+            cache.put(bytes("v1"), new byte[]{(byte) i}, bytes("e" + i));
+        }
+
+        assertEquals(3, cache.scan(bytes("v1"), 3).size());
+        assertEquals(2, cache.scan(bytes("v1"), 2).size());
+        assertEquals(1, scans.get());
+        assertEquals(5, cache.scan(bytes("v1"), 0).size());
+        assertEquals(4, cache.scan(bytes("v1"), 4).size());
+        assertEquals(5, cache.multiScan(Arrays.asList(bytes("v1")), 10).get(0).size());
+        assertEquals(2, scans.get());
+
+        cache.put(bytes("v1"), new byte[]{5}, bytes("e5"));
+        assertEquals(6, cache.scan(bytes("v1"), 0).size());
+        assertEquals(3, scans.get());
+    }
+
+    @Test
+    public void testEvictsByBytes() {
+        int valueBytes = 1000;
+        CachingPrefixKeyValueStore cache = newCache(10 * valueBytes, CachingKeyValueStore.WRITE_THROUGH);
+        for (int i = 0; i < 100; i++) {
+            cache.put(bytes("k" + i), new byte[valueBytes]);
+        }
+
+        assertTrue(cache.weightedSize() <= 10 * valueBytes);
+        assertEquals(cache.weightedSize(), metrics.cacheBytes.get());
+        assertTrue(metrics.cacheEvictionCount.get() >= 90);
+        assertEquals(valueBytes, cache.get(bytes("k0")).length);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.uber.ugb.trace;
+
+import com.uber.ugb.db.KeyValueDB;
+import com.uber.ugb.db.Subgraph;
+import com.uber.ugb.db.mock.MockKeyValueStore;
+import com.uber.ugb.queries.QueriesSpec;
+import com.uber.ugb.schema.QualifiedName;
+import com.uber.ugb.storage.TracingKeyValueStore;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TracersTest {
+
+    @Test
+    public void testNoTracerByDefault() {
+        assertSame(Tracer.NOOP, Tracers.fromProperties(new Properties()));
+        assertSame(Span.NOOP, Tracer.NOOP.storeCall("get", 1));
+        MockKeyValueStore store = new MockKeyValueStore();
+        assertSame(store, TracingKeyValueStore.wrap(store, Tracer.NOOP));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTracer() {
+        Properties properties = new Properties();
+        properties.setProperty(Tracers.TRACER_PROPERTY, "zipkin");
+        Tracers.fromProperties(properties);
+    }
+
+    @Test
+    public void testTraversalsAreRecordedAsJfrEvents() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Tracers.TRACER_PROPERTY, Tracers.JFR);
+        KeyValueDB db = new KeyValueDB();
+        db.setProperties(properties);
+        db.setKeyValueStore(new MockKeyValueStore());
+        assertTrue(db.getTracer().isEnabled());
+        QualifiedName label = new QualifiedName("trips.Took");
+        db.writeEdge(label, label, 1L, label, 2L);
+        db.writeEdge(label, label, 1L, label, 3L);
+        QueriesSpec.Query query = new QueriesSpec.Query();
+        query.name = "took";
+        query.steps = new QueriesSpec.Query.Step[]{new QueriesSpec.Query.Step()};
+        query.steps[0].edge = new QueriesSpec.Query.Step.Edge();
+        query.steps[0].edge.label = "trips.Took";
+
+        File file = File.createTempFile("ugb", ".jfr");
+        file.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("com.uber.ugb.TraversalStep");
+            recording.enable("com.uber.ugb.StoreCall");
+            recording.start();
+            db.subgraph(query, new Subgraph(1L));
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+
+        List<String> names = new ArrayList<>();
+        RecordedEvent step = null;
+        for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+            names.add(event.getEventType().getName());
+            if (event.getEventType().getName().equals("com.uber.ugb.TraversalStep")) {
+                step = event;
+            }
+        }
+        assertTrue(names.contains("com.uber.ugb.StoreCall"));
+        assertFalse(step == null);
+        assertEquals("took", step.getString("query"));
+        assertEquals("1", step.getString("startVertexId"));
+        assertEquals(2, step.getLong("fanOut"));
+    }
+}
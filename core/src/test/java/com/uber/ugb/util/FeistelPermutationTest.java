@@ -0,0 +1,71 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FeistelPermutationTest {
+
+    @Test
+    public void trivialPermutationIsCorrect() {
+        FeistelPermutation perm = new FeistelPermutation(1, new Random());
+        assertEquals(1, perm.size());
+        assertEquals(0, perm.get(0));
+    }
+
+    @Test
+    public void permutationIsBijective() {
+        int[] sizes = new int[]{2, 3, 4, 5, 7, 16, 17, 100, 1023, 1024, 1025, 65537, 1000000};
+        for (int size : sizes) {
+            FeistelPermutation perm = new FeistelPermutation(size, new Random(size));
+            boolean[] seen = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                int x = perm.get(i);
+                assertTrue(x >= 0 && x < size);
+                assertTrue("duplicate " + x + " for size " + size, !seen[x]);
+                seen[x] = true;
+            }
+        }
+    }
+
+    @Test
+    public void permutationIsDeterminedBySeed() {
+        FeistelPermutation a = new FeistelPermutation(12345, new Random(7));
+        FeistelPermutation b = new FeistelPermutation(12345, new Random(7));
+        FeistelPermutation c = new FeistelPermutation(12345, new Random(8));
+        int differences = 0;
+        for (int i = 0; i < 12345; i++) {
+            assertEquals(a.get(i), b.get(i));
+            if (a.get(i) != c.get(i)) {
+                differences++;
+            }
+        }
+        assertTrue(differences > 12000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outOfRangeIndexIsRejected() {
+        new FeistelPermutation(10, new Random()).get(10);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ *  * Copyright 2018 Uber Technologies Inc.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.uber.ugb.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void matchesHashSetThroughGrowth() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            // small values collide often, and 0 and negatives are valid ids
+            long value = i % 2 == 0 ? random.nextInt(20000) - 10000 : random.nextLong();
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long value : expected) {
+            assertTrue(set.contains(value));
+        }
+        assertTrue(set.contains(0));
+        assertFalse(set.contains(20000));
+
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains(0));
+    }
+
+    @Test
+    public void pairsMatchHashSetThroughGrowth() {
+        LongPairHashSet set = new LongPairHashSet();
+        Set<String> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            long first = random.nextInt(300) - 100;
+            long second = random.nextInt(300) - 100;
+            assertEquals(expected.add(first + ":" + second), set.add(first, second));
+        }
+        assertEquals(expected.size(), set.size());
+        set.add(0, 0);
+        assertFalse(set.add(0, 0));
+    }
+}
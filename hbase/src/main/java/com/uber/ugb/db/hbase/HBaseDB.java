@@ -18,18 +18,29 @@
 
 package com.uber.ugb.db.hbase;
 
+import com.uber.ugb.db.DBException;
 import com.uber.ugb.db.PrefixKeyValueDB;
+import com.uber.ugb.storage.ColumnScan;
 import com.uber.ugb.storage.PrefixKeyValueStore;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class HBaseDB extends PrefixKeyValueDB {
 
@@ -48,7 +59,8 @@ public class HBaseDB extends PrefixKeyValueDB {
     }
 
     @Override
-    public void cleanup() {
+    public void cleanup() throws DBException {
+        super.cleanup();
         hBaseStore.shutdown();
     }
 
@@ -56,11 +68,15 @@ public class HBaseDB extends PrefixKeyValueDB {
 
         private static byte[] cf = "cf1".getBytes();
         private static byte[] props = "p".getBytes();
+        // edges written with putColumns keep each property in a column of its own, named with this prefix
+        private static final byte[] COLUMN_QUALIFIER_PREFIX = "c.".getBytes();
 
         Configuration config = HBaseConfiguration.create();
         Connection conn;
         private String vertexTableName;
         private String edgeTableName;
+        // runs the scans of a multiScan with a limit, one per prefix
+        private ExecutorService scanPool;
 
         public HBaseStore(Properties properties) {
             String zookeeperQuorum = properties.getProperty("hbase.zookeeper.quorum", "");
@@ -75,6 +91,8 @@ public class HBaseDB extends PrefixKeyValueDB {
                 conn = ConnectionFactory.createConnection(config);
                 vertexTableName = properties.getProperty("hbase.vertexTableName", "vertex");
                 edgeTableName = properties.getProperty("hbase.edgeTableName", "edge");
+                scanPool = Executors.newFixedThreadPool(
+                    Integer.parseInt(properties.getProperty("hbase.scan.concurrency", "16")));
 
                 ensureVertexTable();
                 ensureEdgeTable();
@@ -107,6 +125,15 @@ public class HBaseDB extends PrefixKeyValueDB {
 
         @Override
         public List<PrefixQueriedRow> scan(byte[] prefix, int limit) {
+            return scan(prefix, limit, null);
+        }
+
+        /**
+         * The key range of the column scan narrows the rows scanned, and its conditions and columns become
+         * column value filters and the columns of the scan, so the region servers only return matching columns.
+         */
+        @Override
+        public List<PrefixQueriedRow> scan(byte[] prefix, int limit, ColumnScan columnScan) {
 
             List<PrefixQueriedRow> rows = new ArrayList<>();
 
@@ -114,7 +141,17 @@ public class HBaseDB extends PrefixKeyValueDB {
 
             try (Table table = conn.getTable(tablename)) {
                 Scan scan = new Scan();
-                scan.setRowPrefixFilter(prefix);
+                scan.withStartRow(startRow(prefix, columnScan));
+                scan.withStopRow(stopRow(prefix, columnScan));
+                List<Filter> filters = columnFilters(scan, columnScan);
+                if (limit > 0) {
+                    // each region server stops after limit rows, and one rpc brings them all back
+                    filters.add(new PageFilter(limit));
+                    scan.setCaching(limit);
+                }
+                if (!filters.isEmpty()) {
+                    scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, filters));
+                }
 
                 ResultScanner scanner = table.getScanner(scan);
                 for (Result result : scanner) {
@@ -124,14 +161,10 @@ public class HBaseDB extends PrefixKeyValueDB {
                             prefix, 0, prefix.length)) {
                         continue;
                     }
-                    ByteBuffer byteBufferToVertexId = ByteBuffer.wrap(
-                            key, prefix.length, key.length - prefix.length);
-                    byte[] value = result.getValue(cf, props);
-
-                    rows.add(new PrefixQueriedRow(
-                            key, prefix.length, key.length - prefix.length,
-                            value, 0, value.length
-                    ));
+                    rows.add(toPrefixQueriedRow(result, prefix, columnScan));
+                    if (limit > 0 && rows.size() >= limit) {
+                        break;
+                    }
                 }
                 scanner.close();
 
@@ -143,6 +176,205 @@ public class HBaseDB extends PrefixKeyValueDB {
 
         }
 
+        @Override
+        public List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit) {
+            return multiScan(prefixes, limit, null);
+        }
+
+        /**
+         * With a limit each prefix is scanned on its own, in parallel, so that its PageFilter stops the region
+         * servers after limit rows of that prefix. Without one, all the prefixes are scanned with one scanner,
+         * skipping between the prefixes with a MultiRowRangeFilter, and each row goes to the prefix it starts with.
+         */
+        @Override
+        public List<List<PrefixQueriedRow>> multiScan(List<byte[]> prefixes, int limit, ColumnScan columnScan) {
+
+            if (limit > 0) {
+                return multiScanPaged(prefixes, limit, columnScan);
+            }
+
+            List<List<PrefixQueriedRow>> rows = new ArrayList<>(prefixes.size());
+            for (int i = 0; i < prefixes.size(); i++) {
+                rows.add(new ArrayList<>());
+            }
+            if (prefixes.isEmpty()) {
+                return rows;
+            }
+
+            // prefix indexes in row order, to find the prefix of a row by binary search
+            Integer[] order = new Integer[prefixes.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Bytes.compareTo(prefixes.get(a), prefixes.get(b)));
+
+            TableName tablename = TableName.valueOf(edgeTableName);
+
+            try (Table table = conn.getTable(tablename)) {
+                List<MultiRowRangeFilter.RowRange> ranges = new ArrayList<>(prefixes.size());
+                for (byte[] prefix : prefixes) {
+                    ranges.add(new MultiRowRangeFilter.RowRange(
+                        startRow(prefix, columnScan), true, stopRow(prefix, columnScan), false));
+                }
+                Scan scan = new Scan();
+                scan.withStartRow(prefixes.get(order[0]));
+                List<Filter> filters = columnFilters(scan, columnScan);
+                filters.add(0, new MultiRowRangeFilter(ranges));
+                scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, filters));
+
+                ResultScanner scanner = table.getScanner(scan);
+                for (Result result : scanner) {
+                    byte[] key = result.getRow();
+                    int low = 0;
+                    int high = order.length - 1;
+                    int found = -1;
+                    while (low <= high) {
+                        int mid = (low + high) >>> 1;
+                        if (Bytes.compareTo(prefixes.get(order[mid]), key) <= 0) {
+                            found = mid;
+                            low = mid + 1;
+                        } else {
+                            high = mid - 1;
+                        }
+                    }
+                    if (found < 0) {
+                        continue;
+                    }
+                    byte[] prefix = prefixes.get(order[found]);
+                    if (!Bytes.startsWith(key, prefix)) {
+                        continue;
+                    }
+                    List<PrefixQueriedRow> prefixRows = rows.get(order[found]);
+                    if (limit > 0 && prefixRows.size() >= limit) {
+                        continue;
+                    }
+                    prefixRows.add(toPrefixQueriedRow(result, prefix, columnScan));
+                }
+                scanner.close();
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            return rows;
+
+        }
+
+        private List<List<PrefixQueriedRow>> multiScanPaged(List<byte[]> prefixes, int limit, ColumnScan columnScan) {
+            if (prefixes.size() == 1) {
+                List<List<PrefixQueriedRow>> rows = new ArrayList<>(1);
+                rows.add(scan(prefixes.get(0), limit, columnScan));
+                return rows;
+            }
+            List<CompletableFuture<List<PrefixQueriedRow>>> futures = new ArrayList<>(prefixes.size());
+            for (byte[] prefix : prefixes) {
+                futures.add(CompletableFuture.supplyAsync(() -> scan(prefix, limit, columnScan), scanPool));
+            }
+            List<List<PrefixQueriedRow>> rows = new ArrayList<>(prefixes.size());
+            for (CompletableFuture<List<PrefixQueriedRow>> future : futures) {
+                rows.add(future.join());
+            }
+            return rows;
+        }
+
+        private static byte[] startRow(byte[] prefix, ColumnScan columnScan) {
+            if (columnScan == null || columnScan.keySuffixStart == null) {
+                return prefix;
+            }
+            return Bytes.add(prefix, columnScan.keySuffixStart);
+        }
+
+        private static byte[] stopRow(byte[] prefix, ColumnScan columnScan) {
+            if (columnScan == null || columnScan.keySuffixStop == null) {
+                return prefixStopRow(prefix);
+            }
+            return Bytes.add(prefix, columnScan.keySuffixStop);
+        }
+
+        /**
+         * Selects the columns of the column scan on the scan, and returns the filters of its conditions.
+         */
+        private static List<Filter> columnFilters(Scan scan, ColumnScan columnScan) {
+            List<Filter> filters = new ArrayList<>();
+            if (columnScan == null || !columnScan.columnar) {
+                scan.addColumn(cf, props);
+                return filters;
+            }
+            if (columnScan.columns == null) {
+                scan.addFamily(cf);
+            } else {
+                scan.addColumn(cf, props);
+                for (String column : columnScan.columns) {
+                    scan.addColumn(cf, qualifier(column));
+                }
+            }
+            for (ColumnScan.Condition condition : columnScan.conditions) {
+                SingleColumnValueFilter filter = new SingleColumnValueFilter(cf, qualifier(condition.column),
+                    toCompareOp(condition.operator), new BinaryPrefixComparator(condition.value));
+                filter.setFilterIfMissing(true);
+                filters.add(filter);
+            }
+            return filters;
+        }
+
+        private static CompareFilter.CompareOp toCompareOp(ColumnScan.Condition.Operator operator) {
+            switch (operator) {
+                case LessThan:
+                    return CompareFilter.CompareOp.LESS;
+                case LessOrEqual:
+                    return CompareFilter.CompareOp.LESS_OR_EQUAL;
+                case GreaterThan:
+                    return CompareFilter.CompareOp.GREATER;
+                case GreaterOrEqual:
+                    return CompareFilter.CompareOp.GREATER_OR_EQUAL;
+                default:
+                    return CompareFilter.CompareOp.EQUAL;
+            }
+        }
+
+        private static byte[] qualifier(String column) {
+            return Bytes.add(COLUMN_QUALIFIER_PREFIX, Bytes.toBytes(column));
+        }
+
+        private PrefixQueriedRow toPrefixQueriedRow(Result result, byte[] prefix, ColumnScan columnScan) {
+            if (columnScan == null || !columnScan.columnar) {
+                return toPrefixQueriedRow(result, prefix);
+            }
+            byte[] key = result.getRow();
+            Map<String, byte[]> columns = new LinkedHashMap<>();
+            NavigableMap<byte[], byte[]> familyMap = result.getFamilyMap(cf);
+            if (familyMap != null) {
+                for (Map.Entry<byte[], byte[]> cell : familyMap.entrySet()) {
+                    if (Bytes.startsWith(cell.getKey(), COLUMN_QUALIFIER_PREFIX)) {
+                        columns.put(Bytes.toString(cell.getKey(), COLUMN_QUALIFIER_PREFIX.length,
+                            cell.getKey().length - COLUMN_QUALIFIER_PREFIX.length), cell.getValue());
+                    }
+                }
+            }
+            return new PrefixQueriedRow(Arrays.copyOfRange(key, prefix.length, key.length), columns);
+        }
+
+        private PrefixQueriedRow toPrefixQueriedRow(Result result, byte[] prefix) {
+            byte[] key = result.getRow();
+            byte[] value = result.getValue(cf, props);
+            return new PrefixQueriedRow(
+                    key, prefix.length, key.length - prefix.length,
+                    value, 0, value.length
+            );
+        }
+
+        // the first row after all the rows starting with the prefix, as in Scan.setRowPrefixFilter
+        private static byte[] prefixStopRow(byte[] prefix) {
+            for (int i = prefix.length - 1; i >= 0; i--) {
+                if (prefix[i] != (byte) 0xff) {
+                    byte[] stopRow = Arrays.copyOf(prefix, i + 1);
+                    stopRow[i]++;
+                    return stopRow;
+                }
+            }
+            return HConstants.EMPTY_END_ROW;
+        }
+
         @Override
         public void put(byte[] keyPrefix, byte[] keySuffix, byte[] value) {
 
@@ -165,6 +397,31 @@ public class HBaseDB extends PrefixKeyValueDB {
 
         }
 
+        @Override
+        public void putColumns(byte[] keyPrefix, byte[] keySuffix, Map<String, byte[]> columns) {
+            putAll(edgeTableName, Collections.singletonList(toColumnsPut(keyPrefix, keySuffix, columns)));
+        }
+
+        @Override
+        public void multiPutColumns(List<byte[]> keyPrefixes, List<byte[]> keySuffixes,
+                                    List<Map<String, byte[]>> columns) {
+            List<Put> puts = new ArrayList<>(keyPrefixes.size());
+            for (int i = 0; i < keyPrefixes.size(); i++) {
+                puts.add(toColumnsPut(keyPrefixes.get(i), keySuffixes.get(i), columns.get(i)));
+            }
+            putAll(edgeTableName, puts);
+        }
+
+        private static Put toColumnsPut(byte[] keyPrefix, byte[] keySuffix, Map<String, byte[]> columns) {
+            Put put = new Put(Bytes.add(keyPrefix, keySuffix));
+            for (Map.Entry<String, byte[]> column : columns.entrySet()) {
+                put.addColumn(cf, qualifier(column.getKey()), column.getValue());
+            }
+            // an empty value marks the row, so that it is found whichever columns it has
+            put.addColumn(cf, props, new byte[0]);
+            return put;
+        }
+
         @Override
         public byte[] get(byte[] key) {
 
@@ -185,6 +442,34 @@ public class HBaseDB extends PrefixKeyValueDB {
             return null;
         }
 
+        @Override
+        public List<byte[]> multiGet(List<byte[]> keys) {
+
+            List<byte[]> values = new ArrayList<>(keys.size());
+
+            TableName tablename = TableName.valueOf(vertexTableName);
+
+            try (Table table = conn.getTable(tablename)) {
+                List<Get> gets = new ArrayList<>(keys.size());
+                for (byte[] key : keys) {
+                    gets.add(new Get(key).addColumn(cf, props));
+                }
+                for (Result result : table.get(gets)) {
+                    values.add(result.getValue(cf, props));
+                }
+                return values;
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            values.clear();
+            while (values.size() < keys.size()) {
+                values.add(null);
+            }
+            return values;
+        }
+
         @Override
         public void put(byte[] key, byte[] value) {
 
@@ -203,7 +488,56 @@ public class HBaseDB extends PrefixKeyValueDB {
 
         }
 
+        @Override
+        public void multiPut(List<byte[]> keyPrefixes, List<byte[]> keySuffixes, List<byte[]> values) {
+
+            List<Put> puts = new ArrayList<>(keyPrefixes.size());
+            for (int i = 0; i < keyPrefixes.size(); i++) {
+                byte[] keyPrefix = keyPrefixes.get(i);
+                byte[] keySuffix = keySuffixes.get(i);
+                byte[] key = new byte[keyPrefix.length + keySuffix.length];
+                System.arraycopy(keyPrefix, 0, key, 0, keyPrefix.length);
+                System.arraycopy(keySuffix, 0, key, keyPrefix.length, keySuffix.length);
+
+                Put put = new Put(key);
+                put.addColumn(cf, props, values.get(i));
+                puts.add(put);
+            }
+            putAll(edgeTableName, puts);
+
+        }
+
+        @Override
+        public void multiPut(List<byte[]> keys, List<byte[]> values) {
+
+            List<Put> puts = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                Put put = new Put(keys.get(i));
+                put.addColumn(cf, props, values.get(i));
+                puts.add(put);
+            }
+            putAll(vertexTableName, puts);
+
+        }
+
+        private void putAll(String name, List<Put> puts) {
+
+            if (puts.isEmpty()) {
+                return;
+            }
+
+            TableName tablename = TableName.valueOf(name);
+
+            try (Table table = conn.getTable(tablename)) {
+                table.put(puts);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+        }
+
         public void shutdown() {
+            scanPool.shutdown();
             try {
                 conn.close();
             } catch (IOException e) {
@@ -18,12 +18,15 @@
 
 package com.uber.ugb.db.redis;
 
+import com.uber.ugb.db.DBException;
 import com.uber.ugb.db.KeyValueDB;
 import com.uber.ugb.storage.KeyValueStore;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class RedisDB extends KeyValueDB {
@@ -41,7 +44,8 @@ public class RedisDB extends KeyValueDB {
     }
 
     @Override
-    public void cleanup() {
+    public void cleanup() throws DBException {
+        super.cleanup();
         redisStore.jedisPool.close();
         redisStore.jedisPool.destroy();
     }
@@ -65,11 +69,44 @@ public class RedisDB extends KeyValueDB {
             return value;
         }
 
+        @Override
+        public List<byte[]> multiGet(List<byte[]> keys) {
+            if (keys.isEmpty()) {
+                return new ArrayList<>();
+            }
+            Jedis jedis = this.jedisPool.getResource();
+            List<byte[]> values = jedis.mget(keys.toArray(new byte[keys.size()][]));
+            jedis.close();
+            return values;
+        }
+
         @Override
         public void put(byte[] key, byte[] value) {
             Jedis jedis = this.jedisPool.getResource();
             jedis.set(key, value);
             jedis.close();
         }
+
+        @Override
+        public void append(byte[] key, byte[] value) {
+            Jedis jedis = this.jedisPool.getResource();
+            jedis.append(key, value);
+            jedis.close();
+        }
+
+        @Override
+        public void multiPut(List<byte[]> keys, List<byte[]> values) {
+            if (keys.isEmpty()) {
+                return;
+            }
+            byte[][] keysValues = new byte[keys.size() * 2][];
+            for (int i = 0; i < keys.size(); i++) {
+                keysValues[2 * i] = keys.get(i);
+                keysValues[2 * i + 1] = values.get(i);
+            }
+            Jedis jedis = this.jedisPool.getResource();
+            jedis.mset(keysValues);
+            jedis.close();
+        }
     }
 }
@@ -22,7 +22,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.uber.ugb.db.DB;
 import com.uber.ugb.db.NoopDB;
+import com.uber.ugb.db.ParallelWriteDBWrapper;
+import com.uber.ugb.db.TraversalScheduler;
+import com.uber.ugb.db.VertexIdStrategy;
 import com.uber.ugb.measurement.Metrics;
+import com.uber.ugb.measurement.MetricsReporter;
+import com.uber.ugb.model.BucketedEdgeDistribution;
 import com.uber.ugb.model.GraphModel;
 import com.uber.ugb.queries.QueriesSpec;
 import com.uber.ugb.schema.QualifiedName;
@@ -48,7 +53,9 @@ public class Benchmark {
     public static final String GRAPH_PARTITION_COUNT_PROPERTY = "graph.partition.count";
     public static final String WRITE_VERTEX_COUNT_PROPERTY = "write.vertex.count";
     public static final String WRITE_SEED_PROPERTY = "write.seed";
+    public static final String WRITE_EDGE_SAMPLING_PROPERTY = "write.edge.sampling";
     public static final String WRITE_THREAD_COUNT_PROPERTY = "write.thread.count";
+    public static final String GENERATE_THREAD_COUNT_PROPERTY = "generate.thread.count";
     public static final String READ_THREAD_COUNT_PROPERTY = "read.thread.count";
     public static final String READ_OPERATION_COUNT_PROPERTY = "read.operation.count";
     public static Logger logger = Logger.getLogger(Benchmark.class.getName());
@@ -94,15 +101,27 @@ public class Benchmark {
             int graphPartitionCount = Integer.valueOf(prop.getProperty(GRAPH_PARTITION_COUNT_PROPERTY, "16"));
             long operationCount = Long.valueOf(prop.getProperty(READ_OPERATION_COUNT_PROPERTY, "1"));
             int writeConcurrency = Integer.valueOf(prop.getProperty(WRITE_THREAD_COUNT_PROPERTY, "16"));
+            int generateConcurrency = Integer.valueOf(prop.getProperty(GENERATE_THREAD_COUNT_PROPERTY, "1"));
             int readConcurrency = Integer.valueOf(prop.getProperty(READ_THREAD_COUNT_PROPERTY, "16"));
             long totalVertices = Long.valueOf(prop.getProperty(WRITE_VERTEX_COUNT_PROPERTY, "0"));
             int seed = Integer.valueOf(prop.getProperty(WRITE_SEED_PROPERTY, "12345"));
+            BucketedEdgeDistribution.WeightedBuckets.Sampling edgeSampling =
+                BucketedEdgeDistribution.WeightedBuckets.Sampling.valueOf(
+                    prop.getProperty(WRITE_EDGE_SAMPLING_PROPERTY, "alias").toUpperCase());
 
             System.out.println(READ_OPERATION_COUNT_PROPERTY + "=" + operationCount);
             System.out.println(WRITE_THREAD_COUNT_PROPERTY + "=" + writeConcurrency);
+            System.out.println(ParallelWriteDBWrapper.WRITE_BATCH_SIZE_PROPERTY + "="
+                + prop.getProperty(ParallelWriteDBWrapper.WRITE_BATCH_SIZE_PROPERTY, "1"));
+            System.out.println(GENERATE_THREAD_COUNT_PROPERTY + "=" + generateConcurrency);
             System.out.println(READ_THREAD_COUNT_PROPERTY + "=" + readConcurrency);
+            System.out.println(TraversalScheduler.TRAVERSAL_EXECUTOR_PROPERTY + "="
+                + prop.getProperty(TraversalScheduler.TRAVERSAL_EXECUTOR_PROPERTY, TraversalScheduler.FORK_JOIN));
             System.out.println(WRITE_VERTEX_COUNT_PROPERTY + "=" + totalVertices);
             System.out.println(WRITE_SEED_PROPERTY + "=" + seed);
+            System.out.println(WRITE_EDGE_SAMPLING_PROPERTY + "=" + edgeSampling.name().toLowerCase());
+            System.out.println(VertexIdStrategy.VERTEX_ID_STRATEGY_PROPERTY + "="
+                + prop.getProperty(VertexIdStrategy.VERTEX_ID_STRATEGY_PROPERTY, VertexIdStrategy.MD5));
 
             // start generator
             GraphModelBuilder graphModelBuilder = new GraphModelBuilder();
@@ -112,6 +131,7 @@ public class Benchmark {
             GraphModel model = graphModelBuilder.build();
             GraphGenerator gen = new GraphGenerator(model);
             gen.setRandomSeed(seed);
+            gen.setEdgeSampling(edgeSampling);
 
             // load the db object from db class name
             DB db = loadDbFromClassName(dbname);
@@ -119,7 +139,9 @@ public class Benchmark {
             db.setProperties(prop);
             db.setVocabulary(model.getSchemaVocabulary());
 
-            Metrics metrics = new Metrics();
+            Metrics metrics = Metrics.fromProperties(prop);
+            // interval reports follow whichever metrics the db measures into, which each phase replaces
+            MetricsReporter reporter = MetricsReporter.fromProperties(prop, db::getMetrics);
 
             try {
 
@@ -127,7 +149,9 @@ public class Benchmark {
 
                     if (!isSpark) {
 
-                        Metrics m = gen.generateTo(db, totalVertices, writeConcurrency, graphPartitionCount);
+                        reporter.startPhase("write");
+                        Metrics m = gen.generateTo(db, totalVertices, writeConcurrency, graphPartitionCount,
+                            generateConcurrency);
                         metrics.merge(m);
 
                     } else {
@@ -148,7 +172,10 @@ public class Benchmark {
                     String queriesPath = graphDir + "/queries.yaml";
 
                     db.init();
-                    db.setMetrics(new Metrics());
+                    // the last interval of the writes is in the metrics about to be replaced
+                    reporter.report();
+                    db.setMetrics(Metrics.fromProperties(prop));
+                    reporter.startPhase("read");
                     Metrics readMetrics =
                         benchmarkQueries(gen, seed, totalVertices, db, queriesPath, operationCount, readConcurrency);
                     metrics.merge(readMetrics);
@@ -160,6 +187,7 @@ public class Benchmark {
 
             } finally {
 
+                reporter.close();
                 metrics.printOut(System.out);
 
             }